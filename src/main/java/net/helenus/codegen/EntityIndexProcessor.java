@@ -0,0 +1,154 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.codegen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import net.helenus.support.PackageUtil;
+
+/**
+ * Lists the entity interfaces (those annotated with @Table, @MaterializedView, @UDT or @Tuple) of
+ * a compilation in {@link PackageUtil#ENTITY_INDEX}, so a session can find the entities of a
+ * package without scanning the class path for them.
+ *
+ * <p>An incremental compilation only sees the entities of the sources being recompiled, so the
+ * index already in the output is merged with them. Its entries are kept unless they name a type
+ * which is no longer an entity interface.
+ *
+ * <p>Only the index is generated. Entities are still mapped, and their DSL built, by reflection
+ * when a session starts.
+ */
+@SupportedAnnotationTypes({
+  "net.helenus.mapping.annotation.Table",
+  "net.helenus.mapping.annotation.MaterializedView",
+  "net.helenus.mapping.annotation.UDT",
+  "net.helenus.mapping.annotation.Tuple"
+})
+public class EntityIndexProcessor extends AbstractProcessor {
+
+  private final Set<String> entities = new TreeSet<String>();
+  private boolean merged;
+  private boolean existing;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+    if (!merged) {
+      merged = true;
+      readExisting();
+    }
+    for (TypeElement annotation : annotations) {
+      for (Element element : round.getElementsAnnotatedWith(annotation)) {
+        if (element.getKind() == ElementKind.INTERFACE) {
+          entities.add(
+              processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+        }
+      }
+    }
+    if (round.processingOver() && (existing || !entities.isEmpty())) {
+      write();
+    }
+    return false;
+  }
+
+  /** Adds the entries of the index written by a previous compilation. */
+  private void readExisting() {
+    Elements elements = processingEnv.getElementUtils();
+    try {
+      FileObject index =
+          processingEnv
+              .getFiler()
+              .getResource(StandardLocation.CLASS_OUTPUT, "", PackageUtil.ENTITY_INDEX);
+      try (BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(index.openInputStream(), StandardCharsets.UTF_8))) {
+        existing = true;
+        String name;
+        while ((name = reader.readLine()) != null) {
+          name = name.trim();
+          if (name.isEmpty()) {
+            continue;
+          }
+          // Entries the compiler can't resolve are kept, the class may just not be on its path.
+          TypeElement type = elements.getTypeElement(name.replace('$', '.'));
+          if (type == null || isEntity(type)) {
+            entities.add(name);
+          }
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // There is no index from a previous compilation.
+    }
+  }
+
+  private boolean isEntity(TypeElement type) {
+    if (type.getKind() != ElementKind.INTERFACE) {
+      return false;
+    }
+    Set<String> annotations = getSupportedAnnotationTypes();
+    for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+      TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+      if (annotations.contains(annotationType.getQualifiedName().toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void write() {
+    try {
+      FileObject index =
+          processingEnv
+              .getFiler()
+              .createResource(StandardLocation.CLASS_OUTPUT, "", PackageUtil.ENTITY_INDEX);
+      try (Writer writer =
+          new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+        for (String entity : entities) {
+          writer.write(entity);
+          writer.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      processingEnv
+          .getMessager()
+          .printMessage(
+              Diagnostic.Kind.WARNING, "unable to write " + PackageUtil.ENTITY_INDEX + ": " + e);
+    }
+  }
+}
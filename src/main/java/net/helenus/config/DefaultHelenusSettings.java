@@ -21,7 +21,7 @@ import java.util.function.Function;
 import net.helenus.core.DslInstantiator;
 import net.helenus.core.MapperInstantiator;
 import net.helenus.core.reflect.ReflectionDslInstantiator;
-import net.helenus.core.reflect.ReflectionMapperInstantiator;
+import net.helenus.core.reflect.GeneratedMapperInstantiator;
 import net.helenus.mapping.convert.CamelCaseToUnderscoreConverter;
 
 public class DefaultHelenusSettings implements HelenusSettings {
@@ -43,6 +43,6 @@ public class DefaultHelenusSettings implements HelenusSettings {
 
   @Override
   public MapperInstantiator getMapperInstantiator() {
-    return ReflectionMapperInstantiator.INSTANCE;
+    return GeneratedMapperInstantiator.INSTANCE;
   }
 }
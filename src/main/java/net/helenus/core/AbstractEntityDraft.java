@@ -1,10 +1,7 @@
 package net.helenus.core;
 
 import com.google.common.primitives.Primitives;
-import java.io.Serializable;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -13,29 +10,49 @@ import net.helenus.core.reflect.Drafted;
 import net.helenus.core.reflect.MapExportable;
 import net.helenus.mapping.HelenusProperty;
 import net.helenus.mapping.MappingUtil;
-import org.apache.commons.lang3.SerializationUtils;
+import net.helenus.mapping.value.PropertySet;
+import net.helenus.mapping.value.PropertyValueMap;
 
 public abstract class AbstractEntityDraft<E> implements Drafted<E> {
 
   private final MapExportable entity;
   private final Map<String, Object> valuesMap;
-  private final Set<String> readSet;
-  private final Map<String, Object> mutationsMap = new HashMap<String, Object>();
+  private final Set<String> entityReadSet;
+  // Mutations and reads are kept by property ordinal, both are created on first use as the
+  // entity class is only known once the subclass is constructed.
+  private PropertyValueMap mutationsMap;
+  private PropertySet readSet;
+  private final Map<String, DraftCollections.Tracked> collections =
+      new HashMap<String, DraftCollections.Tracked>();
 
   public AbstractEntityDraft(MapExportable entity) {
     this.entity = entity;
-    // Entities can mutate their map.
+    // Entities can mutate their map, collections are shared until the draft writes to them.
     if (entity != null) {
-      this.valuesMap = entity.toMap(true);
-      this.readSet = entity.toReadSet();
+      this.valuesMap = new HashMap<String, Object>(entity.toMap());
+      this.entityReadSet = entity.toReadSet();
     } else {
       this.valuesMap = new HashMap<String, Object>();
-      this.readSet = new HashSet<String>();
+      this.entityReadSet = null;
     }
   }
 
   public abstract Class<E> getEntityClass();
 
+  PropertyValueMap mutations() {
+    if (mutationsMap == null) {
+      mutationsMap = new PropertyValueMap(Helenus.entity(getEntityClass()));
+    }
+    return mutationsMap;
+  }
+
+  private PropertySet reads() {
+    if (readSet == null) {
+      readSet = new PropertySet(mutations().getIndex(), entityReadSet);
+    }
+    return readSet;
+  }
+
   public E build() {
     return Helenus.map(getEntityClass(), toMap());
   }
@@ -47,8 +64,12 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
 
   @SuppressWarnings("unchecked")
   public <T> T get(String key, Class<?> returnType) {
-    readSet.add(key);
-    T value = (T) mutationsMap.get(key);
+    reads().add(key);
+    T value = (T) mutations().get(key);
+
+    if (value == null) {
+      value = (T) collections.get(key);
+    }
 
     if (value == null) {
       value = (T) valuesMap.get(key);
@@ -64,9 +85,11 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
           return (T) type.getDefaultValue();
         }
       } else {
-        // Collections fetched from the valuesMap
-        if (value instanceof Collection) {
-          value = (T) SerializationUtils.<Serializable>clone((Serializable) value);
+        // Collections fetched from the valuesMap are copied on their first write.
+        Object tracked = DraftCollections.track(value);
+        if (tracked != value) {
+          collections.put(key, (DraftCollections.Tracked) tracked);
+          value = (T) tracked;
         }
       }
     }
@@ -84,7 +107,8 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
       return null;
     }
 
-    mutationsMap.put(key, value);
+    collections.remove(key);
+    mutations().put(key, value);
     return value;
   }
 
@@ -93,12 +117,14 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
       return null;
     }
 
-    mutationsMap.put(key, value);
+    collections.remove(key);
+    mutations().put(key, value);
     return value;
   }
 
   public void put(String key, Object value) {
-    mutationsMap.put(key, value);
+    collections.remove(key);
+    mutations().put(key, value);
   }
 
   @SuppressWarnings("unchecked")
@@ -113,11 +139,12 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
       if (entity != null) {
         T currentValue = this.<T>fetch(key);
         if (!value.equals(currentValue)) {
-          mutationsMap.put(key, value);
+          collections.remove(key);
+          mutations().put(key, value);
           return value;
         }
       } else {
-        mutationsMap.put(key, value);
+        mutations().put(key, value);
       }
     }
     return null;
@@ -133,8 +160,9 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
 
   public Object unset(String key) {
     if (key != null) {
-      Object value = mutationsMap.get(key);
-      mutationsMap.put(key, null);
+      Object value = mutations().get(key);
+      collections.remove(key);
+      mutations().put(key, null);
       return value;
     }
     return null;
@@ -144,8 +172,11 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
     return this.<T>reset(this.<T>methodNameFor(getter), desiredValue);
   }
 
-  private <T> T fetch(String key) {
-    T value = (T) mutationsMap.get(key);
+  <T> T fetch(String key) {
+    T value = (T) mutations().get(key);
+    if (value == null) {
+      value = (T) collections.get(key);
+    }
     if (value == null) {
       value = (T) valuesMap.get(key);
     }
@@ -166,7 +197,15 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
 
   @Override
   public Map<String, Object> toMap() {
-    return toMap(valuesMap);
+    Map<String, Object> combined =
+        new HashMap<String, Object>(valuesMap.size() + mutations().size());
+    for (Map.Entry<String, Object> e : valuesMap.entrySet()) {
+      String key = e.getKey();
+      DraftCollections.Tracked tracked = collections.get(key);
+      combined.put(key, tracked != null ? tracked.fork() : DraftCollections.track(e.getValue()));
+    }
+    combined.putAll(mutations());
+    return combined;
   }
 
   public Map<String, Object> toMap(Map<String, Object> entityMap) {
@@ -177,26 +216,46 @@ public abstract class AbstractEntityDraft<E> implements Drafted<E> {
         combined.put(e.getKey(), e.getValue());
       }
     } else {
-      combined = new HashMap<String, Object>(mutationsMap.size());
-    }
-    for (String key : mutated()) {
-      combined.put(key, mutationsMap.get(key));
+      combined = new HashMap<String, Object>(mutations().size());
     }
+    combined.putAll(mutations());
     return combined;
   }
 
   @Override
   public Set<String> mutated() {
-    return mutationsMap.keySet();
+    PropertySet mutated = null;
+    for (Map.Entry<String, DraftCollections.Tracked> e : collections.entrySet()) {
+      if (e.getValue().isModified()) {
+        if (mutated == null) {
+          mutated = new PropertySet(mutations().getIndex(), mutations().keySet());
+        }
+        mutated.add(e.getKey());
+      }
+    }
+    return mutated == null ? mutations().keySet() : mutated;
+  }
+
+  Map<String, DraftCollections.Tracked> collections() {
+    return collections;
+  }
+
+  /**
+   * Returns the collection handed out for {@code key} when it was changed in place rather than
+   * replaced, so that only its changes need to be written.
+   */
+  public DraftCollections.Tracked changes(String key) {
+    DraftCollections.Tracked tracked = collections.get(key);
+    return tracked != null && tracked.isModified() ? tracked : null;
   }
 
   @Override
   public Set<String> read() {
-    return readSet;
+    return reads();
   }
 
   @Override
   public String toString() {
-    return mutationsMap.toString();
+    return mutations().toString();
   }
 }
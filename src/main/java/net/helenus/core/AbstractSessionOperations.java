@@ -24,7 +24,12 @@ import com.google.common.util.concurrent.ListenableFuture;
 import java.io.PrintStream;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import net.helenus.core.cache.CacheMetrics;
+import net.helenus.core.cache.CachedQueryResult;
 import net.helenus.core.cache.Facet;
+import net.helenus.core.operation.CounterAccumulator;
+import net.helenus.core.operation.OperationRetries;
 import net.helenus.mapping.value.ColumnValuePreparer;
 import net.helenus.mapping.value.ColumnValueProvider;
 import net.helenus.support.Either;
@@ -35,6 +40,7 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractSessionOperations {
 
   private static final Logger LOG = LoggerFactory.getLogger(AbstractSessionOperations.class);
+  private static final TimestampGenerator TIMESTAMPS = new AtomicMonotonicTimestampGenerator();
 
   public abstract Session currentSession();
 
@@ -114,6 +120,11 @@ public abstract class AbstractSessionOperations {
     return null;
   }
 
+  /** Returns the metrics of the session cache, or null when the session has none. */
+  public CacheMetrics getCacheMetrics() {
+    return null;
+  }
+
   public void mergeCache(Table<String, String, Either<Object, List<Facet>>> uowCache) {}
 
   RuntimeException translateException(RuntimeException e) {
@@ -130,4 +141,45 @@ public abstract class AbstractSessionOperations {
   public void updateCache(Object pojo, List<Facet> facets) {}
 
   public void cacheEvict(List<Facet> facets) {}
+
+  public void cacheAbsent(List<Facet> facets) {}
+
+  public long writeEpoch(String tableName) {
+    return 0L;
+  }
+
+  public void advanceWriteEpoch(String tableName) {}
+
+  public CachedQueryResult checkResultCache(String tableName, String statementKey) {
+    return null;
+  }
+
+  public void updateResultCache(String statementKey, CachedQueryResult result) {}
+
+  public long countCacheTtl() {
+    return 0L;
+  }
+
+  /** Returns the generator of the microsecond timestamps written by this session's statements. */
+  public TimestampGenerator getTimestampGenerator() {
+    return TIMESTAMPS;
+  }
+
+  /** Returns the retries of idempotent operations, or null when they aren't retried. */
+  public OperationRetries getOperationRetries() {
+    return null;
+  }
+
+  /** Returns the accumulator of counter increments, or null when increments are sent at once. */
+  public CounterAccumulator getCounterAccumulator() {
+    return null;
+  }
+
+  /**
+   * Returns the statement prepared for the template identified by {@code key}, preparing it on
+   * first use. Returns null when templates aren't kept, callers then send the statement inline.
+   */
+  public PreparedStatement prepareTemplate(Object key, Supplier<RegularStatement> template) {
+    return null;
+  }
 }
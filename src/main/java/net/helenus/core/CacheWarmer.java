@@ -0,0 +1,152 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.TokenRange;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import net.helenus.mapping.ColumnType;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusProperty;
+import net.helenus.mapping.value.ValueProviderMap;
+import net.helenus.support.HelenusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Preloads the session cache of {@code @Cacheable} entities, either with every row of their table
+ * (read in parallel one token range at a time) or with the partitions of a list of keys. Warming
+ * is best effort, failed reads are logged and skipped.
+ */
+final class CacheWarmer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CacheWarmer.class);
+
+  private final HelenusSession session;
+  private final int parallelism;
+
+  CacheWarmer(HelenusSession session, int parallelism) {
+    this.session = session;
+    this.parallelism = parallelism;
+  }
+
+  /** Loads every row of the entity's table, returns the number of entities cached. */
+  int warm(HelenusEntity entity) {
+    List<HelenusProperty> partitionKeys = partitionKeys(entity);
+    String token =
+        "token("
+            + partitionKeys
+                .stream()
+                .map(p -> p.getColumnName().toCql())
+                .collect(Collectors.joining(", "))
+            + ")";
+    String select = "SELECT * FROM " + entity.getName().toCql() + " WHERE " + token + " > ?";
+    PreparedStatement openEnded = session.prepare(new SimpleStatement(select));
+    PreparedStatement bounded =
+        session.prepare(new SimpleStatement(select + " AND " + token + " <= ?"));
+
+    List<Callable<Integer>> reads = new ArrayList<>();
+    for (TokenRange range : session.getMetadata().getTokenRanges()) {
+      for (TokenRange r : range.unwrap()) {
+        // After unwrapping, a range ending before it starts runs to the end of the ring.
+        BoundStatement statement =
+            r.getEnd().compareTo(r.getStart()) <= 0
+                ? openEnded.bind().setToken(0, r.getStart())
+                : bounded.bind().setToken(0, r.getStart()).setToken(1, r.getEnd());
+        reads.add(() -> load(entity, statement));
+      }
+    }
+    return run(entity, reads);
+  }
+
+  /** Loads the partitions identified by the given keys, returns the number of entities cached. */
+  int warm(HelenusEntity entity, Iterable<?> keys) {
+    List<HelenusProperty> partitionKeys = partitionKeys(entity);
+    if (partitionKeys.size() != 1) {
+      throw new HelenusException(
+          "warming the cache from a list of keys requires a single partition key column for "
+              + entity.getMappingInterface());
+    }
+    PreparedStatement prepared =
+        session.prepare(
+            new SimpleStatement(
+                "SELECT * FROM "
+                    + entity.getName().toCql()
+                    + " WHERE "
+                    + partitionKeys.get(0).getColumnName().toCql()
+                    + " = ?"));
+
+    List<Callable<Integer>> reads = new ArrayList<>();
+    for (Object key : keys) {
+      BoundStatement statement = prepared.bind(key);
+      reads.add(() -> load(entity, statement));
+    }
+    return run(entity, reads);
+  }
+
+  private List<HelenusProperty> partitionKeys(HelenusEntity entity) {
+    return entity
+        .getOrderedProperties()
+        .stream()
+        .filter(p -> p.getColumnType() == ColumnType.PARTITION_KEY)
+        .collect(Collectors.toList());
+  }
+
+  private int load(HelenusEntity entity, BoundStatement statement) {
+    int count = 0;
+    ResultSet resultSet = session.execute(statement);
+    for (Row row : resultSet) {
+      Map<String, Object> map = new ValueProviderMap(row, session.getValueProvider(), entity);
+      Object pojo = Helenus.map(entity.getMappingInterface(), map);
+      session.updateCache(pojo, entity.getFacets());
+      count++;
+    }
+    return count;
+  }
+
+  private int run(HelenusEntity entity, List<Callable<Integer>> reads) {
+    int count = 0;
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    try {
+      for (Future<Integer> future : executor.invokeAll(reads)) {
+        try {
+          count += future.get();
+        } catch (ExecutionException e) {
+          LOG.warn("failed to warm cache for " + entity.getMappingInterface(), e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+    LOG.info("warmed cache with {} {} entities", count, entity.getName().toCql());
+    return count;
+  }
+}
@@ -0,0 +1,441 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Collection views handed out by {@link AbstractEntityDraft}. A view shares the entity's
+ * collection until it is first written, then works on a private copy and records the element
+ * level changes made to it so that an update can send those instead of the whole collection.
+ */
+public final class DraftCollections {
+
+  private DraftCollections() {}
+
+  public interface Tracked {
+
+    /** True once the view differs from the collection it was created over. */
+    boolean isModified();
+
+    /** True when the changes can't be expressed as element additions and removals. */
+    boolean isRewritten();
+
+    /** A new view over the current contents, sharing them until either side is written. */
+    Tracked fork();
+  }
+
+  /** Wraps collection values in a view, other values are returned as they are. */
+  @SuppressWarnings("unchecked")
+  public static Object track(Object value) {
+    if (value instanceof Tracked) {
+      return ((Tracked) value).fork();
+    } else if (value instanceof List) {
+      return new DraftList<Object>((List<Object>) value);
+    } else if (value instanceof Set) {
+      return new DraftSet<Object>((Set<Object>) value);
+    } else if (value instanceof Map) {
+      return new DraftMap<Object, Object>((Map<Object, Object>) value);
+    }
+    return value;
+  }
+
+  public static final class DraftSet<V> extends AbstractSet<V> implements Tracked, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<V> base;
+    private Set<V> copy;
+    private boolean shared;
+    private Set<V> added;
+    private Set<V> removed;
+
+    DraftSet(Set<V> base) {
+      this.base = base;
+    }
+
+    private Set<V> source() {
+      return copy != null ? copy : base;
+    }
+
+    private Set<V> writable() {
+      if (copy == null || shared) {
+        copy = new LinkedHashSet<V>(source());
+        shared = false;
+      }
+      return copy;
+    }
+
+    public Set<V> added() {
+      return added == null ? Collections.<V>emptySet() : Collections.unmodifiableSet(added);
+    }
+
+    public Set<V> removed() {
+      return removed == null ? Collections.<V>emptySet() : Collections.unmodifiableSet(removed);
+    }
+
+    @Override
+    public boolean isModified() {
+      return (added != null && !added.isEmpty()) || (removed != null && !removed.isEmpty());
+    }
+
+    @Override
+    public boolean isRewritten() {
+      return false;
+    }
+
+    @Override
+    public DraftSet<V> fork() {
+      if (copy == null) {
+        return new DraftSet<V>(base);
+      }
+      shared = true;
+      return new DraftSet<V>(copy);
+    }
+
+    @Override
+    public int size() {
+      return source().size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return source().contains(o);
+    }
+
+    @Override
+    public boolean add(V value) {
+      if (source().contains(value)) {
+        return false;
+      }
+      writable().add(value);
+      if (removed == null || !removed.remove(value)) {
+        if (added == null) {
+          added = new LinkedHashSet<V>();
+        }
+        added.add(value);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!source().contains(o)) {
+        return false;
+      }
+      writable().remove(o);
+      recordRemoval(o);
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordRemoval(Object o) {
+      if (added == null || !added.remove(o)) {
+        if (removed == null) {
+          removed = new LinkedHashSet<V>();
+        }
+        removed.add((V) o);
+      }
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      final Set<V> source = source();
+      final Iterator<V> it = source.iterator();
+      return new Iterator<V>() {
+        V last;
+
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public V next() {
+          return last = it.next();
+        }
+
+        @Override
+        public void remove() {
+          if (source == copy && !shared) {
+            it.remove();
+            recordRemoval(last);
+          } else {
+            DraftSet.this.remove(last);
+          }
+        }
+      };
+    }
+
+    private Object writeReplace() {
+      return new LinkedHashSet<V>(source());
+    }
+  }
+
+  public static final class DraftList<V> extends AbstractList<V>
+      implements RandomAccess, Tracked, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<V> base;
+    private List<V> copy;
+    private boolean shared;
+    private List<V> appended;
+    private boolean rewritten;
+
+    DraftList(List<V> base) {
+      this.base = base;
+    }
+
+    private List<V> source() {
+      return copy != null ? copy : base;
+    }
+
+    private List<V> writable() {
+      if (copy == null || shared) {
+        copy = new ArrayList<V>(source());
+        shared = false;
+      }
+      return copy;
+    }
+
+    public List<V> appended() {
+      return appended == null
+          ? Collections.<V>emptyList()
+          : Collections.unmodifiableList(appended);
+    }
+
+    @Override
+    public boolean isModified() {
+      return rewritten || (appended != null && !appended.isEmpty());
+    }
+
+    @Override
+    public boolean isRewritten() {
+      return rewritten;
+    }
+
+    @Override
+    public DraftList<V> fork() {
+      if (copy == null) {
+        return new DraftList<V>(base);
+      }
+      shared = true;
+      return new DraftList<V>(copy);
+    }
+
+    @Override
+    public int size() {
+      return source().size();
+    }
+
+    @Override
+    public V get(int index) {
+      return source().get(index);
+    }
+
+    @Override
+    public V set(int index, V value) {
+      V previous = source().get(index);
+      if (!Objects.equals(previous, value)) {
+        writable().set(index, value);
+        rewritten = true;
+      }
+      return previous;
+    }
+
+    @Override
+    public void add(int index, V value) {
+      if (index == size() && !rewritten) {
+        if (appended == null) {
+          appended = new ArrayList<V>();
+        }
+        appended.add(value);
+      } else {
+        rewritten = true;
+      }
+      writable().add(index, value);
+      modCount++;
+    }
+
+    @Override
+    public V remove(int index) {
+      V previous = writable().remove(index);
+      rewritten = true;
+      modCount++;
+      return previous;
+    }
+
+    private Object writeReplace() {
+      return new ArrayList<V>(source());
+    }
+  }
+
+  public static final class DraftMap<K, V> extends AbstractMap<K, V>
+      implements Tracked, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<K, V> base;
+    private Map<K, V> copy;
+    private boolean shared;
+    private Map<K, V> puts;
+    private Set<K> removals;
+
+    DraftMap(Map<K, V> base) {
+      this.base = base;
+    }
+
+    private Map<K, V> source() {
+      return copy != null ? copy : base;
+    }
+
+    private Map<K, V> writable() {
+      if (copy == null || shared) {
+        copy = new LinkedHashMap<K, V>(source());
+        shared = false;
+      }
+      return copy;
+    }
+
+    public Map<K, V> puts() {
+      return puts == null ? Collections.<K, V>emptyMap() : Collections.unmodifiableMap(puts);
+    }
+
+    public Set<K> removals() {
+      return removals == null ? Collections.<K>emptySet() : Collections.unmodifiableSet(removals);
+    }
+
+    @Override
+    public boolean isModified() {
+      return (puts != null && !puts.isEmpty()) || (removals != null && !removals.isEmpty());
+    }
+
+    @Override
+    public boolean isRewritten() {
+      return false;
+    }
+
+    @Override
+    public DraftMap<K, V> fork() {
+      if (copy == null) {
+        return new DraftMap<K, V>(base);
+      }
+      shared = true;
+      return new DraftMap<K, V>(copy);
+    }
+
+    @Override
+    public int size() {
+      return source().size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return source().containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+      return source().get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+      Map<K, V> source = source();
+      if (source.containsKey(key) && Objects.equals(source.get(key), value)) {
+        return value;
+      }
+      V previous = writable().put(key, value);
+      if (removals != null) {
+        removals.remove(key);
+      }
+      if (puts == null) {
+        puts = new LinkedHashMap<K, V>();
+      }
+      puts.put(key, value);
+      return previous;
+    }
+
+    @Override
+    public V remove(Object key) {
+      if (!source().containsKey(key)) {
+        return null;
+      }
+      V previous = writable().remove(key);
+      recordRemoval(key);
+      return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordRemoval(Object key) {
+      if (puts != null) {
+        puts.remove(key);
+      }
+      if (removals == null) {
+        removals = new LinkedHashSet<K>();
+      }
+      removals.add((K) key);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+      return new AbstractSet<Map.Entry<K, V>>() {
+        @Override
+        public int size() {
+          return DraftMap.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+          final Map<K, V> source = source();
+          final Iterator<Map.Entry<K, V>> it = source.entrySet().iterator();
+          return new Iterator<Map.Entry<K, V>>() {
+            K last;
+
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+              Map.Entry<K, V> e = it.next();
+              last = e.getKey();
+              return new AbstractMap.SimpleImmutableEntry<K, V>(e);
+            }
+
+            @Override
+            public void remove() {
+              if (source == copy && !shared) {
+                it.remove();
+                recordRemoval(last);
+              } else {
+                DraftMap.this.remove(last);
+              }
+            }
+          };
+        }
+      };
+    }
+
+    private Object writeReplace() {
+      return new LinkedHashMap<K, V>(source());
+    }
+  }
+}
@@ -87,6 +87,12 @@ public final class Filter<V> {
     return new Filter<V>(node, postulate);
   }
 
+  public static <V> Filter<V> create(HelenusPropertyNode node, Postulate<V> postulate) {
+    Objects.requireNonNull(node, "empty node");
+    Objects.requireNonNull(postulate, "empty operator");
+    return new Filter<V>(node, postulate);
+  }
+
   public static <V> Filter<V> create(Getter<V> getter, Operator op, V val) {
     Objects.requireNonNull(getter, "empty getter");
     Objects.requireNonNull(op, "empty op");
@@ -112,6 +118,10 @@ public final class Filter<V> {
     return postulate.getClause(node, valuePreparer);
   }
 
+  public Operator postulateOperator() {
+    return postulate.operator();
+  }
+
   public V[] postulateValues() {
     return postulate.values();
   }
@@ -30,6 +30,7 @@ import net.helenus.config.HelenusSettings;
 import net.helenus.core.reflect.DslExportable;
 import net.helenus.core.reflect.HelenusPropertyNode;
 import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.MappingUtil;
 import net.helenus.support.HelenusMappingException;
 
 public final class Helenus {
@@ -41,6 +42,15 @@ public final class Helenus {
   private static final Set<HelenusSession> sessions = new HashSet<HelenusSession>();
   private static volatile HelenusSettings settings = new DefaultHelenusSettings();
   private static volatile HelenusSession singleton;
+  // Bumped whenever the cached dsl are dropped, entities resolved before then are stale.
+  private static volatile int generation;
+  private static final ClassValue<Mapping> mappings =
+      new ClassValue<Mapping>() {
+        @Override
+        protected Mapping computeValue(Class<?> type) {
+          return new Mapping(type.isInterface() ? type : MappingUtil.getMappingInterfaceOf(type));
+        }
+      };
 
   private Helenus() {}
 
@@ -60,6 +70,7 @@ public final class Helenus {
           sessions.remove(session);
         });
     dslCache.clear();
+    generation++;
   }
 
   public static HelenusSettings settings() {
@@ -97,6 +108,7 @@ public final class Helenus {
 
   public static void clearDslCache() {
     dslCache.clear();
+    generation++;
   }
 
   public static <E> E dsl(Class<E> iface) {
@@ -148,6 +160,12 @@ public final class Helenus {
   }
 
   public static HelenusEntity entity(Class<?> iface) {
+    Mapping mapping = mappings.get(iface);
+    HelenusEntity entity = mapping.entity();
+    if (entity != null) {
+      return entity;
+    }
+    int current = generation;
     Metadata metadata = metadataForEntity.get(iface);
     if (metadata == null) {
       HelenusSession session = session();
@@ -155,11 +173,16 @@ public final class Helenus {
         metadata = session.getMetadata();
       }
     }
-    return entity(iface, metadata);
+    return mapping.resolved(entity(iface, metadata), current);
   }
 
   public static HelenusEntity entity(Class<?> iface, Metadata metadata) {
 
+    HelenusEntity entity = mappings.get(iface).entity();
+    if (entity != null) {
+      return entity;
+    }
+
     Object dsl = dsl(iface, metadata);
 
     DslExportable e = (DslExportable) dsl;
@@ -167,6 +190,24 @@ public final class Helenus {
     return e.getHelenusMappingEntity();
   }
 
+  /**
+   * Returns the mapping of the entity `pojo` is an instance of, be it a proxy, a generated class
+   * or a class implementing the mapping interface. After the first call for a class this costs no
+   * more than a lookup in a ClassValue.
+   */
+  public static HelenusEntity entityOf(Object pojo) {
+    Mapping mapping = mappings.get(pojo.getClass());
+    HelenusEntity entity = mapping.entity();
+    if (entity != null) {
+      return entity;
+    }
+    if (mapping.iface == null) {
+      throw new HelenusMappingException("dsl interface not found for " + pojo);
+    }
+    int current = generation;
+    return mapping.resolved(entity(mapping.iface), current);
+  }
+
   public static HelenusEntity resolve(Object ifaceOrDsl) {
     return resolve(ifaceOrDsl, metadataForEntity.get(ifaceOrDsl));
   }
@@ -200,4 +241,36 @@ public final class Helenus {
 
     throw new HelenusMappingException("unknown dsl object or mapping interface " + ifaceOrDsl);
   }
+
+  /** The mapping interface of a class and, once resolved, its entity. */
+  private static final class Mapping {
+
+    private final Class<?> iface;
+    private volatile Resolved resolved;
+
+    Mapping(Class<?> iface) {
+      this.iface = iface;
+    }
+
+    HelenusEntity entity() {
+      Resolved resolved = this.resolved;
+      return resolved != null && resolved.generation == generation ? resolved.entity : null;
+    }
+
+    HelenusEntity resolved(HelenusEntity entity, int generation) {
+      this.resolved = new Resolved(entity, generation);
+      return entity;
+    }
+  }
+
+  private static final class Resolved {
+
+    private final HelenusEntity entity;
+    private final int generation;
+
+    Resolved(HelenusEntity entity, int generation) {
+      this.entity = entity;
+      this.generation = generation;
+    }
+  }
 }
@@ -18,18 +18,32 @@ package net.helenus.core;
 
 import static net.helenus.core.Query.eq;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.*;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Table;
 import java.io.Closeable;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.cache.Cache;
 import javax.cache.CacheManager;
+import net.helenus.core.cache.AbsentEntry;
+import net.helenus.core.cache.CacheMetrics;
+import net.helenus.core.cache.CacheSnapshot;
 import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.cache.CachedQueryResult;
 import net.helenus.core.cache.Facet;
 import net.helenus.core.cache.UnboundFacet;
 import net.helenus.core.operation.*;
@@ -37,6 +51,7 @@ import net.helenus.core.reflect.Drafted;
 import net.helenus.core.reflect.HelenusPropertyNode;
 import net.helenus.core.reflect.MapExportable;
 import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusEntityType;
 import net.helenus.mapping.HelenusProperty;
 import net.helenus.mapping.MappingUtil;
 import net.helenus.mapping.value.*;
@@ -44,9 +59,15 @@ import net.helenus.support.*;
 import net.helenus.support.Fun.Tuple1;
 import net.helenus.support.Fun.Tuple2;
 import net.helenus.support.Fun.Tuple6;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class HelenusSession extends AbstractSessionOperations implements Closeable {
   public static final Object deleted = new Object();
+  private static final Logger LOG = LoggerFactory.getLogger(HelenusSession.class);
+  // Statement templates are keyed by the set of columns they write, this bounds how many
+  // distinct sets are kept prepared. The least recently used are evicted beyond it.
+  private static final int MAX_TEMPLATES = 1024;
 
   private final Session session;
   private final CodecRegistry registry;
@@ -58,6 +79,16 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
   private final Executor executor;
   private final boolean dropSchemaOnClose;
   private final CacheManager cacheManager;
+  private final long negativeCacheTtl;
+  private final boolean cacheQueryResults;
+  private final long countCacheTtl;
+  private final Path cacheSnapshot;
+  private final CacheMetrics cacheMetrics;
+  private final CounterAccumulator counterAccumulator;
+  private final OperationRetries operationRetries;
+  private final TimestampGenerator timestampGenerator;
+  private final ConcurrentMap<String, AtomicLong> writeEpochs = new ConcurrentHashMap<>();
+  private final com.google.common.cache.Cache<Object, PreparedStatement> templates;
   private final RowColumnValueProvider valueProvider;
   private final StatementColumnValuePreparer valuePreparer;
   private final Metadata metadata;
@@ -78,7 +109,15 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
       ConsistencyLevel consistencyLevel,
       boolean defaultQueryIdempotency,
       CacheManager cacheManager,
-      MetricRegistry metricRegistry) {
+      long negativeCacheTtl,
+      boolean cacheQueryResults,
+      long countCacheTtl,
+      Path cacheSnapshot,
+      MetricRegistry metricRegistry,
+      long counterMaxDelay,
+      int counterMaxPending,
+      OperationRetries operationRetries,
+      TimestampGenerator timestampGenerator) {
     this.session = session;
     this.registry = registry == null ? CodecRegistry.DEFAULT_INSTANCE : registry;
     this.usingKeyspace =
@@ -95,10 +134,40 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
     this.defaultQueryIdempotency = defaultQueryIdempotency;
     this.metricRegistry = metricRegistry;
     this.cacheManager = cacheManager;
+    this.negativeCacheTtl = negativeCacheTtl;
+    this.cacheQueryResults = cacheQueryResults;
+    this.countCacheTtl = countCacheTtl;
+    this.cacheSnapshot = cacheSnapshot;
+    this.cacheMetrics = new CacheMetrics(metricRegistry);
+    Meter templateEvictions =
+        metricRegistry == null ? null : metricRegistry.meter("net.helenus.templates.evictions");
+    this.templates =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAX_TEMPLATES)
+            .<Object, PreparedStatement>removalListener(
+                notification -> {
+                  if (templateEvictions != null && notification.wasEvicted()) {
+                    templateEvictions.mark();
+                  }
+                })
+            .build();
+    this.operationRetries = operationRetries;
+    if (timestampGenerator == null) {
+      timestampGenerator =
+          session == null
+              ? new AtomicMonotonicTimestampGenerator()
+              : session.getCluster().getConfiguration().getPolicies().getTimestampGenerator();
+    }
+    this.timestampGenerator = timestampGenerator;
 
     this.valueProvider = new RowColumnValueProvider(this.sessionRepository);
     this.valuePreparer = new StatementColumnValuePreparer(this.sessionRepository);
     this.metadata = session == null ? null : session.getCluster().getMetadata();
+    this.counterAccumulator =
+        counterMaxDelay > 0
+            ? new CounterAccumulator(
+                this, counterMaxDelay, TimeUnit.MILLISECONDS, counterMaxPending, 32)
+            : null;
   }
 
   public UnitOfWork begin() {
@@ -184,6 +253,26 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
     return metricRegistry;
   }
 
+  @Override
+  public CacheMetrics getCacheMetrics() {
+    return cacheMetrics;
+  }
+
+  @Override
+  public CounterAccumulator getCounterAccumulator() {
+    return counterAccumulator;
+  }
+
+  @Override
+  public OperationRetries getOperationRetries() {
+    return operationRetries;
+  }
+
+  @Override
+  public TimestampGenerator getTimestampGenerator() {
+    return timestampGenerator;
+  }
+
   @Override
   public ConsistencyLevel getDefaultConsistencyLevel() {
     return defaultConsistencyLevel;
@@ -198,26 +287,128 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
   public Object checkCache(String tableName, List<Facet> facets) {
     Object result = null;
     if (cacheManager != null) {
-      Cache<String, Object> cache = cacheManager.getCache(tableName);
+      Cache<String, Object> cache = getCache(tableName);
       if (cache != null) {
-        for (String key : CacheUtil.flatKeys(tableName, facets)) {
+        cacheMetrics.lookup(tableName, facets);
+        for (String[] combination : CacheUtil.flattenFacets(facets)) {
+          String key = tableName + "." + Arrays.toString(combination);
           result = cache.get(key);
           if (result != null) {
+            if (result instanceof AbsentEntry) {
+              if (((AbsentEntry) result).isExpired()) {
+                if (cache.remove(key, result)) {
+                  cacheMetrics.eviction(tableName);
+                }
+                continue;
+              }
+              cacheMetrics.hit(tableName, combination);
+              return deleted;
+            }
+            cacheMetrics.hit(tableName, combination);
             return result;
           }
         }
+        cacheMetrics.miss(tableName);
       }
     }
     return null;
   }
 
+  @Override
+  public void cacheAbsent(List<Facet> facets) {
+    if (cacheManager != null && negativeCacheTtl > 0) {
+      String tableName = CacheUtil.schemaName(facets);
+      Cache<String, Object> cache = getCache(tableName);
+      if (cache != null) {
+        // Only the combination made of every bound facet is known to be absent, a row may
+        // still exist for any subset of those facets.
+        long bound =
+            facets.stream().filter(f -> !f.fixed()).filter(f -> f.value() != null).count();
+        List<String[]> facetCombinations = CacheUtil.flattenFacets(facets);
+        if (facetCombinations.size() > 0) {
+          String[] combination = facetCombinations.get(facetCombinations.size() - 1);
+          if (combination.length == bound) {
+            String cacheKey = tableName + "." + Arrays.toString(combination);
+            cache.putIfAbsent(cacheKey, new AbsentEntry(negativeCacheTtl));
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public long writeEpoch(String tableName) {
+    AtomicLong epoch = writeEpochs.get(tableName);
+    return epoch == null ? 0L : epoch.get();
+  }
+
+  @Override
+  public void advanceWriteEpoch(String tableName) {
+    writeEpochs.computeIfAbsent(tableName, name -> new AtomicLong()).incrementAndGet();
+  }
+
+  @Override
+  public CachedQueryResult checkResultCache(String tableName, String statementKey) {
+    if (cacheManager != null && (cacheQueryResults || countCacheTtl > 0)) {
+      Cache<String, Object> cache = getCache(tableName);
+      if (cache != null) {
+        Object value = cache.get(statementKey);
+        if (value instanceof CachedQueryResult) {
+          CachedQueryResult result = (CachedQueryResult) value;
+          if (result.isCurrent(writeEpoch(tableName))) {
+            return result;
+          }
+          cache.remove(statementKey, value);
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void updateResultCache(String statementKey, CachedQueryResult result) {
+    // Results given a time to live (counts) are cached even when query results are not.
+    if (cacheManager != null && (cacheQueryResults || result.expiresAt() > 0)) {
+      String tableName = result.tableName();
+      // Results read before the most recent write to the table are already stale.
+      if (result.isCurrent(writeEpoch(tableName))) {
+        Cache<String, Object> cache = getCache(tableName);
+        if (cache != null) {
+          cache.put(statementKey, result);
+        }
+      }
+    }
+  }
+
+  @Override
+  public long countCacheTtl() {
+    return countCacheTtl;
+  }
+
+  @Override
+  public PreparedStatement prepareTemplate(Object key, Supplier<RegularStatement> template) {
+    PreparedStatement prepared = templates.getIfPresent(key);
+    if (prepared == null) {
+      prepared = prepare(template.get());
+      PreparedStatement existing = templates.asMap().putIfAbsent(key, prepared);
+      if (existing != null) {
+        prepared = existing;
+      }
+    }
+    return prepared;
+  }
+
   @Override
   public void cacheEvict(List<Facet> facets) {
     if (cacheManager != null) {
       String tableName = CacheUtil.schemaName(facets);
-      Cache<String, Object> cache = cacheManager.getCache(tableName);
+      Cache<String, Object> cache = getCache(tableName);
       if (cache != null) {
-        CacheUtil.flatKeys(tableName, facets).forEach(key -> cache.remove(key));
+        for (String key : CacheUtil.flatKeys(tableName, facets)) {
+          if (cache.remove(key)) {
+            cacheMetrics.eviction(tableName);
+          }
+        }
       }
     }
   }
@@ -267,7 +458,7 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
               .distinct()
               .collect(Collectors.toList());
       for (Object pojo : items) {
-        HelenusEntity entity = Helenus.resolve(MappingUtil.getMappingInterface(pojo));
+        HelenusEntity entity = Helenus.entityOf(pojo);
         Map<String, Object> valueMap =
             pojo instanceof MapExportable ? ((MapExportable) pojo).toMap() : null;
         if (entity.isCacheable()) {
@@ -313,10 +504,13 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
               .collect(Collectors.toList());
       for (List<Facet> facets : deletedFacetSets) {
         String tableName = CacheUtil.schemaName(facets);
-        Cache<String, Object> cache = cacheManager.getCache(tableName);
+        Cache<String, Object> cache = getCache(tableName);
         if (cache != null) {
-          List<String> keys = CacheUtil.flatKeys(tableName, facets);
-          keys.forEach(key -> cache.remove(key));
+          for (String key : CacheUtil.flatKeys(tableName, facets)) {
+            if (cache.remove(key)) {
+              cacheMetrics.eviction(tableName);
+            }
+          }
         }
       }
     }
@@ -325,20 +519,33 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
   private void replaceCachedFacetValues(
       Object pojo, String tableName, List<String[]> facetCombinations) {
     if (cacheManager != null) {
-      for (String[] combination : facetCombinations) {
-        String cacheKey = tableName + "." + Arrays.toString(combination);
-        Cache<String, Object> cache = cacheManager.getCache(tableName);
-        if (cache != null) {
+      Cache<String, Object> cache = getCache(tableName);
+      if (cache != null) {
+        for (String[] combination : facetCombinations) {
+          String cacheKey = tableName + "." + Arrays.toString(combination);
           if (pojo == null || pojo == HelenusSession.deleted) {
-            cache.remove(cacheKey);
+            if (cache.remove(cacheKey)) {
+              cacheMetrics.eviction(tableName);
+            }
           } else {
             cache.put(cacheKey, pojo);
           }
         }
+        if (pojo != null && pojo != HelenusSession.deleted && facetCombinations.size() > 0) {
+          cacheMetrics.load(tableName);
+        }
       }
     }
   }
 
+  private Cache<String, Object> getCache(String tableName) {
+    Cache<String, Object> cache = cacheManager.getCache(tableName);
+    if (cache != null) {
+      cacheMetrics.watch(tableName, cache);
+    }
+    return cache;
+  }
+
   public CacheManager getCacheManager() {
     return cacheManager;
   }
@@ -581,58 +788,32 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
     }
     AbstractEntityDraft<E> draft = (AbstractEntityDraft<E>) drafted;
     UpdateOperation update = new UpdateOperation<E>(this, draft);
-    Map<String, Object> map = draft.toMap();
-    Set<String> mutatedProperties = draft.mutated();
-    HelenusEntity entity = Helenus.entity(draft.getEntityClass());
-
-    // Add all the mutated values contained in the draft.
-    entity
-        .getOrderedProperties()
-        .forEach(
-            property -> {
-              switch (property.getColumnType()) {
-                case PARTITION_KEY:
-                case CLUSTERING_COLUMN:
-                  break;
-                default:
-                  String propertyName = property.getPropertyName();
-                  if (mutatedProperties.contains(propertyName)) {
-                    Object value = map.get(propertyName);
-                    Getter<Object> getter =
-                        new Getter<Object>() {
-                          @Override
-                          public Object get() {
-                            throw new DslPropertyException(
-                                new HelenusPropertyNode(property, Optional.empty()));
-                          }
-                        };
-                    update.set(getter, value);
-                  }
-              }
-            });
+    PropertyValueMap mutations = draft.mutations();
+    PropertyIndex index = mutations.getIndex();
+
+    // Add all the mutated values contained in the draft, by ordinal.
+    for (int i = mutations.nextOrdinal(0); i >= 0; i = mutations.nextOrdinal(i + 1)) {
+      if (!index.isPrimaryKey(i)) {
+        update.set(index.property(i), mutations.valueAt(i));
+      }
+    }
+
+    // Collections changed in place only need their changes written.
+    for (Map.Entry<String, DraftCollections.Tracked> e : draft.collections().entrySet()) {
+      int ordinal = index.ordinal(e.getKey());
+      DraftCollections.Tracked changes = e.getValue();
+      if (ordinal >= 0 && changes.isModified() && !index.isPrimaryKey(ordinal)) {
+        update.changes(index.property(ordinal), changes);
+      }
+    }
 
     // Add the partition and clustering keys if they were in the draft (normally the
     // case).
-    entity
-        .getOrderedProperties()
-        .forEach(
-            property -> {
-              switch (property.getColumnType()) {
-                case PARTITION_KEY:
-                case CLUSTERING_COLUMN:
-                  String propertyName = property.getPropertyName();
-                  Object value = map.get(propertyName);
-                  Getter<Object> getter =
-                      new Getter<Object>() {
-                        @Override
-                        public Object get() {
-                          throw new DslPropertyException(
-                              new HelenusPropertyNode(property, Optional.empty()));
-                        }
-                      };
-                  update.where(getter, eq(value));
-              }
-            });
+    for (HelenusProperty property : index.primaryKey()) {
+      Object value = draft.fetch(property.getPropertyName());
+      update.where(
+          Filter.create(new HelenusPropertyNode(property, Optional.empty()), eq(value)));
+    }
 
     return update;
   }
@@ -677,8 +858,7 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
   private <T> InsertOperation<T> insert(T pojo, Set<String> mutations, Set<String> read) {
     Objects.requireNonNull(pojo, "pojo is empty");
 
-    Class<?> iface = MappingUtil.getMappingInterface(pojo);
-    HelenusEntity entity = Helenus.entity(iface);
+    HelenusEntity entity = Helenus.entityOf(pojo);
 
     return new InsertOperation<T>(this, entity, pojo, mutations, read, true);
   }
@@ -714,12 +894,24 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
   private <T> InsertOperation<T> upsert(T pojo, Set<String> mutations, Set<String> read) {
     Objects.requireNonNull(pojo, "pojo is empty");
 
-    Class<?> iface = MappingUtil.getMappingInterface(pojo);
-    HelenusEntity entity = Helenus.entity(iface);
+    HelenusEntity entity = Helenus.entityOf(pojo);
 
     return new InsertOperation<T>(this, entity, pojo, mutations, read, false);
   }
 
+  /**
+   * Inserts a stream of entities IF NOT EXISTS, keeping several requests in flight. See {@link
+   * BulkOperation} for the batching and rate limiting options.
+   */
+  public <E> BulkOperation<E> bulkInsert(Stream<E> entities) {
+    return new BulkOperation<E>(this, entities, true);
+  }
+
+  /** Upserts a stream of entities in UNLOGGED batches grouped by partition. */
+  public <E> BulkOperation<E> bulkUpsert(Stream<E> entities) {
+    return new BulkOperation<E>(this, entities, false);
+  }
+
   public DeleteOperation delete() {
     return new DeleteOperation(this);
   }
@@ -746,6 +938,12 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
       return;
     }
 
+    if (counterAccumulator != null) {
+      counterAccumulator.close();
+    }
+
+    writeCacheSnapshot();
+
     if (dropSchemaOnClose) {
       dropSchema();
     }
@@ -755,16 +953,42 @@ public class HelenusSession extends AbstractSessionOperations implements Closeab
 
   public CloseFuture closeAsync() {
 
-    if (!session.isClosed() && dropSchemaOnClose) {
-      dropSchema();
+    if (!session.isClosed()) {
+      if (counterAccumulator != null) {
+        counterAccumulator.close();
+      }
+      writeCacheSnapshot();
+      if (dropSchemaOnClose) {
+        dropSchema();
+      }
     }
 
     return session.closeAsync();
   }
 
+  private void writeCacheSnapshot() {
+    if (cacheManager == null || cacheSnapshot == null) {
+      return;
+    }
+    Set<String> cacheNames =
+        sessionRepository
+            .entities()
+            .stream()
+            .filter(e -> e.getType() == HelenusEntityType.TABLE && e.isCacheable())
+            .map(e -> CacheUtil.schemaName(e.getFacets()))
+            .collect(Collectors.toSet());
+    try {
+      int count = CacheSnapshot.write(cacheSnapshot, cacheManager, cacheNames);
+      LOG.info("wrote {} cached entities to {}", count, cacheSnapshot);
+    } catch (IOException e) {
+      LOG.warn("unable to write cache snapshot " + cacheSnapshot, e);
+    }
+  }
+
   private void dropSchema() {
 
     sessionRepository.entities().forEach(e -> dropEntity(e));
+    templates.invalidateAll();
   }
 
   private void dropEntity(HelenusEntity entity) {
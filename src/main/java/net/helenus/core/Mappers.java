@@ -16,24 +16,68 @@
  */
 package net.helenus.core;
 
+import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.Row;
 import java.util.function.Function;
 import net.helenus.core.reflect.HelenusPropertyNode;
 import net.helenus.mapping.HelenusProperty;
 import net.helenus.mapping.value.ColumnValueProvider;
+import net.helenus.mapping.value.RowColumnValueProvider;
+import net.helenus.mapping.value.RowDecoder;
 import net.helenus.support.Fun;
 
 public final class Mappers {
 
   private Mappers() {}
 
+  /**
+   * Reads rows through a decoder built once per result set shape, when `provider` reads rows from
+   * the database.
+   */
+  private static ColumnValueProvider compiled(ColumnValueProvider provider) {
+    if (provider instanceof RowColumnValueProvider) {
+      return new CompiledColumnValueProvider((RowColumnValueProvider) provider);
+    }
+    return provider;
+  }
+
+  private static final class CompiledColumnValueProvider implements ColumnValueProvider {
+
+    private final RowColumnValueProvider provider;
+    private volatile RowDecoder decoder;
+
+    CompiledColumnValueProvider(RowColumnValueProvider provider) {
+      this.provider = provider;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> V getColumnValue(
+        Object source, int columnIndex, HelenusProperty property, boolean immutable) {
+      if (columnIndex < 0 || !(source instanceof Row)) {
+        return provider.getColumnValue(source, columnIndex, property, immutable);
+      }
+      Row row = (Row) source;
+      ColumnDefinitions columns = row.getColumnDefinitions();
+      RowDecoder cached = this.decoder;
+      RowDecoder decoder =
+          cached != null && cached.decodes(columns)
+              ? cached.of(columns)
+              : provider.decoderFor(columns);
+      if (decoder != cached) {
+        this.decoder = decoder;
+      }
+      return (V) decoder.decode(row, columnIndex, property, immutable);
+    }
+  }
+
   public static final class Mapper1<A> implements Function<Row, Fun.Tuple1<A>> {
 
     private final ColumnValueProvider provider;
     private final HelenusProperty p1;
 
     public Mapper1(ColumnValueProvider provider, HelenusPropertyNode p1) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
     }
 
@@ -50,7 +94,7 @@ public final class Mappers {
     private final HelenusProperty p2;
 
     public Mapper2(ColumnValueProvider provider, HelenusPropertyNode p1, HelenusPropertyNode p2) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
       this.p2 = p2.getProperty();
     }
@@ -74,7 +118,7 @@ public final class Mappers {
         HelenusPropertyNode p1,
         HelenusPropertyNode p2,
         HelenusPropertyNode p3) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
       this.p2 = p2.getProperty();
       this.p3 = p3.getProperty();
@@ -103,7 +147,7 @@ public final class Mappers {
         HelenusPropertyNode p2,
         HelenusPropertyNode p3,
         HelenusPropertyNode p4) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
       this.p2 = p2.getProperty();
       this.p3 = p3.getProperty();
@@ -133,7 +177,7 @@ public final class Mappers {
         HelenusPropertyNode p3,
         HelenusPropertyNode p4,
         HelenusPropertyNode p5) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
       this.p2 = p2.getProperty();
       this.p3 = p3.getProperty();
@@ -166,7 +210,7 @@ public final class Mappers {
         HelenusPropertyNode p4,
         HelenusPropertyNode p5,
         HelenusPropertyNode p6) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
       this.p2 = p2.getProperty();
       this.p3 = p3.getProperty();
@@ -202,7 +246,7 @@ public final class Mappers {
         HelenusPropertyNode p5,
         HelenusPropertyNode p6,
         HelenusPropertyNode p7) {
-      this.provider = provider;
+      this.provider = compiled(provider);
       this.p1 = p1.getProperty();
       this.p2 = p2.getProperty();
       this.p3 = p3.getProperty();
@@ -71,6 +71,10 @@ public final class Postulate<V> {
     }
   }
 
+  public Operator operator() {
+    return operator;
+  }
+
   public V[] values() {
     return values;
   }
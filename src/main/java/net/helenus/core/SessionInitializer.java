@@ -21,11 +21,15 @@ import com.datastax.driver.core.*;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import javax.cache.CacheManager;
+import net.helenus.core.cache.CacheSnapshot;
+import net.helenus.core.operation.OperationRetries;
 import net.helenus.core.reflect.DslExportable;
 import net.helenus.mapping.HelenusEntity;
 import net.helenus.mapping.HelenusEntityType;
@@ -55,6 +59,21 @@ public final class SessionInitializer extends AbstractSessionOperations {
   private KeyspaceMetadata keyspaceMetadata;
   private AutoDdl autoDdl = AutoDdl.UPDATE;
   private CacheManager cacheManager = null;
+  private long negativeCacheTtl = 0;
+  private boolean cacheQueryResults = false;
+  private long countCacheTtl = 0;
+  private final Set<Class<?>> warmCacheEntities = new LinkedHashSet<Class<?>>();
+  private final Map<Class<?>, List<Object>> warmCacheKeys = new LinkedHashMap<>();
+  private int warmCacheParallelism = 8;
+  private Path cacheSnapshot;
+  private long cacheSnapshotMaxAge = 0;
+  private long counterMaxDelay = 0;
+  private int counterMaxPending = 10000;
+  private int maxRetries = 0;
+  private long retryBackoff;
+  private long retryMaxBackoff;
+  private double retryBudget = 10.0;
+  private TimestampGenerator timestampGenerator;
 
   SessionInitializer(Session session, String keyspace) {
     this.session = session;
@@ -139,6 +158,131 @@ public final class SessionInitializer extends AbstractSessionOperations {
     return this;
   }
 
+  /**
+   * Remember lookups by key that found no row in the session cache for the given duration, a
+   * value of zero (the default) disables negative caching.
+   */
+  public SessionInitializer negativeCacheTtl(long ttl, TimeUnit units) {
+    Objects.requireNonNull(units, "empty time unit");
+    this.negativeCacheTtl = units.toMillis(ttl);
+    return this;
+  }
+
+  /**
+   * Keep the results of queries which are not identified by a key in the session cache of their
+   * table until that table is next written to by this session. Such results are always cached
+   * within a unit of work.
+   */
+  public SessionInitializer cacheQueryResults(boolean enabled) {
+    this.cacheQueryResults = enabled;
+    return this;
+  }
+
+  /**
+   * Keep the results of {@code count()} queries in the session cache of their table for at most
+   * the given duration, they are dropped sooner when this session writes to that table. A value of
+   * zero (the default) leaves counts to the {@link #cacheQueryResults(boolean)} setting. Counts
+   * are always cached within a unit of work.
+   */
+  public SessionInitializer countCacheTtl(long ttl, TimeUnit units) {
+    Objects.requireNonNull(units, "empty time unit");
+    this.countCacheTtl = units.toMillis(ttl);
+    return this;
+  }
+
+  /**
+   * Preload the session cache with every row of these {@code @Cacheable} entities' tables before
+   * the session is returned by {@link #get()}.
+   */
+  public SessionInitializer warmCache(Class<?>... entityClasses) {
+    Objects.requireNonNull(entityClasses, "entityClasses is empty");
+    warmCacheEntities.addAll(Arrays.asList(entityClasses));
+    return this;
+  }
+
+  /** Preload the session cache with the partitions of a {@code @Cacheable} entity's table. */
+  public SessionInitializer warmCache(Class<?> entityClass, Iterable<?> partitionKeys) {
+    Objects.requireNonNull(entityClass, "entityClass is empty");
+    Objects.requireNonNull(partitionKeys, "partitionKeys is empty");
+    List<Object> keys = warmCacheKeys.computeIfAbsent(entityClass, c -> new ArrayList<Object>());
+    partitionKeys.forEach(keys::add);
+    return this;
+  }
+
+  public SessionInitializer warmCacheParallelism(int parallelism) {
+    this.warmCacheParallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Restore the session cache from `file` when the session is created and save it there again when
+   * the session is closed, snapshots older than `maxAge` (when positive) are ignored.
+   */
+  public SessionInitializer cacheSnapshot(Path file, long maxAge, TimeUnit units) {
+    Objects.requireNonNull(file, "empty snapshot file");
+    this.cacheSnapshot = file;
+    this.cacheSnapshotMaxAge = units.toMillis(maxAge);
+    return this;
+  }
+
+  /**
+   * Sum counter increments made with {@code accumulate()} in the session and write them at most
+   * `maxDelay` after they were made, or sooner once `maxPending` counters are waiting to be
+   * written. Pending increments are written when the session is closed.
+   */
+  public SessionInitializer accumulateCounters(long maxDelay, TimeUnit units, int maxPending) {
+    Objects.requireNonNull(units, "empty time unit");
+    if (maxDelay <= 0 || maxPending < 1) {
+      throw new IllegalArgumentException("the delay and pending counters must be positive");
+    }
+    this.counterMaxDelay = units.toMillis(maxDelay);
+    this.counterMaxPending = maxPending;
+    return this;
+  }
+
+  public SessionInitializer accumulateCounters(long maxDelay, TimeUnit units) {
+    return accumulateCounters(maxDelay, units, counterMaxPending);
+  }
+
+  /**
+   * Retry idempotent operations which fail with a transient error up to `maxRetries` times, waiting
+   * an exponentially growing and jittered delay between `backoff` and `maxBackoff` before each
+   * retry. Operations aren't retried past their query timeout.
+   */
+  public SessionInitializer retryIdempotentOperations(
+      int maxRetries, long backoff, long maxBackoff, TimeUnit units) {
+    Objects.requireNonNull(units, "empty time unit");
+    if (maxRetries < 0 || backoff <= 0 || maxBackoff < backoff) {
+      throw new IllegalArgumentException("invalid retry settings");
+    }
+    this.maxRetries = maxRetries;
+    this.retryBackoff = units.toNanos(backoff);
+    this.retryMaxBackoff = units.toNanos(maxBackoff);
+    return this;
+  }
+
+  /**
+   * Bound the retries of the session to `percent` of its operations, beyond a small burst. The
+   * default is 10 percent.
+   */
+  public SessionInitializer retryBudget(double percent) {
+    if (percent < 0 || percent > 100) {
+      throw new IllegalArgumentException("the retry budget is a percentage of operations");
+    }
+    this.retryBudget = percent;
+    return this;
+  }
+
+  /**
+   * Take the timestamps of the session's writes from `generator` rather than from the generator
+   * configured on the cluster. A {@link StripedTimestampGenerator} spares threads writing at a high
+   * rate the contention of a single monotonic counter.
+   */
+  public SessionInitializer timestampGenerator(TimestampGenerator generator) {
+    this.timestampGenerator = Objects.requireNonNull(generator, "empty timestamp generator");
+    return this;
+  }
+
   public ConsistencyLevel getDefaultConsistencyLevel() {
     return consistencyLevel;
   }
@@ -200,7 +344,13 @@ public final class SessionInitializer extends AbstractSessionOperations {
 
   public SessionInitializer addPackage(String packageName) {
     try {
-      PackageUtil.getClasses(packageName)
+      // Entities listed in an index at compile time are found without scanning the class path,
+      // unless part of the package comes from a class path entry without an index.
+      Set<Class<?>> classes = PackageUtil.getIndexedClasses(packageName);
+      if (classes == null) {
+        classes = PackageUtil.getClasses(packageName);
+      }
+      classes
           .stream()
           .filter(c -> c.isInterface() && !c.isAnnotation())
           .forEach(
@@ -268,20 +418,69 @@ public final class SessionInitializer extends AbstractSessionOperations {
 
   public synchronized HelenusSession get() {
     initialize();
-    return new HelenusSession(
-        session,
-        usingKeyspace,
-        registry,
-        showCql,
-        showValues,
-        printStream,
-        sessionRepository,
-        executor,
-        autoDdl == AutoDdl.CREATE_DROP,
-        consistencyLevel,
-        idempotent,
-        cacheManager,
-        metricRegistry);
+    HelenusSession helenusSession =
+        new HelenusSession(
+            session,
+            usingKeyspace,
+            registry,
+            showCql,
+            showValues,
+            printStream,
+            sessionRepository,
+            executor,
+            autoDdl == AutoDdl.CREATE_DROP,
+            consistencyLevel,
+            idempotent,
+            cacheManager,
+            negativeCacheTtl,
+            cacheQueryResults,
+            countCacheTtl,
+            cacheSnapshot,
+            metricRegistry,
+            counterMaxDelay,
+            counterMaxPending,
+            maxRetries > 0
+                ? new OperationRetries(
+                    maxRetries,
+                    retryBackoff,
+                    retryMaxBackoff,
+                    TimeUnit.NANOSECONDS,
+                    retryBudget,
+                    metricRegistry)
+                : null,
+            timestampGenerator);
+    warmCache(helenusSession);
+    return helenusSession;
+  }
+
+  private void warmCache(HelenusSession helenusSession) {
+    if (cacheManager == null) {
+      return;
+    }
+
+    if (cacheSnapshot != null) {
+      try {
+        CacheSnapshot.read(cacheSnapshot, cacheManager, cacheSnapshotMaxAge);
+      } catch (IOException e) {
+        throw new HelenusException("unable to restore cache snapshot " + cacheSnapshot, e);
+      }
+    }
+
+    CacheWarmer warmer = new CacheWarmer(helenusSession, warmCacheParallelism);
+    for (Class<?> entityClass : warmCacheEntities) {
+      warmer.warm(cacheableEntity(entityClass));
+    }
+    for (Map.Entry<Class<?>, List<Object>> entry : warmCacheKeys.entrySet()) {
+      warmer.warm(cacheableEntity(entry.getKey()), entry.getValue());
+    }
+  }
+
+  private HelenusEntity cacheableEntity(Class<?> entityClass) {
+    HelenusEntity entity = Helenus.entity(entityClass);
+    if (!entity.isCacheable()) {
+      throw new HelenusException(entityClass + " is not @Cacheable, it can't be preloaded");
+    }
+    return entity;
   }
 
   private void initialize() {
@@ -0,0 +1,113 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core;
+
+import com.datastax.driver.core.TimestampGenerator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates the microsecond timestamps of a session's statements without a single point of
+ * contention. Threads are spread over stripes on separate cache lines, a stripe never goes back in
+ * time nor hands out the same timestamp twice, so the timestamps taken by a thread always
+ * increase. When a stripe runs ahead of the clock (more than one timestamp per microsecond, or the
+ * clock was set back) it counts up by one until the clock catches up.
+ *
+ * <p>Timestamps taken by different threads are only ordered as well as the clock orders them, as
+ * with the driver's thread local generator. The clock is recalibrated against the wall clock every
+ * second, but never below a timestamp already handed out, so a thread can't be handed a timestamp
+ * lower than one another thread was handed before. Sessions use the cluster's generator unless
+ * given this one with {@link SessionInitializer#timestampGenerator}.
+ */
+public final class StripedTimestampGenerator implements TimestampGenerator {
+
+  // Longs per cache line, so that neighbouring stripes don't share one.
+  private static final int PADDING = 8;
+  private static final long RECALIBRATE_NANOS = 1000000000L;
+
+  private final AtomicLongArray stripes;
+  private final int mask;
+  private final AtomicReference<Clock> clock = new AtomicReference<Clock>(new Clock(null, 0L));
+
+  public StripedTimestampGenerator() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  public StripedTimestampGenerator(int stripes) {
+    int n = 1;
+    while (n < stripes) {
+      n <<= 1;
+    }
+    this.stripes = new AtomicLongArray(n * PADDING);
+    this.mask = n - 1;
+  }
+
+  @Override
+  public long next() {
+    long id = Thread.currentThread().getId();
+    int i = ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask) * PADDING;
+    for (; ; ) {
+      long last = stripes.get(i);
+      long now = micros();
+      long next = now > last ? now : last + 1;
+      if (stripes.compareAndSet(i, last, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * The wall clock in microseconds, interpolated with {@link System#nanoTime()} between the
+   * milliseconds of {@link System#currentTimeMillis()} and re-read from it every second.
+   */
+  private long micros() {
+    Clock c = clock.get();
+    long nanos = System.nanoTime();
+    if (nanos - c.nanos > RECALIBRATE_NANOS) {
+      // Should another thread recalibrate first, its clock is used instead.
+      clock.compareAndSet(c, new Clock(c, highest()));
+      c = clock.get();
+      nanos = System.nanoTime();
+    }
+    return c.micros(nanos);
+  }
+
+  /** The highest timestamp handed out so far. */
+  private long highest() {
+    long highest = 0L;
+    for (int i = 0; i < stripes.length(); i += PADDING) {
+      highest = Math.max(highest, stripes.get(i));
+    }
+    return highest;
+  }
+
+  private static final class Clock {
+
+    final long nanos = System.nanoTime();
+    final long micros;
+
+    /** Reads the wall clock, or carries on from `previous` and `highest` should they be ahead. */
+    Clock(Clock previous, long highest) {
+      long floor = previous == null ? highest : Math.max(previous.micros(nanos), highest);
+      this.micros = Math.max(floor, System.currentTimeMillis() * 1000);
+    }
+
+    long micros(long nanoTime) {
+      return micros + (nanoTime - nanos) / 1000;
+    }
+  }
+}
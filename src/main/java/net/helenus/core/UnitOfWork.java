@@ -22,7 +22,6 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.google.common.collect.TreeTraverser;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -51,15 +50,14 @@ import javax.cache.processor.EntryProcessorException;
 import javax.cache.processor.EntryProcessorResult;
 
 import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.cache.CachedQueryResult;
 import net.helenus.core.cache.Facet;
 import net.helenus.core.cache.MapCache;
 import net.helenus.core.operation.AbstractOperation;
 import net.helenus.core.operation.BatchOperation;
-import net.helenus.mapping.MappingUtil;
 import net.helenus.support.CheckedRunnable;
 import net.helenus.support.Either;
 import net.helenus.support.HelenusException;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,6 +70,7 @@ public class UnitOfWork implements AutoCloseable {
   protected final List<UnitOfWork> nested = new ArrayList<>();
   protected final Table<String, String, Either<Object, List<Facet>>> cache = HashBasedTable.create();
   protected final EvictTrackingMapCache<String, Object> statementCache;
+  protected final Map<String, CachedQueryResult> resultCache = new HashMap<>();
   protected final HelenusSession session;
   protected String purpose;
   protected List<String> nestedPurposes = new ArrayList<String>();
@@ -90,6 +89,7 @@ public class UnitOfWork implements AutoCloseable {
   private boolean committed = false;
   private long committedAt = 0L;
   private BatchOperation batch;
+  private final Set<String> batchedTables = new HashSet<>();
 
   public UnitOfWork(HelenusSession session) {
     this(session, null);
@@ -282,11 +282,10 @@ public class UnitOfWork implements AutoCloseable {
     result = checkParentCache(facets);
     if (result.isPresent()) {
       Object r = result.get();
-      Class<?> iface = MappingUtil.getMappingInterface(r);
-      if (Helenus.entity(iface).isDraftable()) {
+      if (Helenus.entityOf(r).isDraftable()) {
         cacheUpdate(r, facets);
       } else {
-        cacheUpdate(SerializationUtils.<Serializable>clone((Serializable) r), facets);
+        cacheUpdate(CacheUtil.share(r), facets);
       }
     }
     return result;
@@ -354,11 +353,47 @@ public class UnitOfWork implements AutoCloseable {
     return result;
   }
 
+  public CachedQueryResult resultCacheLookup(String statementKey) {
+    CachedQueryResult result = resultCache.get(statementKey);
+    if (result != null && !result.isCurrent(session.writeEpoch(result.tableName()))) {
+      resultCache.remove(statementKey);
+      result = null;
+    }
+    if (result == null && parent != null) {
+      result = parent.resultCacheLookup(statementKey);
+    }
+    return result;
+  }
+
+  public void resultCacheUpdate(String statementKey, CachedQueryResult result) {
+    // Results read while writes to their table wait in the batch don't reflect those writes.
+    if (result.isCurrent(session.writeEpoch(result.tableName()))
+        && !hasBatchedWrites(result.tableName())) {
+      resultCache.put(statementKey, result);
+    }
+  }
+
+  private boolean hasBatchedWrites(String tableName) {
+    return batchedTables.contains(tableName)
+        || (parent != null && parent.hasBatchedWrites(tableName));
+  }
+
+  private void resultCacheEvict(Set<String> tableNames) {
+    resultCache.values().removeIf(result -> tableNames.contains(result.tableName()));
+    if (parent != null) {
+      parent.resultCacheEvict(tableNames);
+    }
+  }
+
   public void batch(AbstractOperation s) {
     if (batch == null) {
       batch = new BatchOperation(session);
     }
     batch.add(s);
+    // The batch is only sent on commit, until then the table's write epoch doesn't move.
+    Set<String> tableNames = s.getWrittenTables();
+    batchedTables.addAll(tableNames);
+    resultCacheEvict(tableNames);
   }
 
   private Iterator<UnitOfWork> getChildNodes() {
@@ -381,6 +416,13 @@ public class UnitOfWork implements AutoCloseable {
     if (batch != null) {
       committedAt = batch.sync(this); //TODO(gburd): update cache with writeTime...
     }
+    if (committedAt == 0L) {
+      committedAt = session.getTimestampGenerator().next();
+      if (committedAt == Long.MIN_VALUE) {
+        // The cluster leaves timestamps to the server.
+        committedAt = System.currentTimeMillis() * 1000;
+      }
+    }
 
     // All nested UnitOfWork should be committed (not aborted) before calls to
     // commit, check.
@@ -451,6 +493,7 @@ public class UnitOfWork implements AutoCloseable {
 
         // Merge our cache into the session cache.
         session.mergeCache(cache);
+        resultCache.forEach(session::updateResultCache);
 
         // Spoil any lingering futures that may be out there.
         asyncOperationFutures.forEach(
@@ -470,6 +513,7 @@ public class UnitOfWork implements AutoCloseable {
         parent.statementCache.putAll(statementCache.<Map>unwrap(Map.class));
         parent.statementCache.removeAll(statementCache.getDeletions());
         parent.mergeCache(cache);
+        parent.resultCache.putAll(resultCache);
         parent.addBatched(batch);
         if (purpose != null) {
           parent.nestedPurposes.add(purpose);
@@ -499,6 +543,7 @@ public class UnitOfWork implements AutoCloseable {
 
   private void addBatched(BatchOperation batchArg) {
     if (batchArg != null) {
+      batchedTables.addAll(batchArg.getWrittenTables());
       if (this.batch == null) {
         this.batch = batchArg;
       } else {
@@ -0,0 +1,43 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.cache;
+
+import java.io.Serializable;
+
+/**
+ * Marker stored in the session cache in place of an entity when a lookup by a uniquely
+ * identifying set of facets found no row. It is only honored until it expires, after which the
+ * next lookup will go to the database again.
+ */
+public final class AbsentEntry implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long expiresAt;
+
+  public AbsentEntry(long ttlMillis) {
+    this.expiresAt = System.currentTimeMillis() + ttlMillis;
+  }
+
+  public boolean isExpired() {
+    return System.currentTimeMillis() >= expiresAt;
+  }
+
+  public long expiresAt() {
+    return expiresAt;
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.cache;
+
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.cache.Cache;
+import net.helenus.core.reflect.MapExportable;
+
+/**
+ * Per table metrics of the session cache, registered as {@code net.helenus.cache.<table>.<name>}.
+ * Lookups and hits are also counted per combination of facets, as {@code
+ * net.helenus.cache.<table>.facets.<facet>+<facet>.(lookups|hits)}, which shows the facets that are
+ * actually used to find entities.
+ */
+public final class CacheMetrics {
+
+  private static final String PREFIX = "net.helenus.cache";
+
+  private final MetricRegistry registry;
+  private final Map<String, TableMetrics> tables = new ConcurrentHashMap<>();
+  private final Set<String> watched = ConcurrentHashMap.newKeySet();
+
+  public CacheMetrics(MetricRegistry registry) {
+    this.registry = registry == null ? new MetricRegistry() : registry;
+  }
+
+  private TableMetrics table(String tableName) {
+    TableMetrics metrics = tables.get(tableName);
+    if (metrics == null) {
+      metrics = tables.computeIfAbsent(tableName, TableMetrics::new);
+    }
+    return metrics;
+  }
+
+  public void lookup(String tableName, List<Facet> facets) {
+    FacetMetrics node = table(tableName).facets;
+    for (Facet facet : facets) {
+      if (!facet.fixed() && facet.value() != null) {
+        node = node.child(facet.name(), facet.name().length());
+      }
+    }
+    if (node.depth > 0) {
+      node.lookups().inc();
+    }
+  }
+
+  public void hit(String tableName, String[] combination) {
+    TableMetrics metrics = table(tableName);
+    metrics.hits.mark();
+    FacetMetrics node = metrics.facets;
+    for (String facet : combination) {
+      node = node.child(facet, facet.indexOf("=="));
+    }
+    node.hits().inc();
+  }
+
+  public void miss(String tableName) {
+    table(tableName).misses.mark();
+  }
+
+  public void load(String tableName) {
+    table(tableName).loads.mark();
+  }
+
+  public Timer loadLatency(String tableName) {
+    return table(tableName).loadLatency;
+  }
+
+  public void eviction(String tableName) {
+    table(tableName).evictions.mark();
+  }
+
+  /**
+   * Registers gauges for the number of entries in and the estimated size of the cache. Both are
+   * computed by walking the cache, so they are only refreshed once a minute.
+   */
+  public void watch(String tableName, Cache<String, Object> cache) {
+    if (!watched.add(tableName)) {
+      return;
+    }
+    CachedGauge<long[]> usage =
+        new CachedGauge<long[]>(1, TimeUnit.MINUTES) {
+          @Override
+          protected long[] loadValue() {
+            long entries = 0;
+            long bytes = 0;
+            Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Cache.Entry<String, Object> entry : cache) {
+              entries++;
+              bytes += estimateSize(entry.getKey());
+              // Every facet combination of an entity refers to the same instance.
+              if (values.add(entry.getValue())) {
+                bytes += estimateSize(entry.getValue());
+              }
+            }
+            return new long[] {entries, bytes};
+          }
+        };
+    register(MetricRegistry.name(PREFIX, tableName, "entries"), () -> usage.getValue()[0]);
+    register(MetricRegistry.name(PREFIX, tableName, "estimated-bytes"), () -> usage.getValue()[1]);
+  }
+
+  private void register(String name, Gauge<Long> gauge) {
+    try {
+      registry.register(name, gauge);
+    } catch (IllegalArgumentException e) {
+      // Already registered by another session sharing this registry.
+    }
+  }
+
+  /** A rough estimate of the heap used by a cached value, good enough to spot large tables. */
+  static long estimateSize(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof String) {
+      return 40 + 2 * ((String) value).length();
+    }
+    if (value instanceof byte[]) {
+      return 16 + ((byte[]) value).length;
+    }
+    if (value instanceof ByteBuffer) {
+      return 48 + ((ByteBuffer) value).capacity();
+    }
+    if (value instanceof MapExportable) {
+      return 64 + estimateSize(((MapExportable) value).toMap());
+    }
+    if (value instanceof Map) {
+      long size = 48;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+      }
+      return size;
+    }
+    if (value instanceof Collection) {
+      long size = 40;
+      for (Object element : (Collection<?>) value) {
+        size += 16 + estimateSize(element);
+      }
+      return size;
+    }
+    return 24;
+  }
+
+  private final class TableMetrics {
+    final Meter hits;
+    final Meter misses;
+    final Meter loads;
+    final Meter evictions;
+    final Timer loadLatency;
+    final FacetMetrics facets;
+
+    TableMetrics(String tableName) {
+      hits = registry.meter(MetricRegistry.name(PREFIX, tableName, "hits"));
+      misses = registry.meter(MetricRegistry.name(PREFIX, tableName, "misses"));
+      loads = registry.meter(MetricRegistry.name(PREFIX, tableName, "loads"));
+      evictions = registry.meter(MetricRegistry.name(PREFIX, tableName, "evictions"));
+      loadLatency = registry.timer(MetricRegistry.name(PREFIX, tableName, "load-latency"));
+      facets = new FacetMetrics(MetricRegistry.name(PREFIX, tableName, "facets"), null, 0);
+    }
+  }
+
+  /**
+   * The counters of one combination of facets, reached from the table's root by following the
+   * names of its facets in order. Children are matched against the name without building it, so
+   * counting a lookup or a hit allocates nothing once the combination has been seen.
+   */
+  private final class FacetMetrics {
+    final String name;
+    final String facet;
+    final int depth;
+    volatile FacetMetrics[] children = new FacetMetrics[0];
+    volatile Counter lookups;
+    volatile Counter hits;
+
+    FacetMetrics(String name, String facet, int depth) {
+      this.name = name;
+      this.facet = facet;
+      this.depth = depth;
+    }
+
+    /** Returns the child for the facet named by the first {@code length} chars of {@code key}. */
+    FacetMetrics child(String key, int length) {
+      for (FacetMetrics child : children) {
+        if (child.facet.length() == length && key.startsWith(child.facet)) {
+          return child;
+        }
+      }
+      synchronized (this) {
+        for (FacetMetrics child : children) {
+          if (child.facet.length() == length && key.startsWith(child.facet)) {
+            return child;
+          }
+        }
+        String facet = key.substring(0, length);
+        FacetMetrics child =
+            new FacetMetrics(depth == 0 ? name + "." + facet : name + "+" + facet, facet, depth + 1);
+        FacetMetrics[] grown = Arrays.copyOf(children, children.length + 1);
+        grown[children.length] = child;
+        children = grown;
+        return child;
+      }
+    }
+
+    Counter lookups() {
+      Counter counter = lookups;
+      if (counter == null) {
+        lookups = counter = registry.counter(name + ".lookups");
+      }
+      return counter;
+    }
+
+    Counter hits() {
+      Counter counter = hits;
+      if (counter == null) {
+        hits = counter = registry.counter(name + ".hits");
+      }
+      return counter;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import net.helenus.core.reflect.MapExportable;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the entities held in session caches to a memory-mapped file and restores them, so that
+ * a restarted process doesn't have to start with cold caches. Only entities are kept, tombstones
+ * and cached query results are meaningless to any other process.
+ */
+public final class CacheSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CacheSnapshot.class);
+
+  private static final int MAGIC = 0x48454c53; // "HELS"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+  private CacheSnapshot() {}
+
+  /** Writes the entities of the named caches to `file`, returns the number of entries written. */
+  public static int write(Path file, CacheManager cacheManager, Collection<String> cacheNames)
+      throws IOException {
+    List<byte[]> entries = new ArrayList<>();
+    long size = HEADER_SIZE;
+    for (String cacheName : cacheNames) {
+      Cache<String, Object> cache = cacheManager.getCache(cacheName);
+      if (cache == null) {
+        continue;
+      }
+      for (Cache.Entry<String, Object> entry : cache) {
+        Object value = entry.getValue();
+        if (value instanceof MapExportable && value instanceof Serializable) {
+          byte[] bytes =
+              SerializationUtils.serialize(new Object[] {cacheName, entry.getKey(), value});
+          entries.add(bytes);
+          size += 4 + bytes.length;
+        }
+      }
+    }
+
+    if (size > Integer.MAX_VALUE) {
+      LOG.warn("cache snapshot of {} bytes is too large to be mapped, not written", size);
+      return 0;
+    }
+
+    // Write next to the target and move it into place so a crash never leaves a torn snapshot.
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+      buffer.putInt(entries.size());
+      for (byte[] bytes : entries) {
+        buffer.putInt(bytes.length).put(bytes);
+      }
+      buffer.force();
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return entries.size();
+  }
+
+  /**
+   * Loads a snapshot written by {@link #write} into the caches it came from, entries already in a
+   * cache are kept. Snapshots older than `maxAgeMillis` (when positive) are ignored. Returns the
+   * number of entries restored.
+   */
+  public static int read(Path file, CacheManager cacheManager, long maxAgeMillis)
+      throws IOException {
+    if (!Files.isReadable(file)) {
+      return 0;
+    }
+
+    int restored = 0;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < HEADER_SIZE
+          || buffer.getInt() != MAGIC
+          || buffer.getInt() != VERSION) {
+        LOG.warn("ignoring unrecognized cache snapshot {}", file);
+        return 0;
+      }
+      long writtenAt = buffer.getLong();
+      if (maxAgeMillis > 0 && System.currentTimeMillis() - writtenAt > maxAgeMillis) {
+        LOG.info("ignoring cache snapshot {} written at {}, it is too old", file, writtenAt);
+        return 0;
+      }
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        try {
+          Object[] entry = SerializationUtils.deserialize(bytes);
+          Cache<String, Object> cache = cacheManager.getCache((String) entry[0]);
+          if (cache != null && cache.putIfAbsent((String) entry[1], entry[2])) {
+            restored++;
+          }
+        } catch (SerializationException e) {
+          // The entity may have changed shape since the snapshot was taken, skip it.
+          LOG.debug("skipping cache snapshot entry", e);
+        }
+      }
+    }
+    return restored;
+  }
+}
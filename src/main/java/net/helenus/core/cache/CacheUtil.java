@@ -1,5 +1,8 @@
 package net.helenus.core.cache;
 
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -7,11 +10,13 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import net.helenus.core.Helenus;
 import net.helenus.core.reflect.Entity;
+import net.helenus.core.reflect.GeneratedEntity;
 import net.helenus.core.reflect.MapExportable;
+import net.helenus.core.reflect.MapperInvocationHandler;
 import net.helenus.mapping.HelenusEntity;
 import net.helenus.mapping.HelenusProperty;
-import net.helenus.mapping.MappingUtil;
 import net.helenus.mapping.value.BeanColumnValueProvider;
+import org.apache.commons.lang3.SerializationUtils;
 
 public class CacheUtil {
 
@@ -48,6 +53,10 @@ public class CacheUtil {
         .collect(Collectors.toList());
   }
 
+  public static String statementKey(String table, String statement) {
+    return table + "." + statement;
+  }
+
   public static List<String[]> flattenFacets(List<Facet> facets) {
     List<String[]> combinations =
         CacheUtil.combinations(
@@ -97,12 +106,17 @@ public class CacheUtil {
 
   /** Merge changed values in the map behind `from` into `to`. */
   public static Object merge(Object t, Object f) {
-    HelenusEntity entity = Helenus.resolve(MappingUtil.getMappingInterface(t));
-
     if (t == f) return t;
     if (f == null) return t;
     if (t == null) return f;
 
+    if (t instanceof GeneratedEntity && t.getClass() == f.getClass()) {
+      ((GeneratedEntity) t).merge((GeneratedEntity) f);
+      return t;
+    }
+
+    HelenusEntity entity = Helenus.entityOf(t);
+
     if (t instanceof MapExportable
         && t instanceof Entity
         && f instanceof MapExportable
@@ -218,4 +232,23 @@ public class CacheUtil {
     String key = "_" + columnName + "_ttl";
     return key.toLowerCase();
   }
+
+  /**
+   * Returns a copy of a cached entity that is safe to hand to the caller. Generated entities and
+   * those backed by a {@link MapperInvocationHandler} share their values with the cached instance
+   * until one of them is written to, anything else is cloned.
+   */
+  @SuppressWarnings("unchecked")
+  public static <E> E share(E entity) {
+    if (entity instanceof GeneratedEntity) {
+      return (E) ((GeneratedEntity) entity).share();
+    }
+    if (entity != null && Proxy.isProxyClass(entity.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(entity);
+      if (handler instanceof MapperInvocationHandler) {
+        return (E) ((MapperInvocationHandler<?>) handler).share(entity);
+      }
+    }
+    return (E) SerializationUtils.<Serializable>clone((Serializable) entity);
+  }
 }
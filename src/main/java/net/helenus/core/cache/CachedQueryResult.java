@@ -0,0 +1,71 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows produced by a query which isn't identified by any facet (secondary index lookups,
+ * clustering range reads, etc.). The entry remembers the write epoch of its table at the time the
+ * query was issued and is only valid until that table is written to again, or until it expires
+ * when it was given a time to live.
+ */
+public final class CachedQueryResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String tableName;
+  private final long writeEpoch;
+  private final List<Object> results;
+  private final long expiresAt;
+
+  public CachedQueryResult(String tableName, long writeEpoch, List<?> results) {
+    this(tableName, writeEpoch, results, 0L);
+  }
+
+  public CachedQueryResult(String tableName, long writeEpoch, List<?> results, long ttlMillis) {
+    this.tableName = tableName;
+    this.writeEpoch = writeEpoch;
+    this.results = Collections.unmodifiableList(new ArrayList<Object>(results));
+    this.expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0L;
+  }
+
+  public String tableName() {
+    return tableName;
+  }
+
+  public long writeEpoch() {
+    return writeEpoch;
+  }
+
+  public List<Object> results() {
+    return results;
+  }
+
+  /** The time (in milliseconds since the epoch) this entry expires, zero when it never does. */
+  public long expiresAt() {
+    return expiresAt;
+  }
+
+  public boolean isCurrent(long writeEpoch) {
+    return this.writeEpoch == writeEpoch
+        && (expiresAt == 0L || System.currentTimeMillis() < expiresAt);
+  }
+}
@@ -132,6 +132,11 @@ public abstract class AbstractFilterOperation<E, O extends AbstractFilterOperati
         || super.isIdempotentOperation();
   }
 
+  /** Whether the operation has IF conditions, which make it a lightweight transaction. */
+  protected boolean isConditional() {
+    return ifFilters != null && !ifFilters.isEmpty();
+  }
+
   protected List<Facet> bindFacetValues(List<Facet> facets) {
     if (facets == null) {
       return new ArrayList<Facet>();
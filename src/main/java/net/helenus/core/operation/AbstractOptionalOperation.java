@@ -25,7 +25,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -35,10 +35,9 @@ import net.helenus.core.AbstractSessionOperations;
 import net.helenus.core.Helenus;
 import net.helenus.core.UnitOfWork;
 import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.cache.CachedQueryResult;
 import net.helenus.core.cache.Facet;
-import net.helenus.mapping.MappingUtil;
 import net.helenus.support.Fun;
-import org.apache.commons.lang3.SerializationUtils;
 
 public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOperation<E, O>>
     extends AbstractStatementOperation<E, O> {
@@ -71,11 +70,16 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
       Optional<E> result = Optional.empty();
       E cacheResult = null;
       boolean updateCache = isSessionCacheable() && !ignoreCache();
+      List<Facet> boundFacets = null;
+      String statementTable = null;
+      String statementKey = null;
+      long writeEpoch = 0L;
 
       if (updateCache) {
         List<Facet> facets = bindFacetValues();
         if (facets != null && facets.size() > 0) {
           if (facets.stream().filter(f -> !f.fixed()).distinct().count() > 0) {
+            boundFacets = facets;
             String tableName = CacheUtil.schemaName(facets);
             cacheResult = (E) sessionOps.checkCache(tableName, facets);
             if (cacheResult != null) {
@@ -83,17 +87,37 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
               updateCache = false;
               sessionCacheHits.mark();
               cacheHits.mark();
+              if (cacheResult == deleted) {
+                sessionCacheNegativeHits.mark();
+              }
+            } else {
+              sessionCacheMiss.mark();
+              cacheMiss.mark();
+            }
+          } else if (isResultCacheable()) {
+            // Nothing identifies the row, look for the results of this very statement instead.
+            statementTable = CacheUtil.schemaName(facets);
+            writeEpoch = sessionOps.writeEpoch(statementTable);
+            statementKey = resultCacheKey(statementTable);
+            CachedQueryResult cachedQueryResult =
+                sessionOps.checkResultCache(statementTable, statementKey);
+            if (cachedQueryResult != null) {
+              result = Optional.of((E) firstOrDeleted(cachedQueryResult));
+              statementKey = null;
+              updateCache = false;
+              sessionCacheHits.mark();
+              cacheHits.mark();
             } else {
               sessionCacheMiss.mark();
               cacheMiss.mark();
             }
           }
-        } else {
-          //TODO(gburd): look in statement cache for results
         }
       }
 
       if (!result.isPresent()) {
+        final Timer.Context loadContext = cacheLoadTimer(updateCache);
+
         // Formulate the query and execute it against the Cassandra cluster.
         ResultSet resultSet =
             this.execute(
@@ -106,6 +130,22 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
 
         // Transform the query result set into the desired shape.
         result = transform(resultSet);
+        if (loadContext != null) {
+          loadContext.stop();
+        }
+
+        // Remember that there is no row for these facets, if configured to do so.
+        if (updateCache && !result.isPresent() && boundFacets != null) {
+          sessionOps.cacheAbsent(boundFacets);
+        }
+
+        if (statementKey != null) {
+          sessionOps.updateResultCache(
+              statementKey, new CachedQueryResult(statementTable, writeEpoch, asList(result)));
+        }
+      } else if (result.get() == deleted) {
+        // The session cache knows this row to be absent.
+        result = Optional.empty();
       }
 
       if (updateCache && result.isPresent()) {
@@ -134,6 +174,10 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
       Optional<E> result = Optional.empty();
       E cachedResult = null;
       final boolean updateCache;
+      List<Facet> boundFacets = null;
+      String statementTable = null;
+      String statementKey = null;
+      long writeEpoch = 0L;
 
       if (!ignoreCache()) {
         Stopwatch timer = Stopwatch.createStarted();
@@ -141,6 +185,7 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
           List<Facet> facets = bindFacetValues();
           if (facets != null && facets.size() > 0) {
             if (facets.stream().filter(f -> !f.fixed()).distinct().count() > 0) {
+              boundFacets = facets;
               cachedResult = checkCache(uow, facets);
               if (cachedResult != null) {
                 updateCache = false;
@@ -154,15 +199,13 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
                   String tableName = CacheUtil.schemaName(facets);
                   cachedResult = (E) sessionOps.checkCache(tableName, facets);
                   if (cachedResult != null) {
-                    Class<?> iface = MappingUtil.getMappingInterface(cachedResult);
-                    if (Helenus.entity(iface).isDraftable()) {
+                    if (cachedResult == deleted) {
+                      result = Optional.of(cachedResult);
+                      sessionCacheNegativeHits.mark();
+                    } else if (Helenus.entityOf(cachedResult).isDraftable()) {
                       result = Optional.of(cachedResult);
                     } else {
-                      result =
-                          Optional.of(
-                              (E)
-                                  SerializationUtils.<Serializable>clone(
-                                      (Serializable) cachedResult));
+                      result = Optional.of((E) CacheUtil.share(cachedResult));
                     }
                     updateCache = false;
                     sessionCacheHits.mark();
@@ -178,9 +221,44 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
                   updateCache = false;
                 }
               }
+            } else if (isResultCacheable()) {
+              // Nothing identifies the row, look for the results of this very statement instead.
+              updateCache = false;
+              statementTable = CacheUtil.schemaName(facets);
+              writeEpoch = sessionOps.writeEpoch(statementTable);
+              statementKey = resultCacheKey(statementTable);
+              CachedQueryResult cachedQueryResult = uow.resultCacheLookup(statementKey);
+              if (cachedQueryResult != null) {
+                result = Optional.of((E) firstOrDeleted(cachedQueryResult));
+                statementKey = null;
+                uowCacheHits.mark();
+                cacheHits.mark();
+                uow.recordCacheAndDatabaseOperationCount(1, 0);
+              } else {
+                uowCacheMiss.mark();
+                if (isSessionCacheable()) {
+                  cachedQueryResult = sessionOps.checkResultCache(statementTable, statementKey);
+                }
+                if (cachedQueryResult != null) {
+                  Object first = firstOrDeleted(cachedQueryResult);
+                  result = Optional.of(first == deleted ? (E) first : copyOf(first));
+                  uow.resultCacheUpdate(
+                      statementKey,
+                      new CachedQueryResult(statementTable, writeEpoch, asList(result)));
+                  statementKey = null;
+                  sessionCacheHits.mark();
+                  cacheHits.mark();
+                  uow.recordCacheAndDatabaseOperationCount(1, 0);
+                } else {
+                  if (isSessionCacheable()) {
+                    sessionCacheMiss.mark();
+                  }
+                  cacheMiss.mark();
+                  uow.recordCacheAndDatabaseOperationCount(-1, 0);
+                }
+              }
             } else {
-              //TODO(gburd): look in statement cache for results
-              updateCache = false; //true;
+              updateCache = false;
               cacheMiss.mark();
               uow.recordCacheAndDatabaseOperationCount(-1, 0);
             }
@@ -203,6 +281,7 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
           result = Optional.empty();
         }
       } else {
+        final Timer.Context loadContext = cacheLoadTimer(updateCache);
 
         // Formulate the query and execute it against the Cassandra cluster.
         ResultSet resultSet =
@@ -210,6 +289,19 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
 
         // Transform the query result set into the desired shape.
         result = transform(resultSet);
+        if (loadContext != null) {
+          loadContext.stop();
+        }
+
+        // Remember that there is no row for these facets, if configured to do so.
+        if (updateCache && !result.isPresent() && boundFacets != null) {
+          sessionOps.cacheAbsent(boundFacets);
+        }
+
+        if (statementKey != null) {
+          uow.resultCacheUpdate(
+              statementKey, new CachedQueryResult(statementTable, writeEpoch, asList(result)));
+        }
       }
 
       // If we have a result, it wasn't from the UOW cache, and we're caching things
@@ -227,6 +319,17 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
     }
   }
 
+  private static Object firstOrDeleted(CachedQueryResult cachedQueryResult) {
+    List<Object> results = cachedQueryResult.results();
+    return results.isEmpty() ? deleted : results.get(0);
+  }
+
+  private static List<Object> asList(Optional<?> result) {
+    return result.isPresent() && result.get() != deleted
+        ? Collections.<Object>singletonList(result.get())
+        : Collections.emptyList();
+  }
+
   public CompletableFuture<Optional<E>> async() {
     return CompletableFuture.<Optional<E>>supplyAsync(
         () -> {
@@ -252,4 +355,9 @@ public abstract class AbstractOptionalOperation<E, O extends AbstractOptionalOpe
     uow.addFuture(f);
     return f;
   }
+
+  @Override
+  protected boolean isRetryable() {
+    return true;
+  }
 }
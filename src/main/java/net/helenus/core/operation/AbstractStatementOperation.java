@@ -32,7 +32,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import net.helenus.core.AbstractSessionOperations;
+import net.helenus.core.Helenus;
 import net.helenus.core.UnitOfWork;
+import net.helenus.core.cache.CacheUtil;
 import net.helenus.core.cache.Facet;
 import net.helenus.core.cache.UnboundFacet;
 import net.helenus.core.reflect.MapExportable;
@@ -319,6 +321,21 @@ public abstract class AbstractStatementOperation<E, O extends AbstractStatementO
     return result;
   }
 
+  protected String resultCacheKey(String tableName) {
+    // The same statement can be shaped differently (e.g. first row only) by each operation.
+    return CacheUtil.statementKey(
+        tableName, getClass().getSimpleName() + ":" + queryString(buildStatement(true), true));
+  }
+
+  protected E copyOf(Object cachedResult) {
+    if (cachedResult instanceof MapExportable) {
+      if (!Helenus.entityOf(cachedResult).isDraftable()) {
+        return (E) CacheUtil.share(cachedResult);
+      }
+    }
+    return (E) cachedResult;
+  }
+
   protected Object cacheUpdate(UnitOfWork uow, E pojo, List<Facet> identifyingFacets) {
     List<Facet> facets = new ArrayList<>();
     Map<String, Object> valueMap =
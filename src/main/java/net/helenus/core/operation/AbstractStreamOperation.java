@@ -25,21 +25,20 @@ import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import net.helenus.core.AbstractSessionOperations;
 import net.helenus.core.Helenus;
 import net.helenus.core.UnitOfWork;
 import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.cache.CachedQueryResult;
 import net.helenus.core.cache.Facet;
-import net.helenus.mapping.MappingUtil;
 import net.helenus.support.Fun;
-import org.apache.commons.lang3.SerializationUtils;
 
 public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperation<E, O>>
     extends AbstractStatementOperation<E, O> {
@@ -72,6 +71,9 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
       Stream<E> resultStream = null;
       E cacheResult = null;
       boolean updateCache = isSessionCacheable();
+      String statementTable = null;
+      String statementKey = null;
+      long writeEpoch = 0L;
 
       if (!ignoreCache() && isSessionCacheable()) {
         List<Facet> facets = bindFacetValues();
@@ -80,7 +82,29 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
             String tableName = CacheUtil.schemaName(facets);
             cacheResult = (E) sessionOps.checkCache(tableName, facets);
             if (cacheResult != null) {
-              resultStream = Stream.of(cacheResult);
+              if (cacheResult == deleted) {
+                resultStream = Stream.empty();
+                sessionCacheNegativeHits.mark();
+              } else {
+                resultStream = Stream.of(cacheResult);
+              }
+              updateCache = false;
+              sessionCacheHits.mark();
+              cacheHits.mark();
+            } else {
+              sessionCacheMiss.mark();
+              cacheMiss.mark();
+            }
+          } else if (isResultCacheable()) {
+            // Nothing identifies the rows, look for the results of this very statement instead.
+            statementTable = CacheUtil.schemaName(facets);
+            writeEpoch = sessionOps.writeEpoch(statementTable);
+            statementKey = resultCacheKey(statementTable);
+            CachedQueryResult cachedQueryResult =
+                sessionOps.checkResultCache(statementTable, statementKey);
+            if (cachedQueryResult != null) {
+              resultStream = cachedQueryResult.results().stream().map(r -> (E) r);
+              statementKey = null;
               updateCache = false;
               sessionCacheHits.mark();
               cacheHits.mark();
@@ -88,13 +112,13 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
               sessionCacheMiss.mark();
               cacheMiss.mark();
             }
-          } else {
-            //TODO(gburd): look in statement cache for results
           }
         }
       }
 
       if (resultStream == null) {
+        final Timer.Context loadContext = cacheLoadTimer(updateCache);
+
         // Formulate the query and execute it against the Cassandra cluster.
         ResultSet resultSet =
             this.execute(
@@ -107,6 +131,16 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
 
         // Transform the query result set into the desired shape.
         resultStream = transform(resultSet);
+        if (loadContext != null) {
+          loadContext.stop();
+        }
+
+        if (statementKey != null) {
+          List<E> results = resultStream.collect(Collectors.toList());
+          sessionOps.updateResultCache(
+              statementKey, new CachedQueryResult(statementTable, writeEpoch, results));
+          resultStream = results.stream();
+        }
       }
 
       if (updateCache && resultStream != null) {
@@ -140,6 +174,9 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
       Stream<E> resultStream = null;
       E cachedResult = null;
       final boolean updateCache;
+      String statementTable = null;
+      String statementKey = null;
+      long writeEpoch = 0L;
 
       if (!ignoreCache()) {
         Stopwatch timer = Stopwatch.createStarted();
@@ -150,7 +187,7 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
               cachedResult = checkCache(uow, facets);
               if (cachedResult != null) {
                 updateCache = false;
-                resultStream = Stream.of(cachedResult);
+                resultStream = cachedResult == deleted ? Stream.empty() : Stream.of(cachedResult);
                 uowCacheHits.mark();
                 cacheHits.mark();
                 uow.recordCacheAndDatabaseOperationCount(1, 0);
@@ -160,16 +197,19 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
                   String tableName = CacheUtil.schemaName(facets);
                   cachedResult = (E) sessionOps.checkCache(tableName, facets);
                   if (cachedResult != null) {
-                    Class<?> iface = MappingUtil.getMappingInterface(cachedResult);
-                    E result = null;
-                    if (Helenus.entity(iface).isDraftable()) {
-                      result = cachedResult;
+                    if (cachedResult == deleted) {
+                      resultStream = Stream.empty();
+                      sessionCacheNegativeHits.mark();
                     } else {
-                      result =
-                          (E) SerializationUtils.<Serializable>clone((Serializable) cachedResult);
+                      E result = null;
+                      if (Helenus.entityOf(cachedResult).isDraftable()) {
+                        result = cachedResult;
+                      } else {
+                        result = (E) CacheUtil.share(cachedResult);
+                      }
+                      resultStream = Stream.of(result);
                     }
                     updateCache = false;
-                    resultStream = Stream.of(result);
                     sessionCacheHits.mark();
                     cacheHits.mark();
                     uow.recordCacheAndDatabaseOperationCount(1, 0);
@@ -183,9 +223,48 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
                   updateCache = false;
                 }
               }
+            } else if (isResultCacheable()) {
+              // Nothing identifies the rows, look for the results of this very statement instead.
+              updateCache = false;
+              statementTable = CacheUtil.schemaName(facets);
+              writeEpoch = sessionOps.writeEpoch(statementTable);
+              statementKey = resultCacheKey(statementTable);
+              CachedQueryResult cachedQueryResult = uow.resultCacheLookup(statementKey);
+              if (cachedQueryResult != null) {
+                resultStream = cachedQueryResult.results().stream().map(r -> (E) r);
+                statementKey = null;
+                uowCacheHits.mark();
+                cacheHits.mark();
+                uow.recordCacheAndDatabaseOperationCount(1, 0);
+              } else {
+                uowCacheMiss.mark();
+                if (isSessionCacheable()) {
+                  cachedQueryResult = sessionOps.checkResultCache(statementTable, statementKey);
+                }
+                if (cachedQueryResult != null) {
+                  List<E> results =
+                      cachedQueryResult
+                          .results()
+                          .stream()
+                          .map(this::copyOf)
+                          .collect(Collectors.toList());
+                  uow.resultCacheUpdate(
+                      statementKey, new CachedQueryResult(statementTable, writeEpoch, results));
+                  resultStream = results.stream();
+                  statementKey = null;
+                  sessionCacheHits.mark();
+                  cacheHits.mark();
+                  uow.recordCacheAndDatabaseOperationCount(1, 0);
+                } else {
+                  if (isSessionCacheable()) {
+                    sessionCacheMiss.mark();
+                  }
+                  cacheMiss.mark();
+                  uow.recordCacheAndDatabaseOperationCount(-1, 0);
+                }
+              }
             } else {
-              //TODO(gburd): look in statement cache for results
-              updateCache = false; //true;
+              updateCache = false;
               cacheMiss.mark();
               uow.recordCacheAndDatabaseOperationCount(-1, 0);
             }
@@ -202,9 +281,20 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
 
       // Check to see if we fetched the object from the cache
       if (resultStream == null) {
+        final Timer.Context loadContext = cacheLoadTimer(updateCache);
         ResultSet resultSet =
             execute(sessionOps, uow, queryExecutionTimeout, queryTimeoutUnits, showValues, true);
         resultStream = transform(resultSet);
+        if (loadContext != null) {
+          loadContext.stop();
+        }
+
+        if (statementKey != null) {
+          List<E> results = resultStream.collect(Collectors.toList());
+          uow.resultCacheUpdate(
+              statementKey, new CachedQueryResult(statementTable, writeEpoch, results));
+          resultStream = results.stream();
+        }
       }
 
       // If we have a result and we're caching then we need to put it into the cache
@@ -258,4 +348,9 @@ public abstract class AbstractStreamOperation<E, O extends AbstractStreamOperati
     uow.addFuture(f);
     return f;
   }
+
+  @Override
+  protected boolean isRetryable() {
+    return true;
+  }
 }
@@ -17,13 +17,13 @@
 package net.helenus.core.operation;
 
 import com.codahale.metrics.Timer;
-import com.datastax.driver.core.AtomicMonotonicTimestampGenerator;
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.TimestampGenerator;
 import com.google.common.base.Stopwatch;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import net.helenus.core.AbstractSessionOperations;
@@ -31,10 +31,6 @@ import net.helenus.core.UnitOfWork;
 import net.helenus.support.HelenusException;
 
 public class BatchOperation extends Operation<Long> {
-  //TODO(gburd): find the way to get the driver's timestamp generator
-  private static final TimestampGenerator timestampGenerator =
-      new AtomicMonotonicTimestampGenerator();
-
   private final BatchStatement batch;
   private List<AbstractOperation<?, ?>> operations = new ArrayList<AbstractOperation<?, ?>>();
   private boolean logged = true;
@@ -44,6 +40,13 @@ public class BatchOperation extends Operation<Long> {
     batch = new BatchStatement();
   }
 
+  public BatchOperation(AbstractSessionOperations sessionOperations, boolean logged) {
+    super(sessionOperations);
+    this.logged = logged;
+    batch =
+        new BatchStatement(logged ? BatchStatement.Type.LOGGED : BatchStatement.Type.UNLOGGED);
+  }
+
   public void add(AbstractOperation<?, ?> operation) {
     operations.add(operation);
   }
@@ -51,7 +54,7 @@ public class BatchOperation extends Operation<Long> {
   @Override
   public BatchStatement buildStatement(boolean cached) {
     batch.addAll(
-        operations.stream().map(o -> o.buildStatement(cached)).collect(Collectors.toList()));
+        new WriteCoalescer(sessionOps).coalesce(operations, o -> o.executableStatement(cached)));
     batch.setConsistencyLevel(sessionOps.getDefaultConsistencyLevel());
     return batch;
   }
@@ -70,7 +73,6 @@ public class BatchOperation extends Operation<Long> {
     if (operations.size() == 0) return 0L;
     final Timer.Context context = requestLatency.time();
     try {
-        batch.setDefaultTimestamp(timestampGenerator.next());
         ResultSet resultSet =
                 this.execute(
                         sessionOps, null, queryExecutionTimeout, queryTimeoutUnits, showValues, false);
@@ -82,7 +84,7 @@ public class BatchOperation extends Operation<Long> {
     } finally {
       context.stop();
     }
-    return batch.getDefaultTimestamp();
+    return executedAt;
   }
 
   public Long sync(UnitOfWork uow) {
@@ -93,7 +95,6 @@ public class BatchOperation extends Operation<Long> {
     final Stopwatch timer = Stopwatch.createStarted();
     try {
         uow.recordCacheAndDatabaseOperationCount(0, 1);
-        batch.setDefaultTimestamp(timestampGenerator.next());
         ResultSet resultSet =
                 this.execute(
                         sessionOps, uow, queryExecutionTimeout, queryTimeoutUnits, showValues, false);
@@ -107,7 +108,14 @@ public class BatchOperation extends Operation<Long> {
       timer.stop();
     }
     uow.addDatabaseTime("Cassandra", timer);
-    return batch.getDefaultTimestamp();
+    return executedAt;
+  }
+
+  @Override
+  public Set<String> getWrittenTables() {
+    Set<String> tables = new HashSet<String>();
+    operations.forEach(o -> tables.addAll(o.getWrittenTables()));
+    return tables;
   }
 
   public void addAll(BatchOperation batch) {
@@ -130,9 +138,10 @@ public class BatchOperation extends Operation<Long> {
       s.append("USING TIMESTAMP ").append(String.valueOf(batch.getDefaultTimestamp())).append(" ");
     }
     s.append(
-        operations
+        new WriteCoalescer(sessionOps)
+            .coalesce(operations, o -> o.buildStatement(showValues))
             .stream()
-            .map(o -> Operation.queryString(o.buildStatement(showValues), showValues))
+            .map(statement -> Operation.queryString(statement, showValues))
             .collect(Collectors.joining(" ")));
     s.append(" APPLY BATCH;");
     return s.toString();
@@ -0,0 +1,390 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.operation;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import net.helenus.core.AbstractSessionOperations;
+import net.helenus.core.Helenus;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.support.HelenusException;
+
+/**
+ * Writes a stream of entities. Rows are grouped by partition into UNLOGGED batches, a bounded
+ * number of requests are kept in flight and, optionally, rows are admitted at a limited rate.
+ * Requests which fail are retried as the session retries its operations, drawing on the same retry
+ * budget. Rows inserted IF NOT EXISTS are sent one at a time and never retried, as a batch of
+ * conditional rows applies either all of them or none.
+ */
+public final class BulkOperation<E> {
+
+  private final AbstractSessionOperations sessionOps;
+  private final Stream<E> entities;
+  private final boolean ifNotExists;
+  private final Meter rowsMeter;
+  private final Meter retriesMeter;
+  private final Meter failuresMeter;
+  private final OperationRetries operationRetries;
+  private int concurrency = 32;
+  private int batchSize = 16;
+  private int bufferSize = 4096;
+  private RateLimiter rateLimiter;
+  private long reportEvery;
+  private Consumer<Progress> listener;
+
+  public BulkOperation(
+      AbstractSessionOperations sessionOperations, Stream<E> entities, boolean ifNotExists) {
+    this.sessionOps = sessionOperations;
+    this.entities = Objects.requireNonNull(entities, "entities are empty");
+    this.ifNotExists = ifNotExists;
+    MetricRegistry metrics = sessionOperations.getMetricRegistry();
+    if (metrics == null) {
+      metrics = new MetricRegistry();
+    }
+    this.rowsMeter = metrics.meter("net.helenus.bulk-rows");
+    this.retriesMeter = metrics.meter("net.helenus.bulk-retries");
+    this.failuresMeter = metrics.meter("net.helenus.bulk-failures");
+    this.operationRetries = sessionOperations.getOperationRetries();
+  }
+
+  /** The number of requests kept in flight at once. */
+  public BulkOperation<E> concurrency(int requests) {
+    if (requests < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1");
+    }
+    this.concurrency = requests;
+    return this;
+  }
+
+  /** The most rows sent to one partition in a single batch. */
+  public BulkOperation<E> batchSize(int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("batch size must be at least 1");
+    }
+    this.batchSize = rows;
+    return this;
+  }
+
+  /** The most rows held while waiting for more rows of the same partition. */
+  public BulkOperation<E> bufferSize(int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("buffer size must be at least 1");
+    }
+    this.bufferSize = rows;
+    return this;
+  }
+
+  public BulkOperation<E> rateLimit(double rowsPerSecond) {
+    this.rateLimiter = RateLimiter.create(rowsPerSecond);
+    return this;
+  }
+
+  /**
+   * Reports progress about every {@code rows} rows written. The listener is called on the
+   * driver's threads and should return quickly.
+   */
+  public BulkOperation<E> progress(long rows, Consumer<Progress> listener) {
+    this.reportEvery = rows;
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Writes every entity of the stream, returning once all of them are written. Stops at the first
+   * request which fails for good and throws once the requests in flight have completed.
+   */
+  public Progress sync() {
+    Run run = new Run();
+    try {
+      Map<List<Object>, List<InsertOperation<E>>> partitions = new LinkedHashMap<>();
+      int buffered = 0;
+      Iterator<E> it = entities.iterator();
+      while (it.hasNext() && run.failure.get() == null) {
+        E pojo = it.next();
+        HelenusEntity entity = Helenus.entityOf(pojo);
+        InsertOperation<E> insert =
+            new InsertOperation<E>(sessionOps, entity, pojo, null, null, ifNotExists);
+        if (ifNotExists || batchSize == 1) {
+          run.submit(singletonList(insert));
+          continue;
+        }
+        List<Object> key = insert.partitionKey();
+        List<InsertOperation<E>> rows = partitions.get(key);
+        if (rows == null) {
+          rows = new ArrayList<InsertOperation<E>>();
+          partitions.put(key, rows);
+        }
+        rows.add(insert);
+        buffered++;
+        if (rows.size() >= batchSize) {
+          partitions.remove(key);
+          buffered -= rows.size();
+          run.submit(rows);
+        } else if (buffered >= bufferSize) {
+          partitions.values().forEach(run::submit);
+          partitions.clear();
+          buffered = 0;
+        }
+      }
+      if (run.failure.get() == null) {
+        partitions.values().forEach(run::submit);
+      }
+    } finally {
+      // Even when the stream fails, requests in flight and their retries run to completion.
+      run.await();
+      run.scheduler.shutdownNow();
+    }
+    Throwable failure = run.failure.get();
+    if (failure != null) {
+      throw new HelenusException(
+          "bulk write failed after " + run.rows.get() + " rows were written", failure);
+    }
+    return run.progress();
+  }
+
+  private static <E> List<InsertOperation<E>> singletonList(InsertOperation<E> insert) {
+    List<InsertOperation<E>> rows = new ArrayList<InsertOperation<E>>(1);
+    rows.add(insert);
+    return rows;
+  }
+
+  /** Counts of a bulk write, so far or once completed. */
+  public static final class Progress {
+
+    private final long rows;
+    private final long requests;
+    private final long retries;
+    private final long notApplied;
+    private final long elapsedNanos;
+
+    Progress(long rows, long requests, long retries, long notApplied, long elapsedNanos) {
+      this.rows = rows;
+      this.requests = requests;
+      this.retries = retries;
+      this.notApplied = notApplied;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Rows written, including those not applied as they already existed. */
+    public long rows() {
+      return rows;
+    }
+
+    public long requests() {
+      return requests;
+    }
+
+    public long retries() {
+      return retries;
+    }
+
+    /** Rows inserted IF NOT EXISTS which weren't applied as the row already existed. */
+    public long notApplied() {
+      return notApplied;
+    }
+
+    public long elapsed(TimeUnit unit) {
+      return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d rows in %d requests (%d retries, %d not applied) in %d ms",
+          rows, requests, retries, notApplied, elapsed(TimeUnit.MILLISECONDS));
+    }
+  }
+
+  private final class Run {
+
+    final long started = System.nanoTime();
+    final Semaphore inFlight = new Semaphore(concurrency);
+    final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "helenus-bulk-retry");
+              thread.setDaemon(true);
+              return thread;
+            });
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final AtomicLong rows = new AtomicLong();
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong notApplied = new AtomicLong();
+    final AtomicLong reported = new AtomicLong();
+
+    void submit(List<InsertOperation<E>> inserts) {
+      if (inserts.isEmpty() || failure.get() != null) {
+        return;
+      }
+      if (rateLimiter != null) {
+        rateLimiter.acquire(inserts.size());
+      }
+      InsertOperation<E> first = inserts.get(0);
+      Statement statement;
+      boolean retryable = true;
+      if (inserts.size() == 1) {
+        statement = first.options(first.executableStatement(false));
+        retryable = first.isRetryable();
+      } else {
+        BatchOperation batch = new BatchOperation(sessionOps, false);
+        for (InsertOperation<E> insert : inserts) {
+          batch.add(insert);
+          retryable &= insert.isRetryable();
+        }
+        statement = batch.buildStatement(false);
+      }
+      // Retries are sent with the same timestamp.
+      statement.setDefaultTimestamp(sessionOps.getTimestampGenerator().next());
+      statement.setIdempotent(retryable);
+      if (retryable && operationRetries != null) {
+        operationRetries.request();
+      }
+      // Taken once the statement is built, so that a row which can't be written doesn't hold it.
+      inFlight.acquireUninterruptibly();
+      long deadline =
+          System.nanoTime() + first.queryTimeoutUnits.toNanos(first.queryExecutionTimeout);
+      execute(statement, inserts, retryable ? operationRetries : null, deadline, 0);
+    }
+
+    void execute(
+        Statement statement,
+        List<InsertOperation<E>> inserts,
+        OperationRetries retryPolicy,
+        long deadline,
+        int attempt) {
+      ResultSetFuture future;
+      try {
+        future = sessionOps.executeAsync(statement);
+      } catch (RuntimeException e) {
+        failed(e, null);
+        return;
+      }
+      Futures.addCallback(
+          future,
+          new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet resultSet) {
+              if (!resultSet.wasApplied()) {
+                notApplied.addAndGet(inserts.size());
+              }
+              written(inserts);
+              inFlight.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              long delay =
+                  retryPolicy == null || failure.get() != null
+                      ? -1L
+                      : retryPolicy.retryDelay(
+                          t, attempt, deadline - System.nanoTime(), retryName(inserts));
+              if (delay < 0) {
+                failed(t, inserts);
+                return;
+              }
+              retries.incrementAndGet();
+              retriesMeter.mark();
+              scheduler.schedule(
+                  () -> execute(statement, inserts, retryPolicy, deadline, attempt + 1),
+                  delay,
+                  TimeUnit.NANOSECONDS);
+            }
+          },
+          MoreExecutors.directExecutor());
+    }
+
+    /** Fails the write, `inserts` are those of a request sent, which may have been applied. */
+    private void failed(Throwable t, List<InsertOperation<E>> inserts) {
+      failuresMeter.mark();
+      failure.compareAndSet(null, t);
+      if (inserts != null) {
+        invalidate(inserts);
+      }
+      inFlight.release();
+    }
+
+    private void written(List<InsertOperation<E>> inserts) {
+      long total = rows.addAndGet(inserts.size());
+      requests.incrementAndGet();
+      rowsMeter.mark(inserts.size());
+      invalidate(inserts);
+      if (listener != null && reportEvery > 0) {
+        long last = reported.get();
+        if (total - last >= reportEvery && reported.compareAndSet(last, total)) {
+          listener.accept(progress());
+        }
+      }
+    }
+
+    private void invalidate(List<InsertOperation<E>> inserts) {
+      // Even rows written in bulk must not leave stale entries behind in the cache.
+      Set<String> tables = new HashSet<String>();
+      for (InsertOperation<E> insert : inserts) {
+        if (insert.entity().isCacheable()) {
+          sessionOps.cacheEvict(insert.bindFacetValues());
+        }
+        tables.addAll(insert.getWrittenTables());
+      }
+      for (String tableName : tables) {
+        sessionOps.advanceWriteEpoch(tableName);
+      }
+    }
+
+    void await() {
+      inFlight.acquireUninterruptibly(concurrency);
+      inFlight.release(concurrency);
+    }
+
+    Progress progress() {
+      return new Progress(
+          rows.get(),
+          requests.get(),
+          retries.get(),
+          notApplied.get(),
+          System.nanoTime() - started);
+    }
+  }
+
+  private static String retryName(List<? extends InsertOperation<?>> inserts) {
+    Set<String> tables = inserts.get(0).getWrittenTables();
+    return tables.isEmpty() ? "unknown" : tables.iterator().next();
+  }
+}
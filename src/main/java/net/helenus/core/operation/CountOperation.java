@@ -16,13 +16,19 @@
  */
 package net.helenus.core.operation;
 
+import com.codahale.metrics.Timer;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 import com.datastax.driver.core.querybuilder.Select.Where;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
 import net.helenus.core.AbstractSessionOperations;
 import net.helenus.core.Filter;
+import net.helenus.core.UnitOfWork;
+import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.cache.CachedQueryResult;
 import net.helenus.core.reflect.HelenusPropertyNode;
 import net.helenus.mapping.HelenusEntity;
 import net.helenus.support.HelenusMappingException;
@@ -38,12 +44,116 @@ public final class CountOperation extends AbstractFilterOperation<Long, CountOpe
   public CountOperation(AbstractSessionOperations sessionOperations, HelenusEntity entity) {
     super(sessionOperations);
     this.entity = entity;
-    //TODO(gburd): cache SELECT COUNT results within the scope of a UOW
   }
 
   @Override
-  public BuiltStatement buildStatement(boolean cached) {
+  public boolean isSessionCacheable() {
+    // Counted with count().where(...), the entity is known only from the filters.
+    if (entity == null && filters != null && !filters.isEmpty()) {
+      resolveEntity();
+    }
+    return entity != null && entity.isCacheable();
+  }
+
+  @Override
+  public boolean isResultCacheable() {
+    return true;
+  }
+
+  @Override
+  protected boolean isRetryable() {
+    return true;
+  }
+
+  @Override
+  public Long sync() throws TimeoutException {
+    if (ignoreCache() || !isSessionCacheable()) {
+      return super.sync();
+    }
+
+    final Timer.Context context = requestLatency.time();
+    try {
+      String tableName = tableName();
+      long writeEpoch = sessionOps.writeEpoch(tableName);
+      String statementKey = resultCacheKey(tableName);
+
+      CachedQueryResult cachedQueryResult = sessionOps.checkResultCache(tableName, statementKey);
+      if (cachedQueryResult != null) {
+        sessionCacheHits.mark();
+        cacheHits.mark();
+        return (Long) cachedQueryResult.results().get(0);
+      }
+      sessionCacheMiss.mark();
+      cacheMiss.mark();
+
+      ResultSet resultSet =
+          this.execute(sessionOps, null, queryExecutionTimeout, queryTimeoutUnits, showValues, true);
+      Long count = transform(resultSet);
+      sessionOps.updateResultCache(statementKey, countResult(tableName, writeEpoch, count));
+      return count;
+    } finally {
+      context.stop();
+    }
+  }
+
+  @Override
+  public Long sync(UnitOfWork uow) throws TimeoutException {
+    if (uow == null) return sync();
+    if (ignoreCache()) {
+      return super.sync(uow);
+    }
+
+    final Timer.Context context = requestLatency.time();
+    try {
+      String tableName = tableName();
+      long writeEpoch = sessionOps.writeEpoch(tableName);
+      String statementKey = resultCacheKey(tableName);
+
+      // Writes to the table advance its write epoch and so invalidate counts remembered before
+      // them, writes batched in the unit of work evict them until the batch is sent on commit.
+      CachedQueryResult cachedQueryResult = uow.resultCacheLookup(statementKey);
+      if (cachedQueryResult != null) {
+        uowCacheHits.mark();
+        cacheHits.mark();
+        uow.recordCacheAndDatabaseOperationCount(1, 0);
+        return (Long) cachedQueryResult.results().get(0);
+      }
+      uowCacheMiss.mark();
+
+      if (isSessionCacheable()) {
+        cachedQueryResult = sessionOps.checkResultCache(tableName, statementKey);
+        if (cachedQueryResult != null) {
+          uow.resultCacheUpdate(statementKey, cachedQueryResult);
+          sessionCacheHits.mark();
+          cacheHits.mark();
+          uow.recordCacheAndDatabaseOperationCount(1, 0);
+          return (Long) cachedQueryResult.results().get(0);
+        }
+        sessionCacheMiss.mark();
+      }
+      cacheMiss.mark();
+      uow.recordCacheAndDatabaseOperationCount(-1, 0);
+
+      ResultSet resultSet =
+          execute(sessionOps, uow, queryExecutionTimeout, queryTimeoutUnits, showValues, true);
+      Long count = transform(resultSet);
+      uow.resultCacheUpdate(statementKey, countResult(tableName, writeEpoch, count));
+      return count;
+    } finally {
+      context.stop();
+    }
+  }
 
+  private CachedQueryResult countResult(String tableName, long writeEpoch, Long count) {
+    return new CachedQueryResult(
+        tableName, writeEpoch, Collections.singletonList(count), sessionOps.countCacheTtl());
+  }
+
+  private String tableName() {
+    return CacheUtil.schemaName(resolveEntity().getFacets());
+  }
+
+  private HelenusEntity resolveEntity() {
     if (filters != null && !filters.isEmpty()) {
       filters.forEach(f -> addPropertyNode(f.getNode()));
     }
@@ -52,7 +162,13 @@ public final class CountOperation extends AbstractFilterOperation<Long, CountOpe
       throw new HelenusMappingException("unknown entity");
     }
 
-    Select select = QueryBuilder.select().countAll().from(entity.getName().toCql());
+    return entity;
+  }
+
+  @Override
+  public BuiltStatement buildStatement(boolean cached) {
+
+    Select select = QueryBuilder.select().countAll().from(resolveEntity().getName().toCql());
 
     if (filters != null && !filters.isEmpty()) {
 
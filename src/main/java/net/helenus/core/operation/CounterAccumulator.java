@@ -0,0 +1,418 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.operation;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Update;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import net.helenus.core.AbstractSessionOperations;
+import net.helenus.core.Filter;
+import net.helenus.core.cache.Facet;
+import net.helenus.mapping.ColumnType;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusProperty;
+import net.helenus.support.HelenusException;
+import net.helenus.support.HelenusMappingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sums the counter increments handed to it by {@link UpdateOperation#accumulate()} per table, row
+ * and column, and writes the sums in COUNTER batches grouped by partition. Sums are written at
+ * least every half of the maximum delay, and sooner once more than the maximum number of counters
+ * are pending.
+ *
+ * <p>Each counter is summed in its own {@link LongAdder}, so threads incrementing the same hot
+ * counter don't contend. A flush starts a new set of counters and writes what the previous set
+ * holds; it looks at that set once more on the next flush, for increments which raced it, after
+ * waiting for any increment still being added to it. Counters aren't idempotent, so writes which
+ * fail aren't retried, they are logged and counted.
+ *
+ * <p>Metrics are registered as {@code net.helenus.counters.<name>}: {@code increments} and {@code
+ * writes} are the increments accumulated and the counter updates actually sent, their ratio is the
+ * amount of aggregation done. {@code pending} is the number of counters pending in the open
+ * accumulators sharing the registry.
+ */
+public final class CounterAccumulator implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CounterAccumulator.class);
+  private static final String PREFIX = "net.helenus.counters";
+
+  private final AbstractSessionOperations sessionOps;
+  private final WriteCoalescer keys;
+  private final int maxPending;
+  private final int batchSize;
+  private final ScheduledExecutorService scheduler;
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  // Completed once a write is applied and the cache invalidated, whether it failed or not.
+  private final Set<ListenableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+  private final Meter incrementsMeter;
+  private final Meter writesMeter;
+  private final Meter statementsMeter;
+  private final Meter failuresMeter;
+  private final PendingGauge pendingGauge;
+  private volatile Generation current = new Generation();
+  private Generation retiring;
+  private volatile boolean closed;
+
+  public CounterAccumulator(
+      AbstractSessionOperations sessionOperations,
+      long maxDelay,
+      TimeUnit units,
+      int maxPending,
+      int batchSize) {
+    if (maxDelay <= 0) {
+      throw new IllegalArgumentException("the maximum delay must be positive");
+    }
+    if (maxPending < 1 || batchSize < 1) {
+      throw new IllegalArgumentException("the pending counters and batch size must be at least 1");
+    }
+    this.sessionOps = sessionOperations;
+    this.keys = new WriteCoalescer(sessionOperations);
+    this.maxPending = maxPending;
+    this.batchSize = batchSize;
+
+    MetricRegistry metrics = sessionOperations.getMetricRegistry();
+    if (metrics == null) {
+      metrics = new MetricRegistry();
+    }
+    this.incrementsMeter = metrics.meter(MetricRegistry.name(PREFIX, "increments"));
+    this.writesMeter = metrics.meter(MetricRegistry.name(PREFIX, "writes"));
+    this.statementsMeter = metrics.meter(MetricRegistry.name(PREFIX, "statements"));
+    this.failuresMeter = metrics.meter(MetricRegistry.name(PREFIX, "failures"));
+    this.pendingGauge = pendingGauge(metrics);
+    pendingGauge.accumulators.add(this);
+
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "helenus-counter-flush");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long period = Math.max(1L, units.toMicros(maxDelay) / 2);
+    scheduler.scheduleAtFixedRate(this::flushAsync, period, period, TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * Adds the increments of an update restricted to a single row. The row's `facets`, when it is
+   * cached, are evicted from the session cache once the increments are written.
+   */
+  void add(
+      HelenusEntity entity,
+      List<Filter<?>> filters,
+      List<WriteCoalescer.Write> writes,
+      List<Facet> facets) {
+    if (closed) {
+      throw new HelenusException("the counter accumulator is closed");
+    }
+    List<Object> row = keys.key(entity, filters, false);
+    if (row == null) {
+      throw new HelenusMappingException(
+          "only increments of a single row, given by all of its key columns, can be accumulated: "
+              + entity.getMappingInterface());
+    }
+    for (WriteCoalescer.Write write : writes) {
+      List<Object> cell = new ArrayList<Object>(row.size() + 1);
+      cell.addAll(row);
+      cell.add(write.property);
+      add(row, cell, (Long) write.value, facets);
+    }
+  }
+
+  private void add(List<Object> row, List<Object> cell, long delta, List<Facet> facets) {
+    for (; ; ) {
+      Generation generation = current;
+      generation.writers.incrementAndGet();
+      try {
+        // Once retired, a generation is drained only once more, an increment must go to the next.
+        if (generation.retired) {
+          continue;
+        }
+        // Checked again as a writer, close() flushes only the increments of writers before it.
+        if (closed) {
+          throw new HelenusException("the counter accumulator is closed");
+        }
+        if (facets != null) {
+          generation.facets.putIfAbsent(row, facets);
+        }
+        LongAdder sum = generation.cells.get(cell);
+        if (sum == null) {
+          sum = generation.cells.computeIfAbsent(cell, k -> new LongAdder());
+          if (generation.cells.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushAsync);
+          }
+        }
+        sum.add(delta);
+      } finally {
+        generation.writers.decrementAndGet();
+      }
+      incrementsMeter.mark();
+      return;
+    }
+  }
+
+  /** Writes the pending sums and waits until they are written. */
+  public void flush() {
+    for (ListenableFuture<Void> future : drain()) {
+      Futures.getUnchecked(future);
+    }
+  }
+
+  private void flushAsync() {
+    flushRequested.set(false);
+    try {
+      drain();
+    } catch (RuntimeException e) {
+      LOG.error("unable to flush counters", e);
+    }
+  }
+
+  private synchronized List<ListenableFuture<Void>> drain() {
+    Generation retired = retiring;
+    retiring = current;
+    current = new Generation();
+    retiring.retired = true;
+
+    Map<List<Object>, Long> deltas = new LinkedHashMap<List<Object>, Long>();
+    Map<List<Object>, List<Facet>> facets = new HashMap<List<Object>, List<Facet>>();
+    if (retired != null) {
+      // Increments which saw it before it was retired, a flush ago, must land before the last look.
+      while (retired.writers.get() != 0) {
+        Thread.yield();
+      }
+      retired.drain(deltas, facets);
+    }
+    retiring.drain(deltas, facets);
+    return send(deltas, facets);
+  }
+
+  private List<ListenableFuture<Void>> send(
+      Map<List<Object>, Long> deltas, Map<List<Object>, List<Facet>> facets) {
+    // Group the counters by row and the rows by partition.
+    Map<List<Object>, Map<List<Object>, Update>> partitions =
+        new LinkedHashMap<List<Object>, Map<List<Object>, Update>>();
+    for (Map.Entry<List<Object>, Long> e : deltas.entrySet()) {
+      long delta = e.getValue();
+      if (delta == 0L) {
+        continue;
+      }
+      List<Object> cell = e.getKey();
+      List<Object> row = cell.subList(0, cell.size() - 1);
+      HelenusEntity entity = (HelenusEntity) row.get(0);
+      String column = ((HelenusProperty) cell.get(cell.size() - 1)).getColumnName().toCql();
+
+      List<HelenusProperty> keyColumns = WriteCoalescer.keyColumns(entity);
+      int partitionKey = 0;
+      for (HelenusProperty property : keyColumns) {
+        if (property.getColumnType() == ColumnType.PARTITION_KEY) {
+          partitionKey++;
+        }
+      }
+      Map<List<Object>, Update> rows =
+          partitions.computeIfAbsent(
+              row.subList(0, partitionKey + 1), p -> new LinkedHashMap<List<Object>, Update>());
+      Update update = rows.get(row);
+      if (update == null) {
+        update = QueryBuilder.update(entity.getName().toCql());
+        for (int i = 0; i < keyColumns.size(); i++) {
+          update.where(QueryBuilder.eq(keyColumns.get(i).getColumnName().toCql(), row.get(i + 1)));
+        }
+        rows.put(row, update);
+      }
+      update.with(delta > 0 ? QueryBuilder.incr(column, delta) : QueryBuilder.decr(column, -delta));
+      writesMeter.mark();
+    }
+
+    List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>();
+    for (Map.Entry<List<Object>, Map<List<Object>, Update>> partition : partitions.entrySet()) {
+      String table = ((HelenusEntity) partition.getKey().get(0)).getName().toCql();
+      List<List<Object>> rows = new ArrayList<List<Object>>(partition.getValue().keySet());
+      List<Update> updates = new ArrayList<Update>(partition.getValue().values());
+      for (int i = 0; i < updates.size(); i += batchSize) {
+        int end = Math.min(updates.size(), i + batchSize);
+        List<Update> chunk = updates.subList(i, end);
+        List<List<Facet>> evicted = new ArrayList<List<Facet>>();
+        for (List<Object> row : rows.subList(i, end)) {
+          List<Facet> rowFacets = facets.get(row);
+          if (rowFacets != null) {
+            evicted.add(rowFacets);
+          }
+        }
+        Statement statement;
+        if (chunk.size() == 1) {
+          statement = chunk.get(0);
+        } else {
+          BatchStatement batch = new BatchStatement(BatchStatement.Type.COUNTER);
+          batch.addAll(chunk);
+          statement = batch;
+        }
+        statement.setDefaultTimestamp(sessionOps.getTimestampGenerator().next());
+        if (sessionOps.getDefaultConsistencyLevel() != null) {
+          statement.setConsistencyLevel(sessionOps.getDefaultConsistencyLevel());
+        }
+        futures.add(execute(statement, table, evicted));
+      }
+    }
+    return futures;
+  }
+
+  private ListenableFuture<Void> execute(
+      Statement statement, String table, List<List<Facet>> evicted) {
+    ResultSetFuture future = sessionOps.executeAsync(statement);
+    SettableFuture<Void> done = SettableFuture.create();
+    statementsMeter.mark();
+    inFlight.add(done);
+    // The rows are evicted and the epoch advances once the counters are written, so that no read
+    // made before then is cached as current. A write which failed may still have been applied.
+    Futures.addCallback(
+        future,
+        new FutureCallback<ResultSet>() {
+          @Override
+          public void onSuccess(ResultSet result) {
+            written();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            failuresMeter.mark();
+            LOG.error("unable to write counters: " + statement, t);
+            written();
+          }
+
+          private void written() {
+            try {
+              for (List<Facet> facets : evicted) {
+                sessionOps.cacheEvict(facets);
+              }
+              sessionOps.advanceWriteEpoch(table);
+            } finally {
+              inFlight.remove(done);
+              done.set(null);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+    return done;
+  }
+
+  /** Stops the periodic flush and writes whatever is still pending. */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Writers which got in before closed was set land in the generation retired by the first flush,
+    // the second waits for them before its last look at it.
+    flush();
+    flush();
+    for (ListenableFuture<Void> future : new ArrayList<ListenableFuture<Void>>(inFlight)) {
+      Futures.getUnchecked(future);
+    }
+    pendingGauge.accumulators.remove(this);
+  }
+
+  private static PendingGauge pendingGauge(MetricRegistry metrics) {
+    String name = MetricRegistry.name(PREFIX, "pending");
+    for (; ; ) {
+      Gauge<?> gauge = metrics.getGauges().get(name);
+      if (gauge instanceof PendingGauge) {
+        return (PendingGauge) gauge;
+      }
+      if (gauge != null) {
+        // Taken by a gauge of some other kind, pending counters go unreported.
+        return new PendingGauge();
+      }
+      try {
+        return metrics.register(name, new PendingGauge());
+      } catch (IllegalArgumentException e) {
+        // Registered by another session sharing this registry, use it.
+      }
+    }
+  }
+
+  /** The counters pending in the open accumulators sharing a registry. */
+  private static final class PendingGauge implements Gauge<Integer> {
+
+    final Set<CounterAccumulator> accumulators = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public Integer getValue() {
+      int pending = 0;
+      for (CounterAccumulator accumulator : accumulators) {
+        pending += accumulator.current.cells.size();
+      }
+      return pending;
+    }
+  }
+
+  /** The counters incremented since a flush, and the part of each sum already written. */
+  private static final class Generation {
+
+    final ConcurrentMap<List<Object>, LongAdder> cells =
+        new ConcurrentHashMap<List<Object>, LongAdder>();
+    final Map<List<Object>, Long> flushed = new HashMap<List<Object>, Long>();
+    final ConcurrentMap<List<Object>, List<Facet>> facets =
+        new ConcurrentHashMap<List<Object>, List<Facet>>();
+    final AtomicInteger writers = new AtomicInteger();
+    volatile boolean retired;
+
+    void drain(Map<List<Object>, Long> deltas, Map<List<Object>, List<Facet>> rowFacets) {
+      rowFacets.putAll(facets);
+      for (Map.Entry<List<Object>, LongAdder> e : cells.entrySet()) {
+        long sum = e.getValue().sum();
+        long written = flushed.getOrDefault(e.getKey(), 0L);
+        if (sum != written) {
+          deltas.merge(e.getKey(), sum - written, Long::sum);
+          flushed.put(e.getKey(), sum);
+        }
+      }
+    }
+  }
+}
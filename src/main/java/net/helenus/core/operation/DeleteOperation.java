@@ -21,11 +21,14 @@ import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.Delete.Where;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 import net.helenus.core.AbstractSessionOperations;
 import net.helenus.core.Filter;
 import net.helenus.core.UnitOfWork;
+import net.helenus.core.cache.CacheUtil;
 import net.helenus.core.cache.Facet;
 import net.helenus.core.reflect.HelenusPropertyNode;
 import net.helenus.mapping.HelenusEntity;
@@ -119,6 +122,23 @@ public final class DeleteOperation extends AbstractFilterOperation<ResultSet, De
     return this;
   }
 
+  /** Deletes with the next timestamp of the session, taken now rather than when it is executed. */
+  public DeleteOperation usingTimestamp() {
+    return usingTimestamp(sessionOps.getTimestampGenerator().next());
+  }
+
+  /**
+   * The entity whose rows are deleted, or null when the delete is conditional or has its own
+   * timestamp and so may not override the other writes of a batch.
+   */
+  HelenusEntity unconditionalEntity() {
+    if (ifExists || ifFilters != null || timestamp != null || filters == null) {
+      return null;
+    }
+    filters.forEach(f -> addPropertyNode(f.getNode()));
+    return entity;
+  }
+
   private void addPropertyNode(HelenusPropertyNode p) {
     if (entity == null) {
       entity = p.getEntity();
@@ -139,6 +159,11 @@ public final class DeleteOperation extends AbstractFilterOperation<ResultSet, De
     return true;
   }
 
+  @Override
+  protected boolean isRetryable() {
+    return !ifExists && !isConditional();
+  }
+
   @Override
   public ResultSet sync() throws TimeoutException {
     ResultSet result = super.sync();
@@ -172,4 +197,9 @@ public final class DeleteOperation extends AbstractFilterOperation<ResultSet, De
   public List<Facet> getFacets() {
     return entity.getFacets();
   }
+
+  @Override
+  public Set<String> getWrittenTables() {
+    return Collections.singleton(CacheUtil.schemaName(getFacets()));
+  }
 }
@@ -16,7 +16,9 @@
  */
 package net.helenus.core.operation;
 
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
@@ -34,18 +36,21 @@ import net.helenus.core.cache.UnboundFacet;
 import net.helenus.core.reflect.DefaultPrimitiveTypes;
 import net.helenus.core.reflect.HelenusPropertyNode;
 import net.helenus.core.reflect.MapExportable;
+import net.helenus.mapping.ColumnType;
 import net.helenus.mapping.HelenusEntity;
 import net.helenus.mapping.HelenusProperty;
 import net.helenus.mapping.MappingUtil;
 import net.helenus.mapping.value.BeanColumnValueProvider;
-import net.helenus.support.Fun;
+import net.helenus.mapping.value.PropertyIndex;
+import net.helenus.mapping.value.PropertyValueMap;
 import net.helenus.support.HelenusException;
 import net.helenus.support.HelenusMappingException;
 
 public final class InsertOperation<T> extends AbstractOperation<T, InsertOperation<T>> {
 
-  private final List<Fun.Tuple2<HelenusPropertyNode, Object>> values =
-      new ArrayList<Fun.Tuple2<HelenusPropertyNode, Object>>();
+  // The columns being inserted and their prepared values, at matching positions.
+  private final List<HelenusProperty> properties = new ArrayList<HelenusProperty>();
+  private final List<Object> values = new ArrayList<Object>();
   private final T pojo;
   private final Class<?> resultType;
   private final Set<String> readSet;
@@ -54,7 +59,6 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
 
   private int[] ttl;
   private long[] timestamp;
-  private long writeTime = 0L;
 
   public InsertOperation(AbstractSessionOperations sessionOperations, boolean ifNotExists) {
     super(sessionOperations);
@@ -104,10 +108,9 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
     this.ifNotExists = ifNotExists;
     this.resultType = entity.getMappingInterface();
 
-    Collection<HelenusProperty> properties = entity.getOrderedProperties();
     Set<String> keys = (mutations == null) ? null : mutations;
 
-    for (HelenusProperty prop : properties) {
+    for (HelenusProperty prop : entity.getOrderedProperties()) {
       boolean addProp = false;
 
       switch (prop.getColumnType()) {
@@ -124,8 +127,8 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
         value = sessionOps.getValuePreparer().prepareColumnValue(value, prop);
 
         if (value != null) {
-          HelenusPropertyNode node = new HelenusPropertyNode(prop, Optional.empty());
-          values.add(Fun.Tuple2.of(node, value));
+          properties.add(prop);
+          values.add(value);
         }
       }
     }
@@ -150,21 +153,53 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
       Object value = sessionOps.getValuePreparer().prepareColumnValue(val, node.getProperty());
 
       if (value != null) {
-        values.add(Fun.Tuple2.of(node, value));
+        properties.add(node.getProperty());
+        values.add(value);
       }
     }
 
     return this;
   }
 
-  @Override
-  public BuiltStatement buildStatement(boolean cached) {
+  HelenusEntity entity() {
+    return entity;
+  }
+
+  /**
+   * The entity followed by the values of the partition key columns being inserted, in the order of
+   * the key, so that rows of different tables never share a key.
+   */
+  List<Object> partitionKey() {
+    List<Object> key = new ArrayList<Object>(2);
+    key.add(entity);
+    for (int i = 0; i < properties.size(); i++) {
+      if (properties.get(i).getColumnType() == ColumnType.PARTITION_KEY) {
+        key.add(values.get(i));
+      }
+    }
+    return key;
+  }
+
+  /**
+   * The columns this insert writes, or null when it is conditional or has its own TTL or timestamp
+   * and so can't be folded with the other writes of a batch.
+   */
+  List<WriteCoalescer.Write> writes() {
+    if (values.isEmpty() || ifNotExists || ttl != null || timestamp != null) {
+      return null;
+    }
+    resolveEntity();
+    List<WriteCoalescer.Write> writes = new ArrayList<WriteCoalescer.Write>(values.size());
+    for (int i = 0; i < properties.size(); i++) {
+      writes.add(
+          new WriteCoalescer.Write(WriteCoalescer.Kind.SET, properties.get(i), values.get(i)));
+    }
+    return writes;
+  }
+
+  private HelenusEntity resolveEntity() {
     List<HelenusEntity> entities =
-        values
-            .stream()
-            .map(t -> t._1.getProperty().getEntity())
-            .distinct()
-            .collect(Collectors.toList());
+        properties.stream().map(p -> p.getEntity()).distinct().collect(Collectors.toList());
     if (entities.size() != 1) {
       throw new HelenusMappingException(
           "you can insert only single entity at a time, found: "
@@ -185,6 +220,12 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
     } else {
       this.entity = entity;
     }
+    return entity;
+  }
+
+  @Override
+  public BuiltStatement buildStatement(boolean cached) {
+    HelenusEntity entity = resolveEntity();
 
     if (values.isEmpty()) return null;
 
@@ -198,10 +239,9 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
       insert.ifNotExists();
     }
 
-    values.forEach(
-        t -> {
-          insert.value(t._1.getColumnName(), t._2);
-        });
+    for (int i = 0; i < properties.size(); i++) {
+      insert.value(properties.get(i).getColumnName().toCql(), values.get(i));
+    }
 
     //TODO(gburd): IF NOT EXISTS when @Constraints.Relationship is 1:1 or 1:m
 
@@ -215,17 +255,147 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
     return insert;
   }
 
+  /**
+   * Binds the inserted values to a statement prepared once per entity, set of columns, IF NOT
+   * EXISTS and USING clause, rather than sending a new statement with the values inline.
+   */
+  @Override
+  Statement executableStatement(boolean cached) {
+    HelenusEntity entity = resolveEntity();
+    if (values.isEmpty() || entity == null) {
+      return buildStatement(cached);
+    }
+
+    PropertyIndex index = PropertyIndex.of(entity);
+    int[] ordinals = new int[properties.size()];
+    Object[] byOrdinal = new Object[index.size()];
+    long[] columns = new long[(index.size() + 63) >>> 6];
+    for (int i = 0; i < ordinals.length; i++) {
+      int ordinal = index.ordinal(properties.get(i).getPropertyName());
+      if (ordinal < 0) {
+        return buildStatement(cached);
+      }
+      byOrdinal[ordinal] = values.get(i);
+      columns[ordinal >>> 6] |= 1L << ordinal;
+    }
+
+    Template key =
+        new Template(
+            sessionOps.usingKeyspace(),
+            entity,
+            columns,
+            ifNotExists,
+            ttl != null,
+            timestamp != null);
+    PreparedStatement prepared = sessionOps.prepareTemplate(key, () -> key.statement(index));
+    if (prepared == null) {
+      return buildStatement(cached);
+    }
+
+    int count = (ttl != null ? 1 : 0) + (timestamp != null ? 1 : 0);
+    for (long word : columns) {
+      count += Long.bitCount(word);
+    }
+    Object[] bindings = new Object[count];
+    int n = 0;
+    for (int ordinal = 0; ordinal < byOrdinal.length; ordinal++) {
+      if ((columns[ordinal >>> 6] & (1L << ordinal)) != 0) {
+        bindings[n++] = byOrdinal[ordinal];
+      }
+    }
+    if (ttl != null) {
+      bindings[n++] = ttl[0];
+    }
+    if (timestamp != null) {
+      bindings[n++] = timestamp[0];
+    }
+    return prepared.bind(bindings);
+  }
+
+  /**
+   * Identifies a prepared insert, the values it binds follow the ordinals of its columns. The table
+   * name isn't qualified, so the statement is specific to the keyspace it was prepared in.
+   */
+  static final class Template {
+
+    private final String keyspace;
+    private final HelenusEntity entity;
+    private final long[] columns;
+    private final boolean ifNotExists;
+    private final boolean ttl;
+    private final boolean timestamp;
+
+    Template(
+        String keyspace,
+        HelenusEntity entity,
+        long[] columns,
+        boolean ifNotExists,
+        boolean ttl,
+        boolean timestamp) {
+      this.keyspace = keyspace;
+      this.entity = entity;
+      this.columns = columns;
+      this.ifNotExists = ifNotExists;
+      this.ttl = ttl;
+      this.timestamp = timestamp;
+    }
+
+    Insert statement(PropertyIndex index) {
+      Insert insert = QueryBuilder.insertInto(entity.getName().toCql());
+      if (ifNotExists) {
+        insert.ifNotExists();
+      }
+      for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+        if ((columns[ordinal >>> 6] & (1L << ordinal)) != 0) {
+          insert.value(index.property(ordinal).getColumnName().toCql(), QueryBuilder.bindMarker());
+        }
+      }
+      if (ttl) {
+        insert.using(QueryBuilder.ttl(QueryBuilder.bindMarker()));
+      }
+      if (timestamp) {
+        insert.using(QueryBuilder.timestamp(QueryBuilder.bindMarker()));
+      }
+      return insert;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Template)) {
+        return false;
+      }
+      Template other = (Template) o;
+      return entity == other.entity
+          && Objects.equals(keyspace, other.keyspace)
+          && ifNotExists == other.ifNotExists
+          && ttl == other.ttl
+          && timestamp == other.timestamp
+          && Arrays.equals(columns, other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = System.identityHashCode(entity) * 31 + Objects.hashCode(keyspace);
+      h = 31 * h + Arrays.hashCode(columns);
+      return 31 * h + (ifNotExists ? 4 : 0) + (ttl ? 2 : 0) + (timestamp ? 1 : 0);
+    }
+  }
+
   private T newInstance(Class<?> iface) {
     if (values.size() > 0) {
       boolean immutable = entity.isDraftable();
-      Collection<HelenusProperty> properties = entity.getOrderedProperties();
-      Map<String, Object> backingMap = new HashMap<String, Object>(properties.size());
+      Map<String, Object> backingMap = new PropertyValueMap(entity);
 
       // First, add all the inserted values into our new map.
-      values.forEach(t -> backingMap.put(t._1.getProperty().getPropertyName(), t._2));
+      for (int i = 0; i < properties.size(); i++) {
+        backingMap.put(properties.get(i).getPropertyName(), values.get(i));
+      }
 
       // Then, fill in all the rest of the properties.
-      for (HelenusProperty prop : properties) {
+      for (HelenusProperty prop : entity.getOrderedProperties()) {
         String key = prop.getPropertyName();
         if (backingMap.containsKey(key)) {
           // Some values man need to be converted (e.g. from String to Enum). This is done
@@ -291,12 +461,21 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
     return this;
   }
 
+  /** Writes with the next timestamp of the session, taken now rather than when it is executed. */
+  public InsertOperation<T> usingTimestamp() {
+    return usingTimestamp(sessionOps.getTimestampGenerator().next());
+  }
+
+  /** The timestamp the columns were written with, or 0 when they haven't been written yet. */
+  private long writeTime() {
+    return timestamp != null ? timestamp[0] : executedAt;
+  }
+
   protected void adjustTtlAndWriteTime(MapExportable pojo) {
-    if (ttl != null || writeTime != 0L) {
+    if (ttl != null || writeTime() != 0L) {
       List<String> columnNames =
-          values
+          properties
               .stream()
-              .map(t -> t._1.getProperty())
               .filter(
                   prop -> {
                     switch (prop.getColumnType()) {
@@ -314,8 +493,8 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
         if (ttl != null) {
           columnNames.forEach(name -> pojo.put(CacheUtil.ttlKey(name), ttl));
         }
-        if (writeTime != 0L) {
-          columnNames.forEach(name -> pojo.put(CacheUtil.writeTimeKey(name), writeTime));
+        if (writeTime() != 0L) {
+          columnNames.forEach(name -> pojo.put(CacheUtil.writeTimeKey(name), writeTime()));
         }
       }
     }
@@ -323,16 +502,26 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
 
   @Override
   protected boolean isIdempotentOperation() {
-    return values.stream().map(v -> v._1.getProperty()).allMatch(prop -> prop.isIdempotent())
+    return properties.stream().allMatch(prop -> prop.isIdempotent())
         || super.isIdempotentOperation();
   }
 
+  @Override
+  protected boolean isRetryable() {
+    return !ifNotExists;
+  }
+
   @Override
   public T sync() throws TimeoutException {
     T result = super.sync();
     if (entity.isCacheable() && result != null) {
-      adjustTtlAndWriteTime((MapExportable) result);
-      sessionOps.updateCache(result, bindFacetValues());
+      if (resultType == entity.getMappingInterface()) {
+        adjustTtlAndWriteTime((MapExportable) result);
+        sessionOps.updateCache(result, bindFacetValues());
+      } else {
+        // No entity to cache, but make sure nothing stale (or known absent) remains.
+        sessionOps.cacheEvict(bindFacetValues());
+      }
     }
     return result;
   }
@@ -358,6 +547,8 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
         adjustTtlAndWriteTime((MapExportable) result);
       }
       cacheUpdate(uow, result, bindFacetValues());
+    } else if (entity.isCacheable()) {
+      sessionOps.cacheEvict(bindFacetValues());
     }
     return result;
   }
@@ -391,7 +582,9 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
     }
     List<Facet> boundFacets = new ArrayList<>();
     Map<HelenusProperty, Object> valuesMap = new HashMap<>(values.size());
-    values.forEach(t -> valuesMap.put(t._1.getProperty(), t._2));
+    for (int i = 0; i < properties.size(); i++) {
+      valuesMap.put(properties.get(i), values.get(i));
+    }
 
     for (Facet facet : facets) {
       if (facet instanceof UnboundFacet) {
@@ -421,4 +614,13 @@ public final class InsertOperation<T> extends AbstractOperation<T, InsertOperati
       return new ArrayList<Facet>();
     }
   }
+
+  @Override
+  public Set<String> getWrittenTables() {
+    if (entity != null) {
+      return Collections.singleton(CacheUtil.schemaName(getFacets()));
+    } else {
+      return Collections.emptySet();
+    }
+  }
 }
@@ -22,14 +22,19 @@ import com.codahale.metrics.Timer;
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import net.helenus.core.AbstractSessionOperations;
 import net.helenus.core.UnitOfWork;
+import net.helenus.core.cache.CacheMetrics;
+import net.helenus.core.cache.CacheUtil;
 import net.helenus.core.cache.Facet;
 import net.helenus.support.HelenusException;
 import org.slf4j.Logger;
@@ -47,9 +52,13 @@ public abstract class Operation<E> {
   protected final Meter uowCacheMiss;
   protected final Meter sessionCacheHits;
   protected final Meter sessionCacheMiss;
+  protected final Meter sessionCacheNegativeHits;
   protected final Meter cacheHits;
   protected final Meter cacheMiss;
   protected final Timer requestLatency;
+  protected final CacheMetrics cacheMetrics;
+  // The default timestamp of the last statement executed, in microseconds.
+  protected long executedAt = 0L;
 
   Operation(AbstractSessionOperations sessionOperations) {
     this.sessionOps = sessionOperations;
@@ -62,9 +71,12 @@ public abstract class Operation<E> {
     this.uowCacheMiss = metrics.meter("net.helenus.UOW-cache-miss");
     this.sessionCacheHits = metrics.meter("net.helenus.session-cache-hits");
     this.sessionCacheMiss = metrics.meter("net.helenus.session-cache-miss");
+    this.sessionCacheNegativeHits = metrics.meter("net.helenus.session-cache-negative-hits");
     this.cacheHits = metrics.meter("net.helenus.cache-hits");
     this.cacheMiss = metrics.meter("net.helenus.cache-miss");
     this.requestLatency = metrics.timer("net.helenus.request-latency");
+    CacheMetrics cacheMetrics = sessionOperations.getCacheMetrics();
+    this.cacheMetrics = cacheMetrics != null ? cacheMetrics : new CacheMetrics(metrics);
   }
 
   public static String queryString(BatchOperation operation, boolean includeValues) {
@@ -84,6 +96,8 @@ public abstract class Operation<E> {
     } else if (statement instanceof RegularStatement) {
       RegularStatement regularStatement = (RegularStatement) statement;
       query = regularStatement.getQueryString();
+    } else if (statement instanceof BoundStatement) {
+      query = ((BoundStatement) statement).preparedStatement().getQueryString();
     } else {
       query = statement.toString();
     }
@@ -99,7 +113,16 @@ public abstract class Operation<E> {
       boolean cached)
       throws TimeoutException {
 
-    Statement statement = options(buildStatement(cached));
+    Statement statement = executableStatement(cached);
+    // Writes are stamped here rather than by the driver so that retries keep the timestamp,
+    // options() may still replace it with one set on the operation. A generator leaving
+    // timestamps to the server returns Long.MIN_VALUE, which the driver doesn't send.
+    if (!getWrittenTables().isEmpty()) {
+      statement.setDefaultTimestamp(session.getTimestampGenerator().next());
+    }
+    statement = options(statement);
+    long timestamp = statement.getDefaultTimestamp();
+    executedAt = timestamp == Long.MIN_VALUE ? 0L : timestamp;
 
     if (session.isShowCql()) {
       String stmt =
@@ -116,10 +139,32 @@ public abstract class Operation<E> {
     }
 
     Stopwatch timer = Stopwatch.createStarted();
+    long deadline = System.nanoTime() + units.toNanos(timeout);
+    OperationRetries retries = isRetryable() ? session.getOperationRetries() : null;
+    if (retries != null) {
+      retries.request();
+    }
     try {
-      ResultSetFuture futureResultSet = session.executeAsync(statement, uow, timer);
-      if (uow != null) uow.recordCacheAndDatabaseOperationCount(0, 1);
-      ResultSet resultSet = futureResultSet.getUninterruptibly(timeout, units);
+      ResultSet resultSet;
+      for (int attempt = 0; ; attempt++) {
+        try {
+          ResultSetFuture futureResultSet = session.executeAsync(statement, uow, timer);
+          if (uow != null) uow.recordCacheAndDatabaseOperationCount(0, 1);
+          resultSet =
+              futureResultSet.getUninterruptibly(
+                  Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+          break;
+        } catch (RuntimeException e) {
+          long delay =
+              retries == null
+                  ? -1L
+                  : retries.retryDelay(e, attempt, deadline - System.nanoTime(), retryName());
+          if (delay < 0) {
+            throw e;
+          }
+          Uninterruptibles.sleepUninterruptibly(delay, TimeUnit.NANOSECONDS);
+        }
+      }
       ColumnDefinitions columnDefinitions = resultSet.getColumnDefinitions();
       if (LOG.isDebugEnabled()) {
         ExecutionInfo ei = resultSet.getExecutionInfo();
@@ -164,6 +209,10 @@ public abstract class Operation<E> {
 
     } finally {
       timer.stop();
+      // Even a write which timed out may have been applied, so always invalidate results.
+      for (String tableName : getWrittenTables()) {
+        session.advanceWriteEpoch(tableName);
+      }
       if (uow != null) uow.addDatabaseTime("Cassandra", timer);
       log(statement, uow, timer, showValues);
     }
@@ -189,6 +238,25 @@ public abstract class Operation<E> {
     return false;
   }
 
+  /**
+   * Whether this operation may be sent again after a transient failure. Applying it twice must
+   * leave the same data as applying it once, and it mustn't be conditional, as a second attempt
+   * would report the outcome of the first.
+   */
+  protected boolean isRetryable() {
+    return false;
+  }
+
+  /** The table retries of this operation are counted for. */
+  private String retryName() {
+    Set<String> tables = getWrittenTables();
+    if (!tables.isEmpty()) {
+      return tables.iterator().next();
+    }
+    String table = CacheUtil.schemaName(getFacets());
+    return table.isEmpty() ? "unknown" : table;
+  }
+
   public Statement options(Statement statement) {
     return statement;
   }
@@ -197,6 +265,14 @@ public abstract class Operation<E> {
     return null;
   }
 
+  /**
+   * The statement sent when the operation is executed. Operations which bind a prepared template
+   * return it here, while {@link #buildStatement(boolean)} still renders the statement inline.
+   */
+  Statement executableStatement(boolean cached) {
+    return buildStatement(cached);
+  }
+
   public List<Facet> getFacets() {
     return new ArrayList<Facet>();
   }
@@ -208,4 +284,18 @@ public abstract class Operation<E> {
   public boolean isSessionCacheable() {
     return false;
   }
+
+  /** Times the database read done to fill the session cache of this operation's table. */
+  protected Timer.Context cacheLoadTimer(boolean loading) {
+    return loading ? cacheMetrics.loadLatency(CacheUtil.schemaName(getFacets())).time() : null;
+  }
+
+  public boolean isResultCacheable() {
+    return false;
+  }
+
+  /** Tables modified by this operation, cached query results for them become stale. */
+  public Set<String> getWrittenTables() {
+    return Collections.emptySet();
+  }
 }
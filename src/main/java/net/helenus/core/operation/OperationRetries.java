@@ -0,0 +1,135 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.operation;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries idempotent operations which fail with a transient driver error, after an exponential
+ * backoff with jitter. An operation isn't retried past its query timeout, nor when the session's
+ * retry budget is spent: every operation adds a fraction of a retry to the budget, so retries stay
+ * a bounded share of the traffic when a node is degraded rather than multiplying it.
+ *
+ * <p>Retries are counted per table as {@code net.helenus.retries.<table>}, and retries denied by
+ * the budget as {@code net.helenus.retries.<table>.exhausted}.
+ */
+public final class OperationRetries {
+
+  private static final String PREFIX = "net.helenus.retries";
+  // The budget is kept in thousandths of a retry.
+  private static final long RETRY = 1000L;
+  private static final long BURST = 20 * RETRY;
+
+  private final int maxRetries;
+  private final long backoffNanos;
+  private final long maxBackoffNanos;
+  private final long deposit;
+  private final AtomicLong budget = new AtomicLong(BURST);
+  private final MetricRegistry metrics;
+
+  public OperationRetries(
+      int maxRetries,
+      long backoff,
+      long maxBackoff,
+      TimeUnit units,
+      double budgetPercent,
+      MetricRegistry metrics) {
+    if (maxRetries < 0 || backoff <= 0 || maxBackoff < backoff) {
+      throw new IllegalArgumentException("invalid retry settings");
+    }
+    if (budgetPercent < 0 || budgetPercent > 100) {
+      throw new IllegalArgumentException("the retry budget is a percentage of operations");
+    }
+    this.maxRetries = maxRetries;
+    this.backoffNanos = units.toNanos(backoff);
+    this.maxBackoffNanos = units.toNanos(maxBackoff);
+    this.deposit = Math.round(budgetPercent * RETRY / 100);
+    this.metrics = metrics == null ? new MetricRegistry() : metrics;
+  }
+
+  /** Adds the share of a retry an operation earns to the budget. */
+  public void request() {
+    if (budget.get() < BURST) {
+      budget.accumulateAndGet(deposit, (b, d) -> Math.min(BURST, b + d));
+    }
+  }
+
+  /**
+   * Returns the nanoseconds to wait before retrying an operation on `table` which failed with
+   * `failure` on the given attempt, or -1 when it shouldn't be retried.
+   */
+  public long retryDelay(Throwable failure, int attempt, long remainingNanos, String table) {
+    if (attempt >= maxRetries || !isRetryable(failure)) {
+      return -1L;
+    }
+    long delay = backoff(attempt);
+    if (delay >= remainingNanos) {
+      return -1L;
+    }
+    if (!withdraw()) {
+      meter(table, "exhausted").mark();
+      return -1L;
+    }
+    meter(table, null).mark();
+    return delay;
+  }
+
+  private boolean withdraw() {
+    long balance;
+    do {
+      balance = budget.get();
+      if (balance < RETRY) {
+        return false;
+      }
+    } while (!budget.compareAndSet(balance, balance - RETRY));
+    return true;
+  }
+
+  private long backoff(int attempt) {
+    long delay = Math.min(maxBackoffNanos, backoffNanos << Math.min(attempt, 30));
+    if (delay < 0) {
+      delay = maxBackoffNanos;
+    }
+    // Equal jitter, so that retries of operations which failed together spread out.
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  private Meter meter(String table, String name) {
+    return metrics.meter(MetricRegistry.name(PREFIX, table, name));
+  }
+
+  static boolean isRetryable(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof QueryValidationException) {
+        return false;
+      }
+      if (t instanceof DriverException) {
+        return true;
+      }
+      if (t.getCause() == t) {
+        break;
+      }
+    }
+    return false;
+  }
+}
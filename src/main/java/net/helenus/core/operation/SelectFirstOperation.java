@@ -65,6 +65,11 @@ public final class SelectFirstOperation<E>
     return delegate.isSessionCacheable();
   }
 
+  @Override
+  public boolean isResultCacheable() {
+    return delegate.isResultCacheable();
+  }
+
   @Override
   public boolean ignoreCache() {
     return delegate.ignoreCache();
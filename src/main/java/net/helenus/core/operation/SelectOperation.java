@@ -218,6 +218,11 @@ public final class SelectOperation<E> extends AbstractFilterStreamOperation<E, S
     return isCacheable;
   }
 
+  @Override
+  public boolean isResultCacheable() {
+    return true;
+  }
+
   @Override
   public List<Facet> getFacets() {
     HelenusEntity entity = props.get(0).getEntity();
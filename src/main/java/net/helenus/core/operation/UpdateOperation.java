@@ -16,7 +16,9 @@
  */
 package net.helenus.core.operation;
 
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Assignment;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
@@ -35,6 +37,7 @@ import net.helenus.mapping.HelenusEntity;
 import net.helenus.mapping.HelenusProperty;
 import net.helenus.mapping.MappingUtil;
 import net.helenus.mapping.value.BeanColumnValueProvider;
+import net.helenus.mapping.value.PropertyIndex;
 import net.helenus.support.HelenusException;
 import net.helenus.support.HelenusMappingException;
 import net.helenus.support.Immutables;
@@ -42,6 +45,7 @@ import net.helenus.support.Immutables;
 public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateOperation<E>> {
 
   private final Map<Assignment, BoundFacet> assignments = new HashMap<>();
+  private final List<WriteCoalescer.Write> writes = new ArrayList<>();
   private final AbstractEntityDraft<E> draft;
   private final Map<String, Object> draftMap;
   private final Set<String> readSet;
@@ -49,7 +53,6 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
   private Object pojo;
   private int[] ttl;
   private long[] timestamp;
-  private long writeTime = 0L;
 
   public UpdateOperation(AbstractSessionOperations sessionOperations) {
     super(sessionOperations);
@@ -72,7 +75,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     this.draftMap = null;
 
     if (pojo != null) {
-      this.entity = Helenus.resolve(MappingUtil.getMappingInterface(pojo));
+      this.entity = Helenus.entityOf(pojo);
       if (this.entity != null && entity.isCacheable() && pojo instanceof MapExportable) {
         this.pojo = pojo;
         this.readSet = ((MapExportable) pojo).toReadSet();
@@ -93,6 +96,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
 
     Object value = sessionOps.getValuePreparer().prepareColumnValue(v, p.getProperty());
     assignments.put(QueryBuilder.set(p.getColumnName(), value), new BoundFacet(p.getProperty(), v));
+    record(WriteCoalescer.Kind.SET, p.getProperty(), value);
 
     addPropertyNode(p);
   }
@@ -101,10 +105,26 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     Objects.requireNonNull(getter, "getter is empty");
 
     HelenusPropertyNode p = MappingUtil.resolveMappingProperty(getter);
-    HelenusProperty prop = p.getProperty();
+    assign(p.getProperty(), p.getColumnName(), v);
+    addPropertyNode(p);
+
+    return this;
+  }
+
+  /** Sets a column given the mapped property rather than a getter of the entity's dsl. */
+  public UpdateOperation<E> set(HelenusProperty prop, Object v) {
+    Objects.requireNonNull(prop, "property is empty");
+
+    assign(prop, prop.getColumnName().toCql(), v);
+    addEntity(prop.getEntity());
+
+    return this;
+  }
 
+  private void assign(HelenusProperty prop, String columnName, Object v) {
     Object value = sessionOps.getValuePreparer().prepareColumnValue(v, prop);
-    assignments.put(QueryBuilder.set(p.getColumnName(), value), new BoundFacet(prop, value));
+    assignments.put(QueryBuilder.set(columnName, value), new BoundFacet(prop, value));
+    record(WriteCoalescer.Kind.SET, prop, value);
 
     if (draft != null) {
       String key = prop.getPropertyName();
@@ -119,10 +139,6 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
         ((MapExportable) pojo).put(key, v);
       }
     }
-
-    addPropertyNode(p);
-
-    return this;
   }
 
   /*
@@ -155,6 +171,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     }
 
     assignments.put(QueryBuilder.incr(p.getColumnName(), delta), facet);
+    record(WriteCoalescer.Kind.INCR, prop, delta);
 
     addPropertyNode(p);
 
@@ -183,6 +200,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     }
 
     assignments.put(QueryBuilder.decr(p.getColumnName(), delta), facet);
+    record(WriteCoalescer.Kind.INCR, prop, -delta);
 
     addPropertyNode(p);
 
@@ -222,6 +240,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     }
 
     assignments.put(QueryBuilder.prepend(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.PREPEND, prop, Collections.singletonList(valueObj));
 
     addPropertyNode(p);
 
@@ -234,7 +253,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     Objects.requireNonNull(value, "value is empty");
 
     HelenusPropertyNode p = MappingUtil.resolveMappingProperty(listGetter);
-    List valueObj = prepareListValue(p, value);
+    List valueObj = prepareListValue(p.getProperty(), value);
 
     final List<V> list;
     final BoundFacet facet;
@@ -254,6 +273,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     }
 
     assignments.put(QueryBuilder.prependAll(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.PREPEND, prop, valueObj);
 
     addPropertyNode(p);
 
@@ -292,6 +312,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     }
 
     assignments.put(QueryBuilder.setIdx(p.getColumnName(), idx, valueObj), facet);
+    writes.add(new WriteCoalescer.Write(WriteCoalescer.Kind.SET_IDX, prop, idx, valueObj));
 
     addPropertyNode(p);
 
@@ -323,6 +344,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.append(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.APPEND, prop, Collections.singletonList(valueObj));
 
     addPropertyNode(p);
 
@@ -335,7 +357,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     Objects.requireNonNull(value, "value is empty");
 
     HelenusPropertyNode p = MappingUtil.resolveMappingProperty(listGetter);
-    List valueObj = prepareListValue(p, value);
+    List valueObj = prepareListValue(p.getProperty(), value);
 
     final List<V> list;
     final BoundFacet facet;
@@ -354,6 +376,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.appendAll(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.APPEND, prop, valueObj);
 
     addPropertyNode(p);
 
@@ -385,6 +408,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.discard(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.DISCARD, prop, Collections.singletonList(valueObj));
 
     addPropertyNode(p);
 
@@ -397,7 +421,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     Objects.requireNonNull(value, "value is empty");
 
     HelenusPropertyNode p = MappingUtil.resolveMappingProperty(listGetter);
-    List valueObj = prepareListValue(p, value);
+    List valueObj = prepareListValue(p.getProperty(), value);
 
     final List<V> list;
     final BoundFacet facet;
@@ -416,6 +440,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.discardAll(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.DISCARD, prop, valueObj);
 
     addPropertyNode(p);
 
@@ -437,9 +462,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     return valueObj;
   }
 
-  private List prepareListValue(HelenusPropertyNode p, List value) {
-
-    HelenusProperty prop = p.getProperty();
+  private List prepareListValue(HelenusProperty prop, List value) {
 
     List valueObj = value;
 
@@ -485,6 +508,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.add(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.ADD, prop, Collections.singleton(valueObj));
 
     addPropertyNode(p);
 
@@ -497,7 +521,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     Objects.requireNonNull(value, "value is empty");
 
     HelenusPropertyNode p = MappingUtil.resolveMappingProperty(setGetter);
-    Set valueObj = prepareSetValue(p, value);
+    Set valueObj = prepareSetValue(p.getProperty(), value);
 
     final Set<V> set;
     final BoundFacet facet;
@@ -516,6 +540,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.addAll(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.ADD, prop, valueObj);
 
     addPropertyNode(p);
 
@@ -547,6 +572,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.remove(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.REMOVE, prop, Collections.singleton(valueObj));
 
     addPropertyNode(p);
 
@@ -559,7 +585,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     Objects.requireNonNull(value, "value is empty");
 
     HelenusPropertyNode p = MappingUtil.resolveMappingProperty(setGetter);
-    Set valueObj = prepareSetValue(p, value);
+    Set valueObj = prepareSetValue(p.getProperty(), value);
 
     final Set<V> set;
     final BoundFacet facet;
@@ -578,6 +604,7 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       facet = null;
     }
     assignments.put(QueryBuilder.removeAll(p.getColumnName(), valueObj), facet);
+    record(WriteCoalescer.Kind.REMOVE, prop, valueObj);
 
     addPropertyNode(p);
 
@@ -599,9 +626,8 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     return valueObj;
   }
 
-  private Set prepareSetValue(HelenusPropertyNode p, Set value) {
+  private Set prepareSetValue(HelenusProperty prop, Set value) {
 
-    HelenusProperty prop = p.getProperty();
     Set valueObj = value;
 
     Optional<Function<Object, Object>> converter =
@@ -652,8 +678,10 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       for (Map.Entry<Object, Object> e : convertedMap.entrySet()) {
         assignments.put(QueryBuilder.put(p.getColumnName(), e.getKey(), e.getValue()), facet);
       }
+      record(WriteCoalescer.Kind.PUT, prop, convertedMap);
     } else {
       assignments.put(QueryBuilder.put(p.getColumnName(), key, value), facet);
+      record(WriteCoalescer.Kind.PUT, prop, Collections.singletonMap(key, value));
     }
 
     addPropertyNode(p);
@@ -689,8 +717,10 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     if (converter.isPresent()) {
       Map convertedMap = (Map) converter.get().apply(map);
       assignments.put(QueryBuilder.putAll(p.getColumnName(), convertedMap), facet);
+      record(WriteCoalescer.Kind.PUT, prop, convertedMap);
     } else {
       assignments.put(QueryBuilder.putAll(p.getColumnName(), map), facet);
+      record(WriteCoalescer.Kind.PUT, prop, map);
     }
 
     addPropertyNode(p);
@@ -698,6 +728,117 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     return this;
   }
 
+  /*
+   *
+   *
+   * DRAFT COLLECTIONS
+   *
+   *
+   */
+
+  /**
+   * Writes the changes a draft recorded for one of its collections as add/remove, append or put
+   * assignments rather than assigning the whole collection.
+   */
+  public <V> UpdateOperation<E> changes(Getter<V> getter, DraftCollections.Tracked changes) {
+
+    Objects.requireNonNull(getter, "getter is empty");
+    Objects.requireNonNull(changes, "changes are empty");
+
+    HelenusPropertyNode p = MappingUtil.resolveMappingProperty(getter);
+    if (isRewrite(p.getProperty(), changes)) {
+      return set(getter, (V) changes);
+    }
+    assignChanges(p.getProperty(), p.getColumnName(), changes);
+    addPropertyNode(p);
+
+    return this;
+  }
+
+  public UpdateOperation<E> changes(HelenusProperty prop, DraftCollections.Tracked changes) {
+
+    Objects.requireNonNull(prop, "property is empty");
+    Objects.requireNonNull(changes, "changes are empty");
+
+    if (isRewrite(prop, changes)) {
+      return set(prop, changes);
+    }
+    assignChanges(prop, prop.getColumnName().toCql(), changes);
+    addEntity(prop.getEntity());
+
+    return this;
+  }
+
+  private boolean isRewrite(HelenusProperty prop, DraftCollections.Tracked changes) {
+    return changes.isRewritten()
+        || (changes instanceof DraftCollections.DraftMap
+            && prop.getWriteConverter(sessionOps.getSessionRepository()).isPresent()
+            && !((DraftCollections.DraftMap) changes).removals().isEmpty());
+  }
+
+  private void assignChanges(
+      HelenusProperty prop, String columnName, DraftCollections.Tracked changes) {
+
+    Object current = draftMap != null ? draftMap.get(prop.getPropertyName()) : null;
+    BoundFacet facet = new BoundFacet(prop, current != null ? current : changes);
+
+    if (changes instanceof DraftCollections.DraftSet) {
+      DraftCollections.DraftSet<?> set = (DraftCollections.DraftSet<?>) changes;
+      if (!set.added().isEmpty()) {
+        Set added = prepareSetValue(prop, set.added());
+        assignments.put(QueryBuilder.addAll(columnName, added), facet);
+        record(WriteCoalescer.Kind.ADD, prop, added);
+      }
+      if (!set.removed().isEmpty()) {
+        Set removed = prepareSetValue(prop, set.removed());
+        assignments.put(QueryBuilder.removeAll(columnName, removed), facet);
+        record(WriteCoalescer.Kind.REMOVE, prop, removed);
+      }
+    } else if (changes instanceof DraftCollections.DraftList) {
+      DraftCollections.DraftList<?> list = (DraftCollections.DraftList<?>) changes;
+      if (!list.appended().isEmpty()) {
+        List appended = prepareListValue(prop, list.appended());
+        assignments.put(QueryBuilder.appendAll(columnName, appended), facet);
+        record(WriteCoalescer.Kind.APPEND, prop, appended);
+      }
+    } else if (changes instanceof DraftCollections.DraftMap) {
+      DraftCollections.DraftMap<?, ?> map = (DraftCollections.DraftMap<?, ?>) changes;
+      if (!map.puts().isEmpty()) {
+        Map puts = map.puts();
+        Optional<Function<Object, Object>> converter =
+            prop.getWriteConverter(sessionOps.getSessionRepository());
+        if (converter.isPresent()) {
+          puts = (Map) converter.get().apply(puts);
+        }
+        assignments.put(QueryBuilder.putAll(columnName, puts), facet);
+        record(WriteCoalescer.Kind.PUT, prop, puts);
+      }
+      if (!map.removals().isEmpty()) {
+        assignments.put(QueryBuilder.removeAll(columnName, map.removals()), facet);
+        record(WriteCoalescer.Kind.REMOVE_KEYS, prop, map.removals());
+      }
+    }
+  }
+
+  private void record(WriteCoalescer.Kind kind, HelenusProperty prop, Object value) {
+    writes.add(new WriteCoalescer.Write(kind, prop, value));
+  }
+
+  /**
+   * The writes of this update in the order they were made, or null when it is conditional or has
+   * its own TTL or timestamp and so can't be folded with the other writes of a batch.
+   */
+  List<WriteCoalescer.Write> writes() {
+    if (entity == null || ifFilters != null || ttl != null || timestamp != null) {
+      return null;
+    }
+    return writes;
+  }
+
+  HelenusEntity entity() {
+    return entity;
+  }
+
   @Override
   public BuiltStatement buildStatement(boolean cached) {
 
@@ -736,6 +877,155 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     return update;
   }
 
+  /**
+   * Binds the columns a draft changed to an UPDATE prepared once per entity, set of columns and
+   * USING clause, as inserts do. Only updates which set whole columns of the row identified by
+   * its full primary key are bound, others are sent as built statements.
+   */
+  @Override
+  Statement executableStatement(boolean cached) {
+    if (draft == null
+        || entity == null
+        || ifFilters != null
+        || filters == null
+        || writes.isEmpty()
+        || writes.size() != assignments.size()) {
+      return buildStatement(cached);
+    }
+
+    PropertyIndex index = PropertyIndex.of(entity);
+    Object[] byOrdinal = new Object[index.size()];
+    long[] columns = new long[(index.size() + 63) >>> 6];
+    for (WriteCoalescer.Write write : writes) {
+      int ordinal = index.ordinal(write.property.getPropertyName());
+      if (write.kind != WriteCoalescer.Kind.SET
+          || ordinal < 0
+          || (columns[ordinal >>> 6] & (1L << ordinal)) != 0) {
+        return buildStatement(cached);
+      }
+      byOrdinal[ordinal] = write.value;
+      columns[ordinal >>> 6] |= 1L << ordinal;
+    }
+
+    HelenusProperty[] primaryKey = index.primaryKey();
+    Object[] key = new Object[primaryKey.length];
+    if (filters.size() != key.length) {
+      return buildStatement(cached);
+    }
+    for (Filter<?> filter : filters) {
+      String name = filter.getNode().getProperty().getPropertyName();
+      int i = primaryKey.length - 1;
+      while (i >= 0 && !primaryKey[i].getPropertyName().equals(name)) {
+        i--;
+      }
+      if (i < 0
+          || key[i] != null
+          || filter.postulateOperator() != Operator.EQ
+          || filter.getNode().getNext().isPresent()) {
+        return buildStatement(cached);
+      }
+      key[i] =
+          sessionOps
+              .getValuePreparer()
+              .prepareColumnValue(filter.postulateValues()[0], primaryKey[i]);
+      if (key[i] == null) {
+        return buildStatement(cached);
+      }
+    }
+
+    Template template =
+        new Template(sessionOps.usingKeyspace(), entity, columns, ttl != null, timestamp != null);
+    PreparedStatement prepared =
+        sessionOps.prepareTemplate(template, () -> template.statement(index));
+    if (prepared == null) {
+      return buildStatement(cached);
+    }
+
+    // Bind markers are numbered in the order of the statement: USING, SET and then WHERE.
+    int count = (ttl != null ? 1 : 0) + (timestamp != null ? 1 : 0) + writes.size() + key.length;
+    Object[] bindings = new Object[count];
+    int n = 0;
+    if (ttl != null) {
+      bindings[n++] = ttl[0];
+    }
+    if (timestamp != null) {
+      bindings[n++] = timestamp[0];
+    }
+    for (int ordinal = 0; ordinal < byOrdinal.length; ordinal++) {
+      if ((columns[ordinal >>> 6] & (1L << ordinal)) != 0) {
+        bindings[n++] = byOrdinal[ordinal];
+      }
+    }
+    for (Object value : key) {
+      bindings[n++] = value;
+    }
+    return prepared.bind(bindings);
+  }
+
+  /** Identifies a prepared update of the columns of a row, by ordinal, and its USING clause. */
+  static final class Template {
+
+    private final String keyspace;
+    private final HelenusEntity entity;
+    private final long[] columns;
+    private final boolean ttl;
+    private final boolean timestamp;
+
+    Template(
+        String keyspace, HelenusEntity entity, long[] columns, boolean ttl, boolean timestamp) {
+      this.keyspace = keyspace;
+      this.entity = entity;
+      this.columns = columns;
+      this.ttl = ttl;
+      this.timestamp = timestamp;
+    }
+
+    Update statement(PropertyIndex index) {
+      Update update = QueryBuilder.update(entity.getName().toCql());
+      if (ttl) {
+        update.using(QueryBuilder.ttl(QueryBuilder.bindMarker()));
+      }
+      if (timestamp) {
+        update.using(QueryBuilder.timestamp(QueryBuilder.bindMarker()));
+      }
+      for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+        if ((columns[ordinal >>> 6] & (1L << ordinal)) != 0) {
+          update.with(
+              QueryBuilder.set(
+                  index.property(ordinal).getColumnName().toCql(), QueryBuilder.bindMarker()));
+        }
+      }
+      for (HelenusProperty property : index.primaryKey()) {
+        update.where(
+            QueryBuilder.eq(property.getColumnName().toCql(), QueryBuilder.bindMarker()));
+      }
+      return update;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Template)) {
+        return false;
+      }
+      Template other = (Template) o;
+      return entity == other.entity
+          && Objects.equals(keyspace, other.keyspace)
+          && ttl == other.ttl
+          && timestamp == other.timestamp
+          && Arrays.equals(columns, other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = System.identityHashCode(entity) * 31 + Objects.hashCode(keyspace);
+      h = 31 * h + Arrays.hashCode(columns);
+      return 31 * h + (ttl ? 2 : 0) + (timestamp ? 1 : 0);
+    }
+  }
+
   @Override
   public E transform(ResultSet resultSet) {
     if ((ifFilters != null && !ifFilters.isEmpty()) && (resultSet.wasApplied() == false)) {
@@ -761,20 +1051,34 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     return this;
   }
 
+  /** Writes with the next timestamp of the session, taken now rather than when it is executed. */
+  public UpdateOperation<E> usingTimestamp() {
+    return usingTimestamp(sessionOps.getTimestampGenerator().next());
+  }
+
+  /** The timestamp the columns were written with, or 0 when they haven't been written yet. */
+  private long writeTime() {
+    return timestamp != null ? timestamp[0] : executedAt;
+  }
+
   private void addPropertyNode(HelenusPropertyNode p) {
+    addEntity(p.getEntity());
+  }
+
+  private void addEntity(HelenusEntity e) {
     if (entity == null) {
-      entity = p.getEntity();
-    } else if (entity != p.getEntity()) {
+      entity = e;
+    } else if (entity != e) {
       throw new HelenusMappingException(
           "you can update columns only in single entity "
               + entity.getMappingInterface()
               + " or "
-              + p.getEntity().getMappingInterface());
+              + e.getMappingInterface());
     }
   }
 
   private void adjustTtlAndWriteTime(MapExportable pojo) {
-    if (ttl != null || writeTime != 0L) {
+    if (ttl != null || writeTime() != 0L) {
       List<String> names = new ArrayList<String>(assignments.size());
       for (BoundFacet facet : assignments.values()) {
         for (HelenusProperty prop : facet.getProperties()) {
@@ -786,8 +1090,8 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
         if (ttl != null) {
           names.forEach(name -> pojo.put(CacheUtil.ttlKey(name), ttl));
         }
-        if (writeTime != 0L) {
-          names.forEach(name -> pojo.put(CacheUtil.writeTimeKey(name), writeTime));
+        if (writeTime() != 0L) {
+          names.forEach(name -> pojo.put(CacheUtil.writeTimeKey(name), writeTime()));
         }
       }
     }
@@ -815,6 +1119,25 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
         || super.isIdempotentOperation();
   }
 
+  @Override
+  protected boolean isRetryable() {
+    if (isConditional()) {
+      return false;
+    }
+    // Counters and list appends or prepends would be applied again.
+    for (WriteCoalescer.Write write : writes) {
+      switch (write.kind) {
+        case INCR:
+        case APPEND:
+        case PREPEND:
+          return false;
+        default:
+          break;
+      }
+    }
+    return true;
+  }
+
   @Override
   public E sync() throws TimeoutException {
     E result = super.sync();
@@ -855,6 +1178,28 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
     return result;
   }
 
+  /**
+   * Hands the counter increments of this update to the session's {@link CounterAccumulator}, which
+   * writes them later summed with the other increments of the same counters. The update is sent
+   * right away when the session doesn't accumulate counters.
+   */
+  public void accumulate() throws TimeoutException {
+    CounterAccumulator counters = sessionOps.getCounterAccumulator();
+    if (counters == null) {
+      sync();
+      return;
+    }
+
+    List<WriteCoalescer.Write> writes = writes();
+    if (writes == null
+        || writes.isEmpty()
+        || !writes.stream().allMatch(w -> w.kind == WriteCoalescer.Kind.INCR)) {
+      throw new HelenusMappingException(
+          "only unconditional counter increments without a TTL or timestamp can be accumulated");
+    }
+    counters.add(entity, filters, writes, entity.isCacheable() ? bindFacetValues() : null);
+  }
+
   public E batch(UnitOfWork uow) throws TimeoutException {
     if (uow == null) {
       throw new HelenusException("UnitOfWork cannot be null when batching operations.");
@@ -901,4 +1246,13 @@ public final class UpdateOperation<E> extends AbstractFilterOperation<E, UpdateO
       return new ArrayList<Facet>();
     }
   }
+
+  @Override
+  public Set<String> getWrittenTables() {
+    if (entity != null) {
+      return Collections.singleton(CacheUtil.schemaName(getFacets()));
+    } else {
+      return Collections.emptySet();
+    }
+  }
 }
@@ -0,0 +1,600 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.operation;
+
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.Assignment;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Update;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import net.helenus.core.AbstractSessionOperations;
+import net.helenus.core.Filter;
+import net.helenus.core.Operator;
+import net.helenus.mapping.ColumnType;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusProperty;
+import net.helenus.mapping.value.PropertyIndex;
+
+/**
+ * Folds the inserts and updates a batch makes to the same row into one statement, applying their
+ * writes in the order they were batched. A later assignment of a column replaces the earlier ones,
+ * collection changes are merged with each other or into the value the column was set to, and the
+ * writes to a row are dropped altogether when a later delete in the batch removes it.
+ *
+ * <p>Statements in a batch share its timestamp, so without this the outcome of two writes to the
+ * same cell doesn't depend on their order. Conditional writes and writes with their own TTL or
+ * timestamp are left as they are.
+ */
+final class WriteCoalescer {
+
+  enum Kind {
+    SET,
+    INCR,
+    ADD,
+    REMOVE,
+    APPEND,
+    PREPEND,
+    DISCARD,
+    SET_IDX,
+    PUT,
+    REMOVE_KEYS
+  }
+
+  /**
+   * One assignment of a column as it was made. Values are prepared for the driver, collection
+   * changes always carry a collection (a set, list or map, or the set of keys to remove).
+   */
+  static final class Write {
+
+    final Kind kind;
+    final HelenusProperty property;
+    final int index;
+    final Object value;
+
+    Write(Kind kind, HelenusProperty property, Object value) {
+      this(kind, property, -1, value);
+    }
+
+    Write(Kind kind, HelenusProperty property, int index, Object value) {
+      this.kind = kind;
+      this.property = property;
+      this.index = index;
+      this.value = value;
+    }
+  }
+
+  private static final ColumnType[] KEY_TYPES = {
+    ColumnType.PARTITION_KEY, ColumnType.CLUSTERING_COLUMN
+  };
+
+  private final AbstractSessionOperations sessionOps;
+
+  WriteCoalescer(AbstractSessionOperations sessionOps) {
+    this.sessionOps = sessionOps;
+  }
+
+  /**
+   * Returns the statements to send for the operations of a batch, {@code statement} builds the
+   * statement of an operation that is sent unchanged. A folded row takes the place of the first of
+   * its operations.
+   */
+  List<Statement> coalesce(
+      List<AbstractOperation<?, ?>> operations,
+      Function<AbstractOperation<?, ?>, Statement> statement) {
+
+    List<Object> slots = new ArrayList<Object>(operations.size());
+    Map<List<Object>, Row> rows = new HashMap<List<Object>, Row>();
+
+    for (AbstractOperation<?, ?> operation : operations) {
+      Row row = null;
+      List<Write> writes = null;
+      boolean insert = false;
+
+      if (operation instanceof UpdateOperation) {
+        UpdateOperation<?> update = (UpdateOperation<?>) operation;
+        writes = update.writes();
+        if (writes != null) {
+          row = row(rows, slots, update.entity(), key(update.entity(), update.filters, false));
+        }
+      } else if (operation instanceof InsertOperation) {
+        InsertOperation<?> insertOperation = (InsertOperation<?>) operation;
+        writes = insertOperation.writes();
+        if (writes != null) {
+          row = row(rows, slots, insertOperation.entity(), key(insertOperation.entity(), writes));
+          insert = true;
+        }
+      } else if (operation instanceof DeleteOperation) {
+        DeleteOperation delete = (DeleteOperation) operation;
+        HelenusEntity entity = delete.unconditionalEntity();
+        List<Object> key = key(entity, delete.filters, true);
+        if (key != null) {
+          Iterator<Row> iterator = rows.values().iterator();
+          while (iterator.hasNext()) {
+            Row deleted = iterator.next();
+            if (deleted.key.subList(0, key.size()).equals(key)) {
+              deleted.deleted = true;
+              iterator.remove();
+            }
+          }
+        }
+      }
+
+      if (row != null) {
+        row.operations.add(operation);
+        if (insert) {
+          row.insert = true;
+        }
+        for (Write write : writes) {
+          row.apply(write);
+        }
+      } else {
+        slots.add(operation);
+      }
+    }
+
+    List<Statement> statements = new ArrayList<Statement>(slots.size());
+    for (Object slot : slots) {
+      if (slot instanceof Row) {
+        ((Row) slot).statements(statement, statements);
+      } else {
+        statements.add(statement.apply((AbstractOperation<?, ?>) slot));
+      }
+    }
+    return statements;
+  }
+
+  private static Row row(
+      Map<List<Object>, Row> rows, List<Object> slots, HelenusEntity entity, List<Object> key) {
+    if (key == null) {
+      return null;
+    }
+    Row row = rows.get(key);
+    if (row == null) {
+      row = new Row(entity, key);
+      rows.put(key, row);
+      slots.add(row);
+    }
+    return row;
+  }
+
+  /**
+   * The entity followed by the values of the key columns an update or delete is restricted to, or
+   * null unless each of them is restricted to a single value. Deletes may leave out all of the
+   * clustering columns.
+   */
+  List<Object> key(HelenusEntity entity, List<Filter<?>> filters, boolean partition) {
+    if (entity == null || filters == null || filters.isEmpty()) {
+      return null;
+    }
+    HelenusProperty[] primaryKey = PropertyIndex.of(entity).primaryKey();
+    Object[] values = new Object[primaryKey.length];
+    boolean[] bound = new boolean[primaryKey.length];
+    for (Filter<?> filter : filters) {
+      if (filter.postulateOperator() != Operator.EQ || filter.getNode().getNext().isPresent()) {
+        return null;
+      }
+      HelenusProperty property = filter.getNode().getProperty();
+      int i = indexOf(primaryKey, property);
+      if (i < 0 || bound[i]) {
+        return null;
+      }
+      values[i] =
+          sessionOps.getValuePreparer().prepareColumnValue(filter.postulateValues()[0], property);
+      bound[i] = true;
+    }
+    return key(entity, primaryKey, values, bound, partition);
+  }
+
+  /** The entity followed by the values of the key columns an insert writes. */
+  private static List<Object> key(HelenusEntity entity, List<Write> writes) {
+    if (entity == null) {
+      return null;
+    }
+    HelenusProperty[] primaryKey = PropertyIndex.of(entity).primaryKey();
+    Object[] values = new Object[primaryKey.length];
+    boolean[] bound = new boolean[primaryKey.length];
+    for (Write write : writes) {
+      int i = indexOf(primaryKey, write.property);
+      if (i >= 0) {
+        values[i] = write.value;
+        bound[i] = true;
+      }
+    }
+    return key(entity, primaryKey, values, bound, false);
+  }
+
+  private static List<Object> key(
+      HelenusEntity entity,
+      HelenusProperty[] primaryKey,
+      Object[] values,
+      boolean[] bound,
+      boolean partition) {
+    List<Object> key = new ArrayList<Object>(primaryKey.length + 1);
+    key.add(entity);
+    for (ColumnType type : KEY_TYPES) {
+      for (int i = 0; i < primaryKey.length; i++) {
+        if (primaryKey[i].getColumnType() == type) {
+          if (bound[i]) {
+            key.add(values[i]);
+          } else if (!partition || type == ColumnType.PARTITION_KEY) {
+            return null;
+          }
+        }
+      }
+    }
+    if (key.size() != primaryKey.length + 1) {
+      int partitionKey = 0;
+      for (HelenusProperty property : primaryKey) {
+        if (property.getColumnType() == ColumnType.PARTITION_KEY) {
+          partitionKey++;
+        }
+      }
+      if (key.size() != partitionKey + 1) {
+        return null;
+      }
+    }
+    return key;
+  }
+
+  /** The partition key columns of an entity followed by its clustering columns. */
+  static List<HelenusProperty> keyColumns(HelenusEntity entity) {
+    HelenusProperty[] primaryKey = PropertyIndex.of(entity).primaryKey();
+    List<HelenusProperty> keyColumns = new ArrayList<HelenusProperty>(primaryKey.length);
+    for (ColumnType type : KEY_TYPES) {
+      for (HelenusProperty property : primaryKey) {
+        if (property.getColumnType() == type) {
+          keyColumns.add(property);
+        }
+      }
+    }
+    return keyColumns;
+  }
+
+  private static int indexOf(HelenusProperty[] properties, HelenusProperty property) {
+    for (int i = 0; i < properties.length; i++) {
+      if (properties[i].getPropertyName().equals(property.getPropertyName())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** The writes batched for one row. */
+  private static final class Row {
+
+    final HelenusEntity entity;
+    final List<Object> key;
+    final List<AbstractOperation<?, ?>> operations = new ArrayList<AbstractOperation<?, ?>>(2);
+    final Map<HelenusProperty, Column> columns = new LinkedHashMap<HelenusProperty, Column>();
+    boolean insert;
+    boolean deleted;
+    boolean folded = true;
+
+    Row(HelenusEntity entity, List<Object> key) {
+      this.entity = entity;
+      this.key = key;
+    }
+
+    void apply(Write write) {
+      ColumnType type = write.property.getColumnType();
+      if (type == ColumnType.PARTITION_KEY || type == ColumnType.CLUSTERING_COLUMN) {
+        return;
+      }
+      Column column = columns.get(write.property);
+      if (column == null) {
+        column = new Column();
+        columns.put(write.property, column);
+      }
+      if (!column.apply(write)) {
+        folded = false;
+      }
+    }
+
+    void statements(
+        Function<AbstractOperation<?, ?>, Statement> statement, List<Statement> statements) {
+      if (deleted) {
+        return;
+      }
+      if (!folded || operations.size() == 1) {
+        operations.forEach(o -> statements.add(statement.apply(o)));
+        return;
+      }
+
+      String table = entity.getName().toCql();
+      List<HelenusProperty> keyColumns = keyColumns(entity);
+
+      Insert insertStatement = null;
+      if (insert) {
+        insertStatement = QueryBuilder.insertInto(table);
+        for (int i = 0; i < keyColumns.size(); i++) {
+          insertStatement.value(keyColumns.get(i).getColumnName().toCql(), key.get(i + 1));
+        }
+      }
+
+      Update update = null;
+      for (Map.Entry<HelenusProperty, Column> e : columns.entrySet()) {
+        String name = e.getKey().getColumnName().toCql();
+        Column column = e.getValue();
+        if (column.full && insertStatement != null) {
+          insertStatement.value(name, column.value);
+          continue;
+        }
+        List<Assignment> assignments = column.assignments(name);
+        if (!assignments.isEmpty()) {
+          if (update == null) {
+            update = QueryBuilder.update(table);
+          }
+          assignments.forEach(update::with);
+        }
+      }
+
+      if (insertStatement != null) {
+        statements.add(insertStatement);
+      }
+      if (update != null) {
+        for (int i = 0; i < keyColumns.size(); i++) {
+          update.where(QueryBuilder.eq(keyColumns.get(i).getColumnName().toCql(), key.get(i + 1)));
+        }
+        statements.add(update);
+      }
+    }
+  }
+
+  /**
+   * The net effect of the writes to one column, either the value it is set to, a counter delta or
+   * the collection changes made to it.
+   */
+  private static final class Column {
+
+    boolean full;
+    Object value;
+    boolean counter;
+    long delta;
+    final List<Write> changes = new ArrayList<Write>(1);
+
+    /** Returns false when the write can't be folded into the earlier ones. */
+    boolean apply(Write write) {
+      switch (write.kind) {
+        case SET:
+          full = true;
+          value = write.value;
+          changes.clear();
+          return !counter;
+        case INCR:
+          counter = true;
+          delta += (Long) write.value;
+          return !full && changes.isEmpty();
+        default:
+          if (counter) {
+            return false;
+          }
+          if (full) {
+            return fold(write);
+          }
+          change(write);
+          return true;
+      }
+    }
+
+    /** Applies a collection change to the value the column was set to. */
+    private boolean fold(Write write) {
+      switch (write.kind) {
+        case ADD:
+        case REMOVE:
+          if (value != null && !(value instanceof Set)) {
+            return false;
+          }
+          Set<Object> set = new LinkedHashSet<Object>();
+          if (value != null) {
+            set.addAll((Set<?>) value);
+          }
+          if (write.kind == Kind.ADD) {
+            set.addAll((Collection<?>) write.value);
+          } else {
+            set.removeAll((Collection<?>) write.value);
+          }
+          value = set;
+          return true;
+        case APPEND:
+        case PREPEND:
+        case DISCARD:
+        case SET_IDX:
+          if (value != null && !(value instanceof List)) {
+            return false;
+          }
+          List<Object> list = new ArrayList<Object>();
+          if (value != null) {
+            list.addAll((List<?>) value);
+          }
+          if (write.kind == Kind.APPEND) {
+            list.addAll((Collection<?>) write.value);
+          } else if (write.kind == Kind.PREPEND) {
+            list.addAll(0, (Collection<?>) write.value);
+          } else if (write.kind == Kind.DISCARD) {
+            list.removeAll((Collection<?>) write.value);
+          } else if (write.index >= 0 && write.index < list.size()) {
+            list.set(write.index, write.value);
+          } else {
+            return false;
+          }
+          value = list;
+          return true;
+        case PUT:
+        case REMOVE_KEYS:
+          if (value != null && !(value instanceof Map)) {
+            return false;
+          }
+          Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+          if (value != null) {
+            map.putAll((Map<?, ?>) value);
+          }
+          if (write.kind == Kind.PUT) {
+            map.putAll((Map<?, ?>) write.value);
+          } else {
+            map.keySet().removeAll((Collection<?>) write.value);
+          }
+          value = map;
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    /**
+     * Merges a collection change with the earlier ones. Additions and removals of the same set
+     * elements or map keys cancel out, so the rest can be sent together in any order; list changes
+     * are only merged with an immediately preceding change of the same kind.
+     */
+    private void change(Write write) {
+      switch (write.kind) {
+        case ADD:
+          cancel(Kind.REMOVE, (Collection<?>) write.value);
+          merge(write);
+          break;
+        case REMOVE:
+          cancel(Kind.ADD, (Collection<?>) write.value);
+          merge(write);
+          break;
+        case PUT:
+          cancel(Kind.REMOVE_KEYS, ((Map<?, ?>) write.value).keySet());
+          merge(write);
+          break;
+        case REMOVE_KEYS:
+          cancel(Kind.PUT, (Collection<?>) write.value);
+          merge(write);
+          break;
+        default:
+          Write last = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+          if (last != null && last.kind == write.kind && write.kind != Kind.SET_IDX) {
+            List<Object> list = new ArrayList<Object>();
+            if (write.kind == Kind.PREPEND) {
+              list.addAll((Collection<?>) write.value);
+              list.addAll((Collection<?>) last.value);
+            } else {
+              list.addAll((Collection<?>) last.value);
+              list.addAll((Collection<?>) write.value);
+            }
+            changes.set(changes.size() - 1, new Write(write.kind, write.property, list));
+          } else {
+            changes.add(write);
+          }
+      }
+    }
+
+    private void cancel(Kind kind, Collection<?> elements) {
+      ListIterator<Write> iterator = changes.listIterator();
+      while (iterator.hasNext()) {
+        Write earlier = iterator.next();
+        if (earlier.kind != kind) {
+          continue;
+        }
+        if (kind == Kind.PUT) {
+          Map<Object, Object> map = new LinkedHashMap<Object, Object>((Map<?, ?>) earlier.value);
+          map.keySet().removeAll(elements);
+          iterator.set(new Write(kind, earlier.property, map));
+        } else {
+          Set<Object> set = new LinkedHashSet<Object>((Collection<?>) earlier.value);
+          set.removeAll(elements);
+          iterator.set(new Write(kind, earlier.property, set));
+        }
+      }
+    }
+
+    private void merge(Write write) {
+      ListIterator<Write> iterator = changes.listIterator();
+      while (iterator.hasNext()) {
+        Write earlier = iterator.next();
+        if (earlier.kind != write.kind) {
+          continue;
+        }
+        if (write.kind == Kind.PUT) {
+          Map<Object, Object> map = new LinkedHashMap<Object, Object>((Map<?, ?>) earlier.value);
+          map.putAll((Map<?, ?>) write.value);
+          iterator.set(new Write(write.kind, write.property, map));
+        } else {
+          Set<Object> set = new LinkedHashSet<Object>((Collection<?>) earlier.value);
+          set.addAll((Collection<?>) write.value);
+          iterator.set(new Write(write.kind, write.property, set));
+        }
+        return;
+      }
+      changes.add(write);
+    }
+
+    List<Assignment> assignments(String name) {
+      if (full) {
+        return Collections.singletonList(QueryBuilder.set(name, value));
+      }
+      if (counter) {
+        if (delta == 0L) {
+          return Collections.emptyList();
+        }
+        return Collections.singletonList(
+            delta > 0 ? QueryBuilder.incr(name, delta) : QueryBuilder.decr(name, -delta));
+      }
+      List<Assignment> assignments =
+          new ArrayList<Assignment>(changes.size());
+      for (Write change : changes) {
+        switch (change.kind) {
+          case ADD:
+            if (!((Set<?>) change.value).isEmpty()) {
+              assignments.add(QueryBuilder.addAll(name, (Set<?>) change.value));
+            }
+            break;
+          case REMOVE:
+          case REMOVE_KEYS:
+            if (!((Set<?>) change.value).isEmpty()) {
+              assignments.add(QueryBuilder.removeAll(name, (Set<?>) change.value));
+            }
+            break;
+          case APPEND:
+            assignments.add(QueryBuilder.appendAll(name, (List<?>) change.value));
+            break;
+          case PREPEND:
+            assignments.add(QueryBuilder.prependAll(name, (List<?>) change.value));
+            break;
+          case DISCARD:
+            assignments.add(QueryBuilder.discardAll(name, (List<?>) change.value));
+            break;
+          case SET_IDX:
+            assignments.add(QueryBuilder.setIdx(name, change.index, change.value));
+            break;
+          case PUT:
+            if (!((Map<?, ?>) change.value).isEmpty()) {
+              assignments.add(QueryBuilder.putAll(name, (Map<?, ?>) change.value));
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      return assignments;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.reflect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.helenus.support.HelenusException;
+import net.helenus.support.Lookups;
+
+/**
+ * Invokes the default methods of entity interfaces on behalf of a proxy. The method handle for
+ * each default method is resolved once and kept in a table per interface, an invocation is then
+ * little more than a call through that handle.
+ */
+final class DefaultMethods {
+
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private static final ClassValue<ConcurrentMap<Method, MethodHandle>> HANDLES =
+      new ClassValue<ConcurrentMap<Method, MethodHandle>>() {
+        @Override
+        protected ConcurrentMap<Method, MethodHandle> computeValue(Class<?> iface) {
+          return new ConcurrentHashMap<Method, MethodHandle>();
+        }
+      };
+
+  private DefaultMethods() {}
+
+  static Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    Object[] arguments = args == null ? NO_ARGS : args;
+    return handle(method).invokeExact(proxy, arguments);
+  }
+
+  /** Returns the handle calling the default `method`, resolved on first use. */
+  static MethodHandle handle(Method method) {
+    ConcurrentMap<Method, MethodHandle> handles = HANDLES.get(method.getDeclaringClass());
+    MethodHandle handle = handles.get(method);
+    if (handle == null) {
+      handle = handles.computeIfAbsent(method, DefaultMethods::resolve);
+    }
+    return handle;
+  }
+
+  /** Returns a handle of type (Object, Object[])Object calling the default `method`. */
+  private static MethodHandle resolve(Method method) {
+    Class<?> iface = method.getDeclaringClass();
+    try {
+      MethodHandle handle =
+          Lookups.privateLookupIn(iface)
+              .findSpecial(
+                  iface,
+                  method.getName(),
+                  MethodType.methodType(method.getReturnType(), method.getParameterTypes()),
+                  iface);
+      int arity = method.getParameterCount();
+      return handle
+          .asType(MethodType.genericMethodType(arity + 1))
+          .asSpreader(Object[].class, arity);
+    } catch (Throwable t) {
+      throw new HelenusException("unable to invoke default method " + method, t);
+    }
+  }
+}
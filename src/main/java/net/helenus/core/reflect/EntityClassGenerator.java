@@ -0,0 +1,531 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.reflect;
+
+import static org.springframework.asm.Opcodes.*;
+
+import com.google.common.primitives.Primitives;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.helenus.mapping.annotation.Transient;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Type;
+
+/**
+ * Generates a concrete {@link GeneratedEntity} subclass implementing an entity interface. Each
+ * getter of the interface becomes a field and a method returning it, nothing else is needed as
+ * everything which isn't a property is inherited from {@link GeneratedEntity}. Fields of getters
+ * returning a primitive are of that primitive type, all others are of type Object.
+ */
+final class EntityClassGenerator {
+
+  private static final String BASE = Type.getInternalName(GeneratedEntity.class);
+  private static final String OBJECT = Type.getInternalName(Object.class);
+  private static final String METADATA_DESC = Type.getDescriptor(GeneratedEntity.Metadata.class);
+  private static final String CONSTRUCTOR_DESC =
+      "(" + METADATA_DESC + Type.getDescriptor(Map.class) + ")V";
+
+  private final Class<?> iface;
+  private final Map<String, Method> getters;
+
+  private EntityClassGenerator(Class<?> iface, Map<String, Method> getters) {
+    this.iface = iface;
+    this.getters = getters;
+  }
+
+  /**
+   * Returns a generator for `iface`, or null when it can't be implemented by a generated class
+   * (it isn't public or it has abstract methods other than getters).
+   */
+  static EntityClassGenerator of(Class<?> iface) {
+    if (!iface.isInterface() || !isPublic(iface)) {
+      return null;
+    }
+
+    Map<String, Method> getters = new LinkedHashMap<String, Method>();
+    for (Method method : iface.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers()) || method.isBridge()) {
+        continue;
+      }
+      if (method.isDefault() && method.getDeclaredAnnotation(Transient.class) != null) {
+        continue;
+      }
+      Method base = inherited(method);
+      if (base != null) {
+        if (!method.getReturnType().isAssignableFrom(base.getReturnType())) {
+          return null;
+        }
+        continue;
+      }
+      // Covariant overrides would need bridge methods, leave those to the proxy.
+      if (method.getParameterCount() != 0
+          || method.getReturnType() == void.class
+          || "dsl".equals(method.getName())
+          || getters.containsKey(method.getName())) {
+        return null;
+      }
+      // Default getters are invoked on their declaring interface, which is implemented as well.
+      if (method.isDefault() && !isPublic(method.getDeclaringClass())) {
+        return null;
+      }
+      getters.put(method.getName(), method);
+    }
+    return new EntityClassGenerator(iface, getters);
+  }
+
+  private static boolean isPublic(Class<?> type) {
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the method of GeneratedEntity which implements `method`, if there is one. */
+  private static Method inherited(Method method) {
+    try {
+      return GeneratedEntity.class.getMethod(method.getName(), method.getParameterTypes());
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  String[] propertyNames() {
+    return getters.keySet().toArray(new String[getters.size()]);
+  }
+
+  /** The types of the fields in the order of {@link #propertyNames()}, null when not primitive. */
+  Class<?>[] primitiveTypes() {
+    Class<?>[] types = new Class<?>[getters.size()];
+    int i = 0;
+    for (Method getter : getters.values()) {
+      Class<?> type = getter.getReturnType();
+      types[i++] = type.isPrimitive() ? type : null;
+    }
+    return types;
+  }
+
+  String className() {
+    return iface.getName() + "$$HelenusEntity";
+  }
+
+  /**
+   * The interfaces implemented by the class: the entity interface and the interfaces declaring its
+   * default getters, as the verifier only allows invokespecial on direct superinterfaces.
+   */
+  private String[] interfaces() {
+    Set<String> interfaces = new LinkedHashSet<String>();
+    interfaces.add(Type.getInternalName(iface));
+    for (Method getter : getters.values()) {
+      if (getter.isDefault()) {
+        interfaces.add(Type.getInternalName(getter.getDeclaringClass()));
+      }
+    }
+    return interfaces.toArray(new String[interfaces.size()]);
+  }
+
+  byte[] generate() {
+    String name = className().replace('.', '/');
+    ClassWriter cw =
+        new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+          @Override
+          protected String getCommonSuperClass(String type1, String type2) {
+            // Frames only ever merge values held as plain objects.
+            return OBJECT;
+          }
+        };
+    cw.visit(
+        V1_8,
+        ACC_PUBLIC | ACC_FINAL | ACC_SUPER,
+        name,
+        null,
+        BASE,
+        interfaces());
+
+    List<Method> fields = new ArrayList<Method>(getters.values());
+    for (Method field : fields) {
+      cw.visitField(ACC_PRIVATE, field.getName(), descriptor(field), null, null).visitEnd();
+    }
+
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitMethodInsn(INVOKESPECIAL, BASE, "<init>", CONSTRUCTOR_DESC, false);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    generateGet(cw, name, fields);
+    generateSet(cw, name, fields);
+    generateSetPrimitive(cw, name, fields, "setLong", Type.LONG_TYPE);
+    generateSetPrimitive(cw, name, fields, "setDouble", Type.DOUBLE_TYPE);
+    generateSameValue(cw, name, fields);
+    generateCopyValue(cw, name, fields);
+    for (int i = 0; i < fields.size(); i++) {
+      generateGetter(cw, name, i, fields.get(i));
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /** The descriptor of the field holding the value of `getter`. */
+  private static String descriptor(Method getter) {
+    Class<?> type = getter.getReturnType();
+    return type.isPrimitive() ? Type.getDescriptor(type) : "Ljava/lang/Object;";
+  }
+
+  private static void generateGet(ClassWriter cw, String name, List<Method> fields) {
+    MethodVisitor mv =
+        cw.visitMethod(ACC_PROTECTED, "get", "(I)Ljava/lang/Object;", null, null);
+    mv.visitCode();
+    Label otherwise = new Label();
+    if (!fields.isEmpty()) {
+      Label[] cases = labels(fields.size());
+      mv.visitVarInsn(ILOAD, 1);
+      mv.visitTableSwitchInsn(0, fields.size() - 1, otherwise, cases);
+      for (int i = 0; i < cases.length; i++) {
+        Method field = fields.get(i);
+        Class<?> type = field.getReturnType();
+        mv.visitLabel(cases[i]);
+        if (type.isPrimitive()) {
+          // Null when there is no value, otherwise boxed.
+          mv.visitVarInsn(ALOAD, 0);
+          mv.visitLdcInsn(i);
+          mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "hasValue", "(I)Z", false);
+          mv.visitJumpInsn(IFEQ, otherwise);
+          mv.visitVarInsn(ALOAD, 0);
+          mv.visitFieldInsn(GETFIELD, name, field.getName(), descriptor(field));
+          String boxed = Type.getInternalName(Primitives.wrap(type));
+          mv.visitMethodInsn(
+              INVOKESTATIC,
+              boxed,
+              "valueOf",
+              "(" + Type.getDescriptor(type) + ")L" + boxed + ";",
+              false);
+        } else {
+          mv.visitVarInsn(ALOAD, 0);
+          mv.visitFieldInsn(GETFIELD, name, field.getName(), "Ljava/lang/Object;");
+        }
+        mv.visitInsn(ARETURN);
+      }
+    }
+    mv.visitLabel(otherwise);
+    mv.visitInsn(ACONST_NULL);
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void generateSet(ClassWriter cw, String name, List<Method> fields) {
+    MethodVisitor mv =
+        cw.visitMethod(ACC_PROTECTED, "set", "(ILjava/lang/Object;)V", null, null);
+    mv.visitCode();
+    Label otherwise = new Label();
+    if (!fields.isEmpty()) {
+      Label[] cases = labels(fields.size());
+      mv.visitVarInsn(ILOAD, 1);
+      mv.visitTableSwitchInsn(0, fields.size() - 1, otherwise, cases);
+      for (int i = 0; i < cases.length; i++) {
+        Method field = fields.get(i);
+        Class<?> type = field.getReturnType();
+        mv.visitLabel(cases[i]);
+        if (type.isPrimitive()) {
+          // A null leaves the field as it is, hasValue() is false from now on.
+          mv.visitVarInsn(ALOAD, 2);
+          mv.visitJumpInsn(IFNULL, otherwise);
+          mv.visitVarInsn(ALOAD, 0);
+          mv.visitVarInsn(ALOAD, 2);
+          unbox(mv, type);
+        } else {
+          mv.visitVarInsn(ALOAD, 0);
+          mv.visitVarInsn(ALOAD, 2);
+        }
+        mv.visitFieldInsn(PUTFIELD, name, field.getName(), descriptor(field));
+        mv.visitInsn(RETURN);
+      }
+    }
+    mv.visitLabel(otherwise);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void generateSameValue(ClassWriter cw, String name, List<Method> fields) {
+    MethodVisitor mv =
+        cw.visitMethod(ACC_PROTECTED, "sameValue", "(L" + BASE + ";I)Z", null, null);
+    mv.visitCode();
+    Label otherwise = new Label();
+    Label same = new Label();
+    if (!fields.isEmpty()) {
+      Label[] cases = labels(fields.size());
+      mv.visitVarInsn(ILOAD, 2);
+      mv.visitTableSwitchInsn(0, fields.size() - 1, otherwise, cases);
+      for (int i = 0; i < cases.length; i++) {
+        Method field = fields.get(i);
+        mv.visitLabel(cases[i]);
+        Class<?> type = field.getReturnType();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, name, field.getName(), descriptor(field));
+        toBits(mv, type);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, name);
+        mv.visitFieldInsn(GETFIELD, name, field.getName(), descriptor(field));
+        toBits(mv, type);
+        // References are compared by identity, primitives by value as their boxes' equals would.
+        if (type == long.class || type == double.class) {
+          mv.visitInsn(LCMP);
+          mv.visitJumpInsn(IFEQ, same);
+        } else if (type.isPrimitive()) {
+          mv.visitJumpInsn(IF_ICMPEQ, same);
+        } else {
+          mv.visitJumpInsn(IF_ACMPEQ, same);
+        }
+        mv.visitJumpInsn(GOTO, otherwise);
+      }
+    }
+    mv.visitLabel(otherwise);
+    mv.visitInsn(ICONST_0);
+    mv.visitInsn(IRETURN);
+    mv.visitLabel(same);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IRETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /** Replaces a floating point value on the stack by its bits, as Double and Float compare them. */
+  private static void toBits(MethodVisitor mv, Class<?> type) {
+    if (type == double.class) {
+      mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+    } else if (type == float.class) {
+      mv.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", false);
+    }
+  }
+
+  private static void generateCopyValue(ClassWriter cw, String name, List<Method> fields) {
+    MethodVisitor mv =
+        cw.visitMethod(ACC_PROTECTED, "copyValue", "(L" + BASE + ";I)V", null, null);
+    mv.visitCode();
+    Label otherwise = new Label();
+    if (!fields.isEmpty()) {
+      Label[] cases = labels(fields.size());
+      mv.visitVarInsn(ILOAD, 2);
+      mv.visitTableSwitchInsn(0, fields.size() - 1, otherwise, cases);
+      for (int i = 0; i < cases.length; i++) {
+        Method field = fields.get(i);
+        mv.visitLabel(cases[i]);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, name);
+        mv.visitFieldInsn(GETFIELD, name, field.getName(), descriptor(field));
+        mv.visitFieldInsn(PUTFIELD, name, field.getName(), descriptor(field));
+        mv.visitInsn(RETURN);
+      }
+    }
+    mv.visitLabel(otherwise);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /** Numbers are converted to the type of the field like a widening or narrowing cast would. */
+  private static void unbox(MethodVisitor mv, Class<?> type) {
+    String owner;
+    if (type == boolean.class) {
+      owner = Type.getInternalName(Boolean.class);
+    } else if (type == char.class) {
+      owner = Type.getInternalName(Character.class);
+    } else {
+      owner = Type.getInternalName(Number.class);
+    }
+    mv.visitTypeInsn(CHECKCAST, owner);
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL, owner, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+  }
+
+  /**
+   * Generates setLong(int, long) or setDouble(int, double), storing the value into the primitive
+   * field of the matching kind at that ordinal. Other ordinals are ignored.
+   */
+  private static void generateSetPrimitive(
+      ClassWriter cw, String name, List<Method> fields, String method, Type valueType) {
+    List<Integer> ordinals = new ArrayList<Integer>();
+    for (int i = 0; i < fields.size(); i++) {
+      Class<?> type = fields.get(i).getReturnType();
+      if (type.isPrimitive() && isFloatingPoint(type) == (valueType == Type.DOUBLE_TYPE)) {
+        ordinals.add(i);
+      }
+    }
+
+    MethodVisitor mv =
+        cw.visitMethod(
+            ACC_PROTECTED, method, "(I" + valueType.getDescriptor() + ")V", null, null);
+    mv.visitCode();
+    Label otherwise = new Label();
+    if (!ordinals.isEmpty()) {
+      int[] keys = new int[ordinals.size()];
+      Label[] cases = labels(keys.length);
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = ordinals.get(i);
+      }
+      mv.visitVarInsn(ILOAD, 1);
+      mv.visitLookupSwitchInsn(otherwise, keys, cases);
+      for (int i = 0; i < keys.length; i++) {
+        Method field = fields.get(keys[i]);
+        mv.visitLabel(cases[i]);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(valueType.getOpcode(ILOAD), 2);
+        narrow(mv, valueType, field.getReturnType());
+        mv.visitFieldInsn(PUTFIELD, name, field.getName(), descriptor(field));
+        mv.visitInsn(RETURN);
+      }
+    }
+    mv.visitLabel(otherwise);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static boolean isFloatingPoint(Class<?> type) {
+    return type == double.class || type == float.class;
+  }
+
+  /** Converts the long or double on the stack to `type`. */
+  private static void narrow(MethodVisitor mv, Type valueType, Class<?> type) {
+    if (valueType == Type.DOUBLE_TYPE) {
+      if (type == float.class) {
+        mv.visitInsn(D2F);
+      }
+      return;
+    }
+    if (type == long.class) {
+      return;
+    }
+    if (type == boolean.class) {
+      // Any value other than 0 is true.
+      mv.visitInsn(LCONST_0);
+      mv.visitInsn(LCMP);
+      mv.visitInsn(ICONST_1);
+      mv.visitInsn(IAND);
+      return;
+    }
+    mv.visitInsn(L2I);
+    if (type == short.class) {
+      mv.visitInsn(I2S);
+    } else if (type == byte.class) {
+      mv.visitInsn(I2B);
+    } else if (type == char.class) {
+      mv.visitInsn(I2C);
+    }
+  }
+
+  /**
+   * Mirrors MapperInvocationHandler: marks the property read and returns its value, when there is
+   * none the default method of the interface is called or the default of a primitive returned.
+   */
+  private void generateGetter(ClassWriter cw, String name, int ordinal, Method getter) {
+    Class<?> returnType = getter.getReturnType();
+    Type type = Type.getType(returnType);
+    String desc = Type.getMethodDescriptor(getter);
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, getter.getName(), desc, null, null);
+    mv.visitCode();
+
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitLdcInsn(ordinal);
+    mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "markRead", "(I)V", false);
+
+    Label present = new Label();
+    if (returnType.isPrimitive()) {
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitLdcInsn(ordinal);
+      mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "hasValue", "(I)Z", false);
+      mv.visitJumpInsn(IFNE, present);
+    } else {
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitFieldInsn(GETFIELD, name, getter.getName(), "Ljava/lang/Object;");
+      mv.visitInsn(DUP);
+      mv.visitJumpInsn(IFNONNULL, present);
+      mv.visitInsn(POP);
+    }
+    if (getter.isDefault()) {
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitMethodInsn(
+          INVOKESPECIAL,
+          Type.getInternalName(getter.getDeclaringClass()),
+          getter.getName(),
+          desc,
+          true);
+      mv.visitInsn(type.getOpcode(IRETURN));
+    } else if (returnType.isPrimitive()) {
+      pushDefault(mv, type);
+      mv.visitInsn(type.getOpcode(IRETURN));
+    } else {
+      mv.visitInsn(ACONST_NULL);
+      mv.visitInsn(ARETURN);
+    }
+
+    mv.visitLabel(present);
+    if (returnType.isPrimitive()) {
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitFieldInsn(GETFIELD, name, getter.getName(), type.getDescriptor());
+      mv.visitInsn(type.getOpcode(IRETURN));
+    } else {
+      if (returnType != Object.class) {
+        mv.visitTypeInsn(CHECKCAST, type.getInternalName());
+      }
+      mv.visitInsn(ARETURN);
+    }
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void pushDefault(MethodVisitor mv, Type type) {
+    switch (type.getSort()) {
+      case Type.LONG:
+        mv.visitInsn(LCONST_0);
+        break;
+      case Type.FLOAT:
+        mv.visitInsn(FCONST_0);
+        break;
+      case Type.DOUBLE:
+        mv.visitInsn(DCONST_0);
+        break;
+      default:
+        mv.visitInsn(ICONST_0);
+    }
+  }
+
+  private static Label[] labels(int count) {
+    Label[] labels = new Label[count];
+    for (int i = 0; i < count; i++) {
+      labels[i] = new Label();
+    }
+    return labels;
+  }
+}
@@ -0,0 +1,577 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.reflect;
+
+import com.datastax.driver.core.Row;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.*;
+import net.helenus.core.Getter;
+import net.helenus.core.Helenus;
+import net.helenus.core.cache.CacheUtil;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusProperty;
+import net.helenus.mapping.MappingUtil;
+import net.helenus.mapping.value.RowDecoder;
+import net.helenus.mapping.value.ValueProviderMap;
+import net.helenus.support.HelenusException;
+
+/**
+ * Base class of the entity implementations generated by {@link GeneratedMapperInstantiator}. The
+ * generated subclass keeps each property in a field of its own and implements the getters of the
+ * entity interface directly, this class provides everything else a {@link
+ * MapperInvocationHandler} backed proxy would.
+ */
+public abstract class GeneratedEntity implements MapExportable, Serializable, Cloneable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient Metadata metadata;
+  private long[] present;
+  // Primitive properties are held in primitive fields, which can't tell a null from a 0 by
+  // themselves.
+  private long[] nonNull;
+  private long[] read;
+  // The write time and ttl of each property by ordinal, 0 when there is none, allocated on the
+  // first one put.
+  private long[] writeTimes;
+  private int[] ttls;
+  // Other values which are not properties (e.g. the token) are rare, keep them aside.
+  private Map<String, Object> extra;
+  // The hash code of the content, 0 until it is computed again after a change.
+  private transient int hash;
+
+  protected GeneratedEntity(Metadata metadata, Map<String, Object> src) {
+    this.metadata = metadata;
+    int words = (metadata.names.length + 63) >>> 6;
+    this.present = new long[words];
+    this.nonNull = new long[words];
+    this.read = new long[words];
+    if (src instanceof ValueProviderMap) {
+      // Decode every column once rather than on each call to a getter.
+      ValueProviderMap values = (ValueProviderMap) src;
+      RowDecoder decoder = values.getDecoder();
+      for (int i = 0; i < metadata.names.length; i++) {
+        String name = metadata.names[i];
+        Class<?> primitive = metadata.primitives[i];
+        if (primitive != null && decoder != null && decoder.primitiveType(name) == primitive) {
+          decodePrimitive(i, decoder, (Row) values.getSource());
+          continue;
+        }
+        Object value;
+        try {
+          value = src.get(name);
+        } catch (IllegalArgumentException e) {
+          // The row doesn't hold this column (e.g. mapTo() another entity), leave it unset.
+          continue;
+        }
+        assign(i, value);
+      }
+    } else if (src != null) {
+      for (Map.Entry<String, Object> entry : src.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  // Numeric and boolean columns go from the row's bytes to the primitive field, never boxed.
+  private void decodePrimitive(int ordinal, RowDecoder decoder, Row row) {
+    String name = metadata.names[ordinal];
+    present[ordinal >>> 6] |= 1L << ordinal;
+    if (decoder.isNull(row, name)) {
+      return;
+    }
+    nonNull[ordinal >>> 6] |= 1L << ordinal;
+    Class<?> primitive = metadata.primitives[ordinal];
+    if (primitive == double.class || primitive == float.class) {
+      setDouble(ordinal, decoder.decodeDouble(row, name));
+    } else {
+      setLong(ordinal, decoder.decodeLong(row, name));
+    }
+  }
+
+  private void assign(int ordinal, Object value) {
+    long bit = 1L << ordinal;
+    hash = 0;
+    present[ordinal >>> 6] |= bit;
+    if (value == null) {
+      nonNull[ordinal >>> 6] &= ~bit;
+    } else {
+      nonNull[ordinal >>> 6] |= bit;
+    }
+    set(ordinal, value);
+  }
+
+  /** True when the value of the property at `ordinal` is the same as in `other`. */
+  protected abstract boolean sameValue(GeneratedEntity other, int ordinal);
+
+  /** Sets the property at `ordinal` to its value in `from`, an instance of the same class. */
+  protected abstract void copyValue(GeneratedEntity from, int ordinal);
+
+  /** Returns the value of the property at `ordinal`, implemented by the generated subclass. */
+  protected abstract Object get(int ordinal);
+
+  /** Sets the value of the property at `ordinal`, implemented by the generated subclass. */
+  protected abstract void set(int ordinal, Object value);
+
+  /** Sets the property at `ordinal`, an integral or boolean (0 or 1) primitive, to `value`. */
+  protected abstract void setLong(int ordinal, long value);
+
+  /** Sets the property at `ordinal`, a floating point primitive, to `value`. */
+  protected abstract void setDouble(int ordinal, double value);
+
+  /** True when the property at `ordinal` holds a value other than null. */
+  protected final boolean hasValue(int ordinal) {
+    return (nonNull[ordinal >>> 6] & (1L << ordinal)) != 0;
+  }
+
+  protected final void markRead(int ordinal) {
+    read[ordinal >>> 6] |= 1L << ordinal;
+  }
+
+  private boolean isPresent(int ordinal) {
+    return (present[ordinal >>> 6] & (1L << ordinal)) != 0;
+  }
+
+  /**
+   * Creates a new entity holding the same values, later puts into either one are not seen by the
+   * other.
+   */
+  public synchronized GeneratedEntity share() {
+    try {
+      GeneratedEntity copy = (GeneratedEntity) super.clone();
+      copy.present = present.clone();
+      copy.nonNull = nonNull.clone();
+      copy.read = new long[read.length];
+      copy.writeTimes = writeTimes == null ? null : writeTimes.clone();
+      copy.ttls = ttls == null ? null : ttls.clone();
+      copy.extra = extra == null ? null : new HashMap<String, Object>(extra);
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new HelenusException(e);
+    }
+  }
+
+  @Override
+  public synchronized void put(String key, Object value) {
+    Integer ordinal = metadata.ordinals.get(key);
+    if (ordinal != null) {
+      assign(ordinal, value);
+    } else if (!putTiming(key, value)) {
+      hash = 0;
+      if (extra == null) {
+        extra = new HashMap<String, Object>();
+      }
+      extra.put(key, value);
+    }
+  }
+
+  /** Keeps the write time or ttl of a property, returns false when `key` is neither. */
+  private boolean putTiming(String key, Object value) {
+    if (key.isEmpty() || key.charAt(0) != '_') {
+      return false;
+    }
+    Columns columns = metadata.columns();
+    Integer ordinal = columns.writeTimeOrdinals.get(key);
+    if (ordinal != null && (value == null || value instanceof Long)) {
+      setWriteTime(ordinal, value == null ? 0L : (Long) value);
+      return true;
+    }
+    ordinal = columns.ttlOrdinals.get(key);
+    if (ordinal != null) {
+      if (value == null) {
+        setTtl(ordinal, 0);
+        return true;
+      } else if (value instanceof int[]) {
+        setTtl(ordinal, ((int[]) value)[0]);
+        return true;
+      } else if (value instanceof Integer) {
+        setTtl(ordinal, (Integer) value);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long writeTime(int ordinal) {
+    return writeTimes == null ? 0L : writeTimes[ordinal];
+  }
+
+  private int ttl(int ordinal) {
+    return ttls == null ? 0 : ttls[ordinal];
+  }
+
+  private void setWriteTime(int ordinal, long writeTime) {
+    if (writeTimes == null) {
+      writeTimes = new long[metadata.names.length];
+    }
+    writeTimes[ordinal] = writeTime;
+  }
+
+  private void setTtl(int ordinal, int ttl) {
+    if (ttls == null) {
+      ttls = new int[metadata.names.length];
+    }
+    ttls[ordinal] = ttl;
+  }
+
+  /**
+   * Merges the values of `from`, an instance of the same class, into this entity following the
+   * rules of {@link CacheUtil#merge}. Only the properties holding a value in `from` are visited,
+   * values, write times and ttls are copied from field to field.
+   */
+  public void merge(GeneratedEntity from) {
+    if (from.getClass() != getClass()) {
+      throw new IllegalArgumentException(
+          "can't merge a " + from.getClass() + " into a " + getClass());
+    }
+    long[] keys = metadata.columns().keys;
+    synchronized (this) {
+      for (int w = 0; w < from.nonNull.length; w++) {
+        long bits = from.nonNull[w] & ~keys[w];
+        while (bits != 0) {
+          int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+          mergeProperty(from, i);
+        }
+      }
+    }
+  }
+
+  private void mergeProperty(GeneratedEntity from, int i) {
+    long fromWriteTime = from.writeTime(i);
+    int fromTtl = from.ttl(i);
+    long toWriteTime = writeTime(i);
+    if (hasValue(i)) {
+      if (sameValue(from, i)) {
+        // Ensure the write time and ttl are also in sync.
+        if (fromWriteTime != 0L && fromWriteTime > toWriteTime) {
+          setWriteTime(i, fromWriteTime);
+        }
+        if (fromTtl > 0 && fromTtl > ttl(i)) {
+          setTtl(i, fromTtl);
+        }
+        return;
+      }
+      if (fromWriteTime != 0L) {
+        // Copy from -> to iff from was written last.
+        if (toWriteTime == 0L || fromWriteTime > toWriteTime) {
+          copyFrom(from, i, fromWriteTime, fromTtl);
+        }
+      } else if (toWriteTime == 0L && !equalValue(from, i)) {
+        // Values diverge without the write times to resolve it, take the one from `from`.
+        copyFrom(from, i, 0L, fromTtl);
+      }
+    } else {
+      copyFrom(from, i, fromWriteTime, fromTtl);
+    }
+  }
+
+  private boolean equalValue(GeneratedEntity from, int i) {
+    return metadata.primitives[i] != null ? sameValue(from, i) : get(i).equals(from.get(i));
+  }
+
+  private void copyFrom(GeneratedEntity from, int i, long writeTime, int ttl) {
+    copyValue(from, i);
+    hash = 0;
+    present[i >>> 6] |= 1L << i;
+    nonNull[i >>> 6] |= 1L << i;
+    if (writeTime != 0L) {
+      setWriteTime(i, writeTime);
+    }
+    if (ttl > 0) {
+      setTtl(i, ttl);
+    }
+  }
+
+  @Override
+  public <T> void put(Getter<T> getter, T value) {
+    put(MappingUtil.resolveMappingProperty(getter).getProperty().getPropertyName(), value);
+  }
+
+  @Override
+  public Map<String, Object> toMap() {
+    return Collections.unmodifiableMap(values(false));
+  }
+
+  @Override
+  public Map<String, Object> toMap(boolean mutable) {
+    return mutable ? values(true) : toMap();
+  }
+
+  private synchronized Map<String, Object> values(boolean mutable) {
+    Map<String, Object> m = new HashMap<String, Object>();
+    for (int i = 0; i < metadata.names.length; i++) {
+      if (isPresent(i)) {
+        Object value = get(i);
+        if (value != null && mutable) {
+          if (value instanceof ImmutableList) {
+            value = new ArrayList((List) value);
+          } else if (value instanceof ImmutableMap) {
+            value = new HashMap((Map) value);
+          } else if (value instanceof ImmutableSet) {
+            value = new HashSet((Set) value);
+          }
+        }
+        m.put(metadata.names[i], value);
+      }
+    }
+    if (writeTimes != null || ttls != null) {
+      Columns columns = metadata.columns();
+      for (int i = 0; i < metadata.names.length; i++) {
+        if (writeTime(i) != 0L) {
+          m.put(columns.writeTimeKeys[i], writeTime(i));
+        }
+        if (ttl(i) != 0) {
+          m.put(columns.ttlKeys[i], new int[] {ttl(i)});
+        }
+      }
+    }
+    if (extra != null) {
+      m.putAll(extra);
+    }
+    return m;
+  }
+
+  @Override
+  public Set<String> toReadSet() {
+    Set<String> names = new HashSet<String>();
+    for (int i = 0; i < metadata.names.length; i++) {
+      if ((read[i >>> 6] & (1L << i)) != 0) {
+        names.add(metadata.names[i]);
+      }
+    }
+    return names;
+  }
+
+  public Long writtenAt(Getter getter) {
+    return writtenAt(columnName(getter));
+  }
+
+  public synchronized Long writtenAt(String prop) {
+    String key = CacheUtil.writeTimeKey(prop);
+    Integer ordinal = metadata.columns().writeTimeOrdinals.get(key);
+    if (ordinal != null) {
+      return writeTime(ordinal);
+    }
+    Long v = extra == null ? null : (Long) extra.get(key);
+    return v == null ? 0L : v;
+  }
+
+  public Integer ttlOf(Getter getter) {
+    return ttlOf(columnName(getter));
+  }
+
+  public synchronized Integer ttlOf(String prop) {
+    String key = CacheUtil.ttlKey(prop);
+    Integer ordinal = metadata.columns().ttlOrdinals.get(key);
+    if (ordinal != null) {
+      return ttl(ordinal);
+    }
+    int v[] = extra == null ? null : (int[]) extra.get(key);
+    return v == null ? 0 : v[0];
+  }
+
+  public Long tokenOf() {
+    Long v = extra == null ? null : (Long) extra.get("");
+    return v == null ? 0L : v;
+  }
+
+  private static String columnName(Getter getter) {
+    return MappingUtil.resolveMappingProperty(getter).getProperty().getColumnName().toCql(false);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (other != null && other.getClass() == getClass()) {
+      // Only this entity is locked, holding both could deadlock against that.equals(this).
+      synchronized (this) {
+        return equalContent((GeneratedEntity) other);
+      }
+    }
+    if (other instanceof MapExportable) {
+      return MappingUtil.compareMaps((MapExportable) other, toMap());
+    }
+    return false;
+  }
+
+  // Property by property, their write times and ttls aside.
+  private boolean equalContent(GeneratedEntity that) {
+    if (!Arrays.equals(present, that.present) || !Arrays.equals(nonNull, that.nonNull)) {
+      return false;
+    }
+    for (int w = 0; w < nonNull.length; w++) {
+      long bits = nonNull[w];
+      while (bits != 0) {
+        int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        if (!sameValue(that, i) && !equalValue(that, i)) {
+          return false;
+        }
+      }
+    }
+    if (extra == null || that.extra == null) {
+      return MappingUtil.equalContent(
+          extra == null ? Collections.<String, Object>emptyMap() : extra,
+          that.extra == null ? Collections.<String, Object>emptyMap() : that.extra);
+    }
+    return MappingUtil.equalContent(extra, that.extra);
+  }
+
+  @Override
+  public synchronized int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      for (int i = 0; i < metadata.names.length; i++) {
+        if (isPresent(i)) {
+          h += metadata.names[i].hashCode() ^ Objects.hashCode(get(i));
+        }
+      }
+      if (extra != null) {
+        h += MappingUtil.contentHashCode(extra);
+      }
+      hash = h;
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return metadata.iface.getSimpleName() + ": " + values(false).toString();
+  }
+
+  // Not private, serialization only looks for an inherited writeReplace() that is accessible.
+  protected final Object writeReplace() throws ObjectStreamException {
+    return new SerializationProxy(metadata.iface, values(false));
+  }
+
+  private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+    throw new InvalidObjectException("Proxy required.");
+  }
+
+  /**
+   * The property names of a generated entity class, in the order of their fields, and the types of
+   * those fields which are primitives.
+   */
+  public static final class Metadata {
+
+    private final Class<?> iface;
+    private final String[] names;
+    private final Class<?>[] primitives;
+    private final Map<String, Integer> ordinals;
+    private volatile Columns columns;
+
+    Metadata(Class<?> iface, String[] names, Class<?>[] primitives) {
+      this.iface = iface;
+      this.names = names;
+      this.primitives = primitives;
+      Map<String, Integer> ordinals = new HashMap<String, Integer>(names.length * 2);
+      for (int i = 0; i < names.length; i++) {
+        ordinals.put(names[i], i);
+      }
+      this.ordinals = ordinals;
+    }
+
+    public Class<?> getMappingInterface() {
+      return iface;
+    }
+
+    Columns columns() {
+      Columns columns = this.columns;
+      if (columns == null) {
+        HelenusEntity entity;
+        try {
+          entity = Helenus.entity(iface);
+        } catch (RuntimeException e) {
+          // Not a mapped entity, its write times and ttls are kept like any other value.
+          entity = null;
+        }
+        columns = new Columns(this, entity);
+        this.columns = columns;
+      }
+      return columns;
+    }
+  }
+
+  /**
+   * The keys of the write time and ttl of each property and which properties are key columns,
+   * resolved from the mapping of the entity the first time they are needed.
+   */
+  static final class Columns {
+
+    private final String[] writeTimeKeys;
+    private final String[] ttlKeys;
+    private final Map<String, Integer> writeTimeOrdinals;
+    private final Map<String, Integer> ttlOrdinals;
+    private final long[] keys;
+
+    Columns(Metadata metadata, HelenusEntity entity) {
+      int size = metadata.names.length;
+      this.writeTimeKeys = new String[size];
+      this.ttlKeys = new String[size];
+      this.writeTimeOrdinals = new HashMap<String, Integer>(size * 2);
+      this.ttlOrdinals = new HashMap<String, Integer>(size * 2);
+      this.keys = new long[(size + 63) >>> 6];
+      if (entity == null) {
+        return;
+      }
+      for (HelenusProperty property : entity.getOrderedProperties()) {
+        Integer ordinal = metadata.ordinals.get(property.getPropertyName());
+        if (ordinal == null) {
+          continue;
+        }
+        switch (property.getColumnType()) {
+          case PARTITION_KEY:
+          case CLUSTERING_COLUMN:
+            keys[ordinal >>> 6] |= 1L << ordinal;
+            break;
+          default:
+            break;
+        }
+        writeTimeKeys[ordinal] = CacheUtil.writeTimeKey(property);
+        ttlKeys[ordinal] = CacheUtil.ttlKey(property);
+        writeTimeOrdinals.put(writeTimeKeys[ordinal], ordinal);
+        ttlOrdinals.put(ttlKeys[ordinal], ordinal);
+      }
+    }
+  }
+
+  static class SerializationProxy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Class<?> iface;
+    private final Map<String, Object> src;
+
+    SerializationProxy(Class<?> iface, Map<String, Object> src) {
+      this.iface = iface;
+      this.src = src;
+    }
+
+    Object readResolve() throws ObjectStreamException {
+      return Helenus.map(iface, src);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.reflect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.helenus.core.MapperInstantiator;
+import net.helenus.support.HelenusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instantiates entities as classes generated at runtime for each entity interface, see {@link
+ * EntityClassGenerator}. Their getters are plain field reads rather than calls through an
+ * InvocationHandler. Interfaces that can't be implemented that way (non-public ones, or those
+ * with methods other than getters) are still mapped by {@link ReflectionMapperInstantiator}.
+ */
+public enum GeneratedMapperInstantiator implements MapperInstantiator {
+  INSTANCE;
+
+  private static final Logger LOG = LoggerFactory.getLogger(GeneratedMapperInstantiator.class);
+
+  private static final MethodType FACTORY_TYPE =
+      MethodType.methodType(GeneratedEntity.class, GeneratedEntity.Metadata.class, Map.class);
+
+  private final ConcurrentMap<Class<?>, Optional<Factory>> factories =
+      new ConcurrentHashMap<Class<?>, Optional<Factory>>();
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> E instantiate(Class<E> iface, Map<String, Object> src, ClassLoader classLoader) {
+    Optional<Factory> factory = factories.get(iface);
+    if (factory == null) {
+      factory = factories.computeIfAbsent(iface, GeneratedMapperInstantiator::define);
+    }
+    if (factory.isPresent()) {
+      return (E) factory.get().newInstance(src);
+    }
+    return ReflectionMapperInstantiator.INSTANCE.instantiate(iface, src, classLoader);
+  }
+
+  private static Optional<Factory> define(Class<?> iface) {
+    EntityClassGenerator generator = EntityClassGenerator.of(iface);
+    if (generator == null) {
+      return Optional.empty();
+    }
+    try {
+      EntityClassLoader loader = new EntityClassLoader(iface.getClassLoader());
+      Class<?> entityClass = loader.define(generator.className(), generator.generate());
+      MethodHandle constructor =
+          MethodHandles.publicLookup()
+              .findConstructor(
+                  entityClass,
+                  MethodType.methodType(void.class, GeneratedEntity.Metadata.class, Map.class))
+              .asType(FACTORY_TYPE);
+      return Optional.of(
+          new Factory(
+              new GeneratedEntity.Metadata(
+                  iface, generator.propertyNames(), generator.primitiveTypes()),
+              constructor));
+    } catch (Throwable t) {
+      LOG.warn("unable to generate an entity class for {}, using a proxy instead", iface, t);
+      return Optional.empty();
+    }
+  }
+
+  private static final class Factory {
+
+    private final GeneratedEntity.Metadata metadata;
+    private final MethodHandle constructor;
+
+    Factory(GeneratedEntity.Metadata metadata, MethodHandle constructor) {
+      this.metadata = metadata;
+      this.constructor = constructor;
+    }
+
+    GeneratedEntity newInstance(Map<String, Object> src) {
+      try {
+        return (GeneratedEntity) constructor.invokeExact(metadata, src);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new HelenusException(t);
+      }
+    }
+  }
+
+  private static final class EntityClassLoader extends ClassLoader {
+
+    EntityClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+}
@@ -23,8 +23,6 @@ import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.lang.invoke.MethodHandles;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
@@ -32,8 +30,10 @@ import java.util.*;
 import net.helenus.core.Getter;
 import net.helenus.core.Helenus;
 import net.helenus.core.cache.CacheUtil;
+import net.helenus.mapping.HelenusEntity;
 import net.helenus.mapping.MappingUtil;
 import net.helenus.mapping.annotation.Transient;
+import net.helenus.mapping.value.PropertyValueMap;
 import net.helenus.mapping.value.ValueProviderMap;
 import net.helenus.support.HelenusException;
 
@@ -43,34 +43,37 @@ public class MapperInvocationHandler<E> implements InvocationHandler, Serializab
   private Map<String, Object> src;
   private final Set<String> read = new HashSet<String>();
   private final Class<E> iface;
+  // True while `src` may be referenced by another entity and must be copied before it is changed.
+  private transient volatile boolean shared = false;
+  // The hash code of the values in `src`, 0 until it is computed again after a change.
+  private transient int hash;
 
   public MapperInvocationHandler(Class<E> iface, Map<String, Object> src) {
     this.src = src;
     this.iface = iface;
   }
 
-  private Object invokeDefault(Object proxy, Method method, Object[] args) throws Throwable {
-    // NOTE: This is reflection magic to invoke (non-recursively) a default method
-    // implemented on an interface
-    // that we've proxied (in ReflectionDslInstantiator). I found the answer in this
-    // article.
-    // https://zeroturnaround.com/rebellabs/recognize-and-conquer-java-proxies-default-methods-and-method-handles/
-
-    // First, we need an instance of a private inner-class found in MethodHandles.
-    Constructor<MethodHandles.Lookup> constructor =
-        MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
-    constructor.setAccessible(true);
-
-    // Now we need to lookup and invoke special the default method on the interface
-    // class.
-    final Class<?> declaringClass = method.getDeclaringClass();
-    Object result =
-        constructor
-            .newInstance(declaringClass, MethodHandles.Lookup.PRIVATE)
-            .unreflectSpecial(method, declaringClass)
-            .bindTo(proxy)
-            .invokeWithArguments(args);
-    return result;
+  /**
+   * Creates a new entity sharing the values of `proxy` (the entity this handler belongs to)
+   * without copying them. Neither entity sees values later put into the other, the first write to
+   * either one copies the values it holds.
+   */
+  public synchronized Object share(Object proxy) {
+    shared = true;
+    MapperInvocationHandler<E> handler = new MapperInvocationHandler<E>(iface, src);
+    handler.shared = true;
+    Class<?> proxyClass = proxy.getClass();
+    return Proxy.newProxyInstance(
+        proxyClass.getClassLoader(), proxyClass.getInterfaces(), handler);
+  }
+
+  private synchronized int contentHashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = MappingUtil.contentHashCode(src);
+      hash = h;
+    }
+    return h;
   }
 
   private Object writeReplace() {
@@ -86,7 +89,7 @@ public class MapperInvocationHandler<E> implements InvocationHandler, Serializab
 
     // Transient, default methods should simply be invoked as-is.
     if (method.isDefault() && method.getDeclaredAnnotation(Transient.class) != null) {
-      return invokeDefault(proxy, method, args);
+      return DefaultMethods.invoke(proxy, method, args);
     }
 
     String methodName = method.getName();
@@ -118,10 +121,19 @@ public class MapperInvocationHandler<E> implements InvocationHandler, Serializab
       }
       if (key != null) {
         final Object value = (Object) args[1];
-        if (src instanceof ValueProviderMap) {
-          this.src = fromValueProviderMap(src);
+        synchronized (this) {
+          if (src instanceof ValueProviderMap) {
+            this.src = fromValueProviderMap(src);
+          } else if (shared) {
+            this.src =
+                src instanceof PropertyValueMap
+                    ? new PropertyValueMap((PropertyValueMap) src)
+                    : new HashMap<String, Object>(src);
+          }
+          shared = false;
+          hash = 0;
+          src.put(key, value);
         }
-        src.put(key, value);
       }
       return null;
     }
@@ -196,7 +208,7 @@ public class MapperInvocationHandler<E> implements InvocationHandler, Serializab
     }
 
     if ("hashCode".equals(methodName)) {
-      return hashCode();
+      return contentHashCode();
     }
 
     if ("toString".equals(methodName)) {
@@ -225,7 +237,7 @@ public class MapperInvocationHandler<E> implements InvocationHandler, Serializab
       // Default implementations of non-Transient methods in entities are the default
       // value when the map contains 'null'.
       if (method.isDefault()) {
-        return invokeDefault(proxy, method, args);
+        return DefaultMethods.invoke(proxy, method, args);
       }
 
       // Otherwise, if the return type of the method is a primitive Java type then
@@ -248,7 +260,11 @@ public class MapperInvocationHandler<E> implements InvocationHandler, Serializab
 
   static Map<String, Object> fromValueProviderMap(Map v, boolean mutable) {
     if (v instanceof ValueProviderMap) {
-      Map<String, Object> m = new HashMap<String, Object>(v.size());
+      HelenusEntity entity = ((ValueProviderMap) v).getEntity();
+      if (!mutable) {
+        return PropertyValueMap.copyOf(entity, v);
+      }
+      Map<String, Object> m = new PropertyValueMap(entity);
       Set<String> keys = v.keySet();
       for (String key : keys) {
         Object value = v.get(key);
@@ -17,12 +17,14 @@
 package net.helenus.mapping;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.validation.Constraint;
 import javax.validation.ConstraintValidator;
 import net.helenus.core.Getter;
@@ -34,10 +36,27 @@ import net.helenus.support.HelenusMappingException;
 
 public final class MappingUtil {
 
+  // The mapping interface of each class of entities, proxies and generated classes alike.
+  private static final ClassValue<Class<?>> MAPPING_INTERFACES =
+      new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> type) {
+          return findMappingInterface(type);
+        }
+      };
+
   @SuppressWarnings("unchecked")
   public static final ConstraintValidator<? extends Annotation, ?>[] EMPTY_VALIDATORS =
       new ConstraintValidator[0];
 
+  private static final ClassValue<ResolvedGetter> RESOLVED_GETTERS =
+      new ClassValue<ResolvedGetter>() {
+        @Override
+        protected ResolvedGetter computeValue(Class<?> getterClass) {
+          return ResolvedGetter.of(getterClass);
+        }
+      };
+
   private MappingUtil() {}
 
   public static ConstraintValidator<? extends Annotation, ?>[] getValidators(Method getterMethod) {
@@ -251,35 +270,59 @@ public final class MappingUtil {
       }
 
     } else {
-      Class<?>[] ifaces = pojo.getClass().getInterfaces();
+      iface = MAPPING_INTERFACES.get(pojo.getClass());
+    }
 
-      int len = ifaces.length;
-      for (int i = 0; i != len; ++i) {
+    if (iface == null) {
+      throw new HelenusMappingException("dsl interface not found for " + pojo);
+    }
 
-        iface = ifaces[0];
+    return iface;
+  }
 
-        if (MapExportable.class.isAssignableFrom(iface)) {
-          continue;
-        }
+  /** Returns the mapping interface implemented by instances of `type`, null when there is none. */
+  public static Class<?> getMappingInterfaceOf(Class<?> type) {
+    return MAPPING_INTERFACES.get(type);
+  }
 
-        if (iface.getDeclaredAnnotation(Table.class) != null
-            || iface.getDeclaredAnnotation(MaterializedView.class) != null
-            || iface.getDeclaredAnnotation(UDT.class) != null
-            || iface.getDeclaredAnnotation(Tuple.class) != null) {
+  /**
+   * The first interface of `type` annotated as a table, view, UDT or tuple, else its first
+   * interface which isn't a MapExportable.
+   */
+  private static Class<?> findMappingInterface(Class<?> type) {
+    Class<?> first = null;
+    for (Class<?> iface : type.getInterfaces()) {
 
-          break;
-        }
+      if (MapExportable.class.isAssignableFrom(iface)) {
+        continue;
       }
-    }
 
-    if (iface == null) {
-      throw new HelenusMappingException("dsl interface not found for " + pojo);
-    }
+      if (iface.getDeclaredAnnotation(Table.class) != null
+          || iface.getDeclaredAnnotation(MaterializedView.class) != null
+          || iface.getDeclaredAnnotation(UDT.class) != null
+          || iface.getDeclaredAnnotation(Tuple.class) != null) {
 
-    return iface;
+        return iface;
+      }
+
+      if (first == null) {
+        first = iface;
+      }
+    }
+    return first;
   }
 
   public static HelenusPropertyNode resolveMappingProperty(Getter<?> getter) {
+    ResolvedGetter resolved = RESOLVED_GETTERS.get(getter.getClass());
+    HelenusPropertyNode node = resolved.lookup(getter);
+    if (node == null) {
+      node = resolveDslProperty(getter);
+      resolved.remember(getter, node);
+    }
+    return node;
+  }
+
+  private static HelenusPropertyNode resolveDslProperty(Getter<?> getter) {
 
     try {
       Object childDsl = getter.get();
@@ -305,6 +348,72 @@ public final class MappingUtil {
     }
   }
 
+  /**
+   * Remembers the property a method reference (e.g. `dsl::name`) resolved to. The lambda class is
+   * the same for every evaluation of the same method reference expression, the captured DSL object
+   * may differ so it is compared as well. Getters of any other kind are always resolved.
+   */
+  private static final class ResolvedGetter {
+
+    private static final ResolvedGetter NEVER = new ResolvedGetter(false, null);
+
+    private final boolean cacheable;
+    private final Field receiver;
+    // The captured DSL object and the property node it resolved to.
+    private volatile Object[] last;
+
+    private ResolvedGetter(boolean cacheable, Field receiver) {
+      this.cacheable = cacheable;
+      this.receiver = receiver;
+    }
+
+    static ResolvedGetter of(Class<?> getterClass) {
+      if (!getterClass.isSynthetic()) {
+        return NEVER;
+      }
+      Field receiver = null;
+      for (Field field : getterClass.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        if (receiver != null) {
+          return NEVER;
+        }
+        receiver = field;
+      }
+      if (receiver != null) {
+        try {
+          receiver.setAccessible(true);
+        } catch (RuntimeException e) {
+          return NEVER;
+        }
+      }
+      return new ResolvedGetter(true, receiver);
+    }
+
+    HelenusPropertyNode lookup(Getter<?> getter) {
+      Object[] last = this.last;
+      if (last == null || captured(getter) != last[0]) {
+        return null;
+      }
+      return (HelenusPropertyNode) last[1];
+    }
+
+    void remember(Getter<?> getter, HelenusPropertyNode node) {
+      if (cacheable) {
+        this.last = new Object[] {captured(getter), node};
+      }
+    }
+
+    private Object captured(Getter<?> getter) {
+      try {
+        return receiver == null ? null : receiver.get(getter);
+      } catch (IllegalAccessException e) {
+        throw new HelenusMappingException(e);
+      }
+    }
+  }
+
   private static void rethrow(Throwable cause) throws CloneNotSupportedException {
     if (cause instanceof RuntimeException) {
       throw (RuntimeException) cause;
@@ -321,30 +430,59 @@ public final class MappingUtil {
   }
 
   public static boolean compareMaps(MapExportable me, Map<String, Object> m2) {
-    Map<String, Object> m1 = me.toMap();
-    List<String> matching =
-        m2.entrySet()
-            .stream()
-            .filter(e -> !e.getKey().matches("^_.*_(ttl|writeTime)$"))
-            .filter(
-                e -> {
-                  String k = e.getKey();
-                  if (m1.containsKey(k)) {
-                    Object o1 = e.getValue();
-                    Object o2 = m1.get(k);
-                    if (o1 == o2 || o1.equals(o2)) return true;
-                  }
-                  return false;
-                })
-            .map(e -> e.getKey())
-            .collect(Collectors.toList());
-    List<String> divergent =
-        m1.entrySet()
-            .stream()
-            .filter(e -> !e.getKey().matches("^_.*_(ttl|writeTime)$"))
-            .filter(e -> !matching.contains(e.getKey()))
-            .map(e -> e.getKey())
-            .collect(Collectors.toList());
-    return divergent.size() > 0 ? false : true;
+    return equalContent(me.toMap(), m2);
+  }
+
+  /**
+   * True for the keys of values kept alongside those of an entity's properties which aren't part
+   * of its content: the token and the write time and ttl of each column.
+   */
+  public static boolean isMetadataKey(String key) {
+    if (key.isEmpty()) {
+      return true;
+    }
+    if (key.charAt(0) != '_') {
+      return false;
+    }
+    int length = key.length();
+    return key.regionMatches(true, length - 4, "_ttl", 0, 4)
+        || key.regionMatches(true, length - 10, "_writeTime", 0, 10);
+  }
+
+  /** True when both maps hold the same values for the same keys, metadata keys aside. */
+  public static boolean equalContent(Map<String, Object> m1, Map<String, Object> m2) {
+    int size = 0;
+    for (Map.Entry<String, Object> e : m1.entrySet()) {
+      String key = e.getKey();
+      if (isMetadataKey(key)) {
+        continue;
+      }
+      Object o1 = e.getValue();
+      Object o2 = m2.get(key);
+      if (o1 != o2 && (o1 == null || !o1.equals(o2))) {
+        return false;
+      }
+      if (o2 == null && !m2.containsKey(key)) {
+        return false;
+      }
+      size++;
+    }
+    for (String key : m2.keySet()) {
+      if (!isMetadataKey(key)) {
+        size--;
+      }
+    }
+    return size == 0;
+  }
+
+  /** The hash code of the content of `m`, metadata keys aside, consistent with equalContent. */
+  public static int contentHashCode(Map<String, Object> m) {
+    int hash = 0;
+    for (Map.Entry<String, Object> e : m.entrySet()) {
+      if (!isMetadataKey(e.getKey())) {
+        hash += e.getKey().hashCode() ^ Objects.hashCode(e.getValue());
+      }
+    }
+    return hash;
   }
 }
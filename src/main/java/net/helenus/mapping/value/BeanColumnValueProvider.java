@@ -16,35 +16,109 @@
  */
 package net.helenus.mapping.value;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import net.helenus.mapping.HelenusProperty;
 import net.helenus.support.HelenusException;
 import net.helenus.support.HelenusMappingException;
+import net.helenus.support.Lookups;
 
 public enum BeanColumnValueProvider implements ColumnValueProvider {
   INSTANCE;
 
+  // The accessor of each getter, a Function spun by LambdaMetafactory which calls it directly.
+  private static final ClassValue<ConcurrentMap<Method, Function<Object, Object>>> ACCESSORS =
+      new ClassValue<ConcurrentMap<Method, Function<Object, Object>>>() {
+        @Override
+        protected ConcurrentMap<Method, Function<Object, Object>> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<Method, Function<Object, Object>>();
+        }
+      };
+
   @Override
   public <V> V getColumnValue(
       Object bean, int columnIndexUnused, HelenusProperty property, boolean immutable) {
 
     Method getter = property.getGetterMethod();
+    if (!getter.getDeclaringClass().isInstance(bean)) {
+      throw new HelenusMappingException("invalid getter " + getter);
+    }
 
-    Object value = null;
+    Object value;
     try {
-      getter.setAccessible(true);
-      value = getter.invoke(bean, new Object[] {});
-    } catch (InvocationTargetException e) {
-      if (e.getCause() != null) {
-        throw new HelenusException("getter threw an exception", e.getCause());
-      }
-    } catch (ReflectiveOperationException e) {
-      throw new HelenusMappingException("fail to call getter " + getter, e);
-    } catch (IllegalArgumentException e) {
-      throw new HelenusMappingException("invalid getter " + getter, e);
+      value = accessor(getter).apply(bean);
+    } catch (HelenusMappingException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw new HelenusException("getter threw an exception", e);
     }
 
     return (V) value;
   }
+
+  /** Returns the accessor calling `getter`, created on first use. */
+  static Function<Object, Object> accessor(Method getter) {
+    ConcurrentMap<Method, Function<Object, Object>> accessors =
+        ACCESSORS.get(getter.getDeclaringClass());
+    Function<Object, Object> accessor = accessors.get(getter);
+    if (accessor == null) {
+      accessor = accessors.computeIfAbsent(getter, BeanColumnValueProvider::createAccessor);
+    }
+    return accessor;
+  }
+
+  private static Function<Object, Object> createAccessor(Method getter) {
+    MethodHandle handle;
+    try {
+      MethodHandles.Lookup lookup = Lookups.privateLookupIn(getter.getDeclaringClass());
+      handle = lookup.unreflect(getter);
+      try {
+        CallSite site =
+            LambdaMetafactory.metafactory(
+                lookup,
+                "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                handle,
+                handle.type().wrap());
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+      } catch (LambdaConversionException e) {
+        // The lookup may not be privileged enough to define a class alongside the getter's (e.g.
+        // when it was loaded by another class loader), call it through its handle instead.
+      }
+    } catch (Throwable t) {
+      throw new HelenusMappingException("fail to access getter " + getter, t);
+    }
+
+    return new HandleAccessor(handle);
+  }
+
+  /** Calls a getter through its MethodHandle, where no Function could be spun for it. */
+  static final class HandleAccessor implements Function<Object, Object> {
+
+    private final MethodHandle handle;
+
+    HandleAccessor(MethodHandle getter) {
+      this.handle = getter.asType(MethodType.methodType(Object.class, Object.class));
+    }
+
+    @Override
+    public Object apply(Object bean) {
+      try {
+        return handle.invokeExact(bean);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new HelenusException("getter threw an exception", t);
+      }
+    }
+  }
 }
@@ -0,0 +1,133 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.mapping.value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.helenus.mapping.ColumnType;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusProperty;
+
+/**
+ * The ordinal of each property of an entity, in the order of {@link
+ * HelenusEntity#getOrderedProperties()}. There is one index per entity, shared by all of its
+ * {@link PropertyValueMap}s.
+ */
+public final class PropertyIndex {
+
+  // Kept with the mapping interface so that the index doesn't outlive its entity's class loader.
+  private static final ClassValue<Indexed> indexes =
+      new ClassValue<Indexed>() {
+        @Override
+        protected Indexed computeValue(Class<?> type) {
+          return new Indexed();
+        }
+      };
+
+  private final String[] names;
+  private final HelenusProperty[] properties;
+  private final HelenusProperty[] primaryKey;
+  private final Map<String, Integer> ordinals;
+  private final Set<String> keySet;
+
+  private PropertyIndex(Collection<HelenusProperty> properties) {
+    this.names = new String[properties.size()];
+    this.properties = new HelenusProperty[names.length];
+    this.ordinals = new HashMap<String, Integer>(names.length * 2);
+    List<HelenusProperty> primaryKey = new ArrayList<HelenusProperty>();
+    int i = 0;
+    for (HelenusProperty property : properties) {
+      names[i] = property.getPropertyName();
+      this.properties[i] = property;
+      ordinals.put(names[i], i);
+      ColumnType type = property.getColumnType();
+      if (type == ColumnType.PARTITION_KEY || type == ColumnType.CLUSTERING_COLUMN) {
+        primaryKey.add(property);
+      }
+      i++;
+    }
+    this.primaryKey = primaryKey.toArray(new HelenusProperty[primaryKey.size()]);
+    this.keySet = Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(names)));
+  }
+
+  public static PropertyIndex of(HelenusEntity entity) {
+    Indexed indexed = indexes.get(entity.getMappingInterface());
+    Indexed.Entry entry = indexed.entry;
+    // A new entity is built for the interface once the dsl cache is cleared, index that one.
+    if (entry == null || entry.entity != entity) {
+      entry = new Indexed.Entry(entity, new PropertyIndex(entity.getOrderedProperties()));
+      indexed.entry = entry;
+    }
+    return entry.index;
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  public String name(int ordinal) {
+    return names[ordinal];
+  }
+
+  public HelenusProperty property(int ordinal) {
+    return properties[ordinal];
+  }
+
+  /** Returns the partition key and clustering columns, in ordinal order. */
+  public HelenusProperty[] primaryKey() {
+    return primaryKey.clone();
+  }
+
+  public boolean isPrimaryKey(int ordinal) {
+    ColumnType type = properties[ordinal].getColumnType();
+    return type == ColumnType.PARTITION_KEY || type == ColumnType.CLUSTERING_COLUMN;
+  }
+
+  /** Returns the ordinal of the property `name`, or -1 when there is no such property. */
+  public int ordinal(Object name) {
+    Integer ordinal = ordinals.get(name);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  public Set<String> names() {
+    return keySet;
+  }
+
+  /** The index of the entity most recently mapped to an interface. */
+  private static final class Indexed {
+
+    volatile Entry entry;
+
+    private static final class Entry {
+
+      final HelenusEntity entity;
+      final PropertyIndex index;
+
+      Entry(HelenusEntity entity, PropertyIndex index) {
+        this.entity = entity;
+        this.index = index;
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.mapping.value;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of property names held as a bitset over their ordinals (see {@link PropertyIndex}). Names
+ * which aren't properties of the entity are kept aside in a set of their own.
+ */
+public final class PropertySet extends AbstractSet<String> {
+
+  private final PropertyIndex index;
+  private final long[] bits;
+  private Set<String> extra;
+  private int size;
+
+  public PropertySet(PropertyIndex index) {
+    this.index = index;
+    this.bits = new long[(index.size() + 63) >>> 6];
+  }
+
+  public PropertySet(PropertyIndex index, Collection<String> names) {
+    this(index);
+    if (names != null) {
+      addAll(names);
+    }
+  }
+
+  public boolean contains(int ordinal) {
+    return (bits[ordinal >>> 6] & (1L << ordinal)) != 0;
+  }
+
+  public boolean add(int ordinal) {
+    if (contains(ordinal)) {
+      return false;
+    }
+    bits[ordinal >>> 6] |= 1L << ordinal;
+    size++;
+    return true;
+  }
+
+  /** Returns the first ordinal at or after `from` in the set, or -1 if there is none. */
+  public int nextOrdinal(int from) {
+    int word = from >>> 6;
+    if (word >= bits.length) {
+      return -1;
+    }
+    long w = bits[word] & (-1L << from);
+    while (true) {
+      if (w != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(w);
+      }
+      if (++word == bits.length) {
+        return -1;
+      }
+      w = bits[word];
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    int ordinal = index.ordinal(o);
+    if (ordinal >= 0) {
+      return contains(ordinal);
+    }
+    return extra != null && extra.contains(o);
+  }
+
+  @Override
+  public boolean add(String name) {
+    int ordinal = index.ordinal(name);
+    if (ordinal >= 0) {
+      return add(ordinal);
+    }
+    if (extra == null) {
+      extra = new HashSet<String>();
+    }
+    return extra.add(name);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    int ordinal = index.ordinal(o);
+    if (ordinal >= 0) {
+      if (!contains(ordinal)) {
+        return false;
+      }
+      bits[ordinal >>> 6] &= ~(1L << ordinal);
+      size--;
+      return true;
+    }
+    return extra != null && extra.remove(o);
+  }
+
+  @Override
+  public int size() {
+    return size + (extra == null ? 0 : extra.size());
+  }
+
+  @Override
+  public void clear() {
+    java.util.Arrays.fill(bits, 0L);
+    size = 0;
+    extra = null;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      private int next = nextOrdinal(0);
+      private int last = -1;
+      private final Iterator<String> rest = extra == null ? null : extra.iterator();
+      private boolean inRest;
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0 || (rest != null && rest.hasNext());
+      }
+
+      @Override
+      public String next() {
+        if (next >= 0) {
+          last = next;
+          next = nextOrdinal(next + 1);
+          return index.name(last);
+        }
+        if (rest != null) {
+          inRest = true;
+          return rest.next();
+        }
+        throw new NoSuchElementException();
+      }
+
+      @Override
+      public void remove() {
+        if (inRest) {
+          rest.remove();
+        } else if (last >= 0) {
+          bits[last >>> 6] &= ~(1L << last);
+          size--;
+          last = -1;
+        } else {
+          throw new IllegalStateException();
+        }
+      }
+    };
+  }
+}
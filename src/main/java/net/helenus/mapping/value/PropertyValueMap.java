@@ -0,0 +1,235 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.mapping.value;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import net.helenus.mapping.HelenusEntity;
+
+/**
+ * The values of an entity's properties held in an array indexed by property ordinal (see {@link
+ * PropertyIndex}) rather than in hash map entries. Keys which aren't properties, such as write
+ * times and ttls, are kept aside in a map of their own.
+ */
+public final class PropertyValueMap extends AbstractMap<String, Object> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient PropertyIndex index;
+  private final transient Object[] values;
+  private final transient long[] present;
+  private transient Map<String, Object> extra;
+  private transient int size;
+
+  public PropertyValueMap(HelenusEntity entity) {
+    this(PropertyIndex.of(entity));
+  }
+
+  public PropertyValueMap(PropertyIndex index) {
+    this.index = index;
+    this.values = new Object[index.size()];
+    this.present = new long[(index.size() + 63) >>> 6];
+  }
+
+  public PropertyValueMap(PropertyValueMap other) {
+    this.index = other.index;
+    this.values = other.values.clone();
+    this.present = other.present.clone();
+    this.extra = other.extra == null ? null : new HashMap<String, Object>(other.extra);
+    this.size = other.size;
+  }
+
+  /**
+   * Copies the values of `src` for `entity`. Values of a {@link ValueProviderMap} are decoded,
+   * once, leaving out properties which aren't columns of the row it reads.
+   */
+  public static PropertyValueMap copyOf(HelenusEntity entity, Map<String, Object> src) {
+    PropertyValueMap map = new PropertyValueMap(entity);
+    if (src instanceof ValueProviderMap) {
+      for (int i = 0; i < map.values.length; i++) {
+        Object value;
+        try {
+          value = src.get(map.index.name(i));
+        } catch (IllegalArgumentException e) {
+          continue;
+        }
+        map.set(i, value);
+      }
+    } else {
+      map.putAll(src);
+    }
+    return map;
+  }
+
+  private boolean isPresent(int ordinal) {
+    return (present[ordinal >>> 6] & (1L << ordinal)) != 0;
+  }
+
+  public PropertyIndex getIndex() {
+    return index;
+  }
+
+  /** Returns the first ordinal at or after `from` which holds a value, or -1 if there is none. */
+  public int nextOrdinal(int from) {
+    int word = from >>> 6;
+    if (word >= present.length) {
+      return -1;
+    }
+    long bits = present[word] & (-1L << from);
+    while (true) {
+      if (bits != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+      }
+      if (++word == present.length) {
+        return -1;
+      }
+      bits = present[word];
+    }
+  }
+
+  public Object valueAt(int ordinal) {
+    return values[ordinal];
+  }
+
+  private Object set(int ordinal, Object value) {
+    Object previous = values[ordinal];
+    if (!isPresent(ordinal)) {
+      present[ordinal >>> 6] |= 1L << ordinal;
+      size++;
+    }
+    values[ordinal] = value;
+    return previous;
+  }
+
+  @Override
+  public Object get(Object key) {
+    int ordinal = index.ordinal(key);
+    if (ordinal >= 0) {
+      return values[ordinal];
+    }
+    return extra == null ? null : extra.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int ordinal = index.ordinal(key);
+    if (ordinal >= 0) {
+      return isPresent(ordinal);
+    }
+    return extra != null && extra.containsKey(key);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    int ordinal = index.ordinal(key);
+    if (ordinal >= 0) {
+      return set(ordinal, value);
+    }
+    if (extra == null) {
+      extra = new HashMap<String, Object>();
+    }
+    return extra.put(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    int ordinal = index.ordinal(key);
+    if (ordinal >= 0) {
+      Object previous = values[ordinal];
+      if (isPresent(ordinal)) {
+        present[ordinal >>> 6] &= ~(1L << ordinal);
+        values[ordinal] = null;
+        size--;
+      }
+      return previous;
+    }
+    return extra == null ? null : extra.remove(key);
+  }
+
+  @Override
+  public int size() {
+    return size + (extra == null ? 0 : extra.size());
+  }
+
+  @Override
+  public void clear() {
+    java.util.Arrays.fill(values, null);
+    java.util.Arrays.fill(present, 0L);
+    size = 0;
+    extra = null;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return PropertyValueMap.this.size();
+      }
+    };
+  }
+
+  // Serialized as a plain map, the index belongs to the mapping of the entity.
+  private Object writeReplace() throws ObjectStreamException {
+    return new HashMap<String, Object>(this);
+  }
+
+  private final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+    private int next = advance(0);
+    private final Iterator<Entry<String, Object>> rest =
+        extra == null ? null : extra.entrySet().iterator();
+
+    private int advance(int from) {
+      int i = from;
+      while (i < values.length && !isPresent(i)) {
+        i++;
+      }
+      return i;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < values.length || (rest != null && rest.hasNext());
+    }
+
+    @Override
+    public Entry<String, Object> next() {
+      if (next < values.length) {
+        int ordinal = next;
+        next = advance(next + 1);
+        return new SimpleImmutableEntry<String, Object>(index.name(ordinal), values[ordinal]);
+      }
+      if (rest == null) {
+        throw new NoSuchElementException();
+      }
+      return rest.next();
+    }
+  }
+}
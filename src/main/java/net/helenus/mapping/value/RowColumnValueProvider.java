@@ -24,22 +24,50 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import net.helenus.core.SessionRepository;
+import net.helenus.mapping.HelenusEntity;
 import net.helenus.mapping.HelenusProperty;
 
 public final class RowColumnValueProvider implements ColumnValueProvider {
 
   private final SessionRepository repository;
+  // The decoder most recently built for the rows of each entity.
+  private final ConcurrentMap<HelenusEntity, RowDecoder> decoders =
+      new ConcurrentHashMap<HelenusEntity, RowDecoder>();
 
   public RowColumnValueProvider(SessionRepository repository) {
     this.repository = repository;
   }
 
+  /** Returns a decoder for rows of `entity` read with these column definitions. */
+  public RowDecoder decoderFor(HelenusEntity entity, ColumnDefinitions columns) {
+    RowDecoder cached = decoders.get(entity);
+    if (cached != null && cached.decodes(columns)) {
+      RowDecoder decoder = cached.of(columns);
+      if (decoder != cached) {
+        decoders.put(entity, decoder);
+      }
+      return decoder;
+    }
+    RowDecoder decoder = new RowDecoder(columns, entity.getOrderedProperties(), this, repository);
+    decoders.put(entity, decoder);
+    return decoder;
+  }
+
+  /** Returns a decoder reading the columns of rows by index. */
+  public RowDecoder decoderFor(ColumnDefinitions columns) {
+    return new RowDecoder(
+        columns, Collections.<HelenusProperty>emptyList(), this, repository);
+  }
+
   @Override
   public <V> V getColumnValue(
       Object sourceObj, int columnIndex, HelenusProperty property, boolean immutable) {
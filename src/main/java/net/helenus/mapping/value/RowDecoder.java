@@ -0,0 +1,287 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.mapping.value;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.TypeCodec;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import net.helenus.core.SessionRepository;
+import net.helenus.mapping.HelenusProperty;
+
+/**
+ * Reads the columns of rows sharing the same {@link ColumnDefinitions}. The type, codec and (for
+ * properties of an entity) index and read converter of every column are resolved once when the
+ * decoder is built rather than for every cell of every row. Values are the same as those of
+ * {@link RowColumnValueProvider#getColumnValue}.
+ */
+public final class RowDecoder {
+
+  private final ColumnDefinitions columns;
+  private final SessionRepository repository;
+  private final Column[] byIndex;
+  private final Map<String, Column> byProperty;
+
+  RowDecoder(
+      ColumnDefinitions columns,
+      Collection<HelenusProperty> properties,
+      ColumnValueProvider codecs,
+      SessionRepository repository) {
+    this.columns = columns;
+    this.repository = repository;
+    this.byIndex = new Column[columns.size()];
+    for (int i = 0; i < byIndex.length; i++) {
+      byIndex[i] = new Column(i, columns.getType(i), codecs, null);
+    }
+    if (properties.isEmpty()) {
+      this.byProperty = Collections.emptyMap();
+    } else {
+      this.byProperty = new HashMap<String, Column>(properties.size() * 2);
+      for (HelenusProperty property : properties) {
+        int index = columns.getIndexOf(property.getColumnName().getName());
+        Column column =
+            index < 0
+                ? Column.missing(property)
+                : new Column(
+                    index,
+                    columns.getType(index),
+                    codecs,
+                    property.getReadConverter(repository).orElse(null));
+        byProperty.put(property.getPropertyName(), column);
+      }
+    }
+  }
+
+  private RowDecoder(RowDecoder decoder, ColumnDefinitions columns) {
+    this.columns = columns;
+    this.repository = decoder.repository;
+    this.byIndex = decoder.byIndex;
+    this.byProperty = decoder.byProperty;
+  }
+
+  /** True when rows with these column definitions can be read by this decoder. */
+  public boolean decodes(ColumnDefinitions columns) {
+    return this.columns == columns || this.columns.asList().equals(columns.asList());
+  }
+
+  /** Returns this decoder for rows with `columns`, which must be the same shape. */
+  public RowDecoder of(ColumnDefinitions columns) {
+    return this.columns == columns ? this : new RowDecoder(this, columns);
+  }
+
+  /** Reads the value of the entity property named `propertyName`, null for unknown properties. */
+  public Object decode(Row row, String propertyName, boolean immutable) {
+    Column column = byProperty.get(propertyName);
+    if (column == null) {
+      return null;
+    }
+    return column.read(row, immutable, column.converter);
+  }
+
+  /**
+   * Returns the primitive type of the values of property `propertyName` when {@link #decodeLong}
+   * or {@link #decodeDouble} can read them without boxing, otherwise null.
+   */
+  public Class<?> primitiveType(String propertyName) {
+    Column column = byProperty.get(propertyName);
+    return column == null ? null : column.primitive;
+  }
+
+  /** True when the property `propertyName` has no value in `row`. */
+  public boolean isNull(Row row, String propertyName) {
+    return row.isNull(byProperty.get(propertyName).index);
+  }
+
+  /**
+   * Reads the value of a property of integral (or boolean, as 0 or 1) {@link #primitiveType}, 0
+   * when it is null.
+   */
+  public long decodeLong(Row row, String propertyName) {
+    return byProperty.get(propertyName).readLong(row);
+  }
+
+  /** Reads the value of a property of floating point {@link #primitiveType}, 0 when it is null. */
+  public double decodeDouble(Row row, String propertyName) {
+    return byProperty.get(propertyName).readDouble(row);
+  }
+
+  /** Reads the value of column `index` as the value of `property`. */
+  public Object decode(Row row, int index, HelenusProperty property, boolean immutable) {
+    return byIndex[index].read(row, immutable, property.getReadConverter(repository).orElse(null));
+  }
+
+  private static final class Column {
+
+    private final int index;
+    private final String missing;
+    private final DataType.Name collection;
+    private final TypeCodec<Object> codec;
+    private final TypeToken<?> elementType;
+    private final TypeToken<?> valueType;
+    private final Function<Object, Object> converter;
+    private final Class<?> primitive;
+
+    Column(
+        int index,
+        DataType type,
+        ColumnValueProvider codecs,
+        Function<Object, Object> converter) {
+      this.index = index;
+      this.missing = null;
+      this.converter = converter;
+      List<DataType> typeArguments = type.getTypeArguments();
+      switch (type.getName()) {
+        case SET:
+        case LIST:
+          this.collection = type.getName();
+          this.codec = null;
+          this.elementType = codecs.codecFor(typeArguments.get(0)).getJavaType();
+          this.valueType = null;
+          break;
+        case MAP:
+          this.collection = type.getName();
+          this.codec = null;
+          this.elementType = codecs.codecFor(typeArguments.get(0)).getJavaType();
+          this.valueType = codecs.codecFor(typeArguments.get(1)).getJavaType();
+          break;
+        default:
+          this.collection = null;
+          this.codec = codecs.codecFor(type);
+          this.elementType = null;
+          this.valueType = null;
+      }
+      this.primitive = converter == null ? primitiveOf(codec) : null;
+    }
+
+    private static Class<?> primitiveOf(TypeCodec<?> codec) {
+      if (codec instanceof TypeCodec.PrimitiveLongCodec) {
+        return long.class;
+      } else if (codec instanceof TypeCodec.PrimitiveIntCodec) {
+        return int.class;
+      } else if (codec instanceof TypeCodec.PrimitiveShortCodec) {
+        return short.class;
+      } else if (codec instanceof TypeCodec.PrimitiveByteCodec) {
+        return byte.class;
+      } else if (codec instanceof TypeCodec.PrimitiveBooleanCodec) {
+        return boolean.class;
+      } else if (codec instanceof TypeCodec.PrimitiveDoubleCodec) {
+        return double.class;
+      } else if (codec instanceof TypeCodec.PrimitiveFloatCodec) {
+        return float.class;
+      }
+      return null;
+    }
+
+    private Column(String missing) {
+      this.index = -1;
+      this.missing = missing;
+      this.collection = null;
+      this.codec = null;
+      this.elementType = null;
+      this.valueType = null;
+      this.converter = null;
+      this.primitive = null;
+    }
+
+    static Column missing(HelenusProperty property) {
+      return new Column(property.getColumnName().getName());
+    }
+
+    long readLong(Row row) {
+      ByteBuffer bytes = row.getBytesUnsafe(index);
+      if (bytes == null) {
+        return 0L;
+      }
+      TypeCodec<?> codec = this.codec;
+      ProtocolVersion version = ProtocolVersion.NEWEST_SUPPORTED;
+      if (primitive == long.class) {
+        return ((TypeCodec.PrimitiveLongCodec) codec).deserializeNoBoxing(bytes, version);
+      } else if (primitive == int.class) {
+        return ((TypeCodec.PrimitiveIntCodec) codec).deserializeNoBoxing(bytes, version);
+      } else if (primitive == short.class) {
+        return ((TypeCodec.PrimitiveShortCodec) codec).deserializeNoBoxing(bytes, version);
+      } else if (primitive == byte.class) {
+        return ((TypeCodec.PrimitiveByteCodec) codec).deserializeNoBoxing(bytes, version);
+      }
+      return ((TypeCodec.PrimitiveBooleanCodec) codec).deserializeNoBoxing(bytes, version) ? 1 : 0;
+    }
+
+    double readDouble(Row row) {
+      ByteBuffer bytes = row.getBytesUnsafe(index);
+      if (bytes == null) {
+        return 0d;
+      }
+      TypeCodec<?> codec = this.codec;
+      ProtocolVersion version = ProtocolVersion.NEWEST_SUPPORTED;
+      if (primitive == double.class) {
+        return ((TypeCodec.PrimitiveDoubleCodec) codec).deserializeNoBoxing(bytes, version);
+      }
+      return ((TypeCodec.PrimitiveFloatCodec) codec).deserializeNoBoxing(bytes, version);
+    }
+
+    Object read(Row row, boolean immutable, Function<Object, Object> converter) {
+      if (missing != null) {
+        // As the driver does when the column is looked up by name.
+        throw new IllegalArgumentException(missing + " is not a column defined in this metadata");
+      }
+
+      Object value;
+      if (collection == null) {
+        ByteBuffer bytes = row.getBytesUnsafe(index);
+        if (bytes == null) {
+          return null;
+        }
+        value = codec.deserialize(bytes, ProtocolVersion.NEWEST_SUPPORTED);
+      } else {
+        if (row.isNull(index)) {
+          return null;
+        }
+        switch (collection) {
+          case SET:
+            value = row.getSet(index, elementType);
+            value = immutable ? ImmutableSet.copyOf((Set) value) : value;
+            break;
+          case LIST:
+            value = row.getList(index, elementType);
+            value = immutable ? ImmutableList.copyOf((List) value) : value;
+            break;
+          default:
+            value = row.getMap(index, elementType, valueType);
+            value = immutable ? ImmutableMap.copyOf((Map) value) : value;
+        }
+      }
+
+      if (value != null && converter != null) {
+        value = converter.apply(value);
+      }
+      return value;
+    }
+  }
+}
@@ -16,6 +16,7 @@
  */
 package net.helenus.mapping.value;
 
+import com.datastax.driver.core.Row;
 import com.google.common.collect.ImmutableMap;
 import java.util.Collection;
 import java.util.Map;
@@ -31,12 +32,20 @@ public final class ValueProviderMap implements Map<String, Object> {
   private final ColumnValueProvider valueProvider;
   private final HelenusEntity entity;
   private final boolean immutable;
+  private final RowDecoder decoder;
 
   public ValueProviderMap(Object source, ColumnValueProvider valueProvider, HelenusEntity entity) {
     this.source = source;
     this.valueProvider = valueProvider;
     this.entity = entity;
     this.immutable = entity.isDraftable();
+    if (source instanceof Row && valueProvider instanceof RowColumnValueProvider) {
+      this.decoder =
+          ((RowColumnValueProvider) valueProvider)
+              .decoderFor(entity, ((Row) source).getColumnDefinitions());
+    } else {
+      this.decoder = null;
+    }
   }
 
   private static void throwShouldNeverCall(String methodName) {
@@ -49,6 +58,9 @@ public final class ValueProviderMap implements Map<String, Object> {
   public Object get(Object key, boolean immutable) {
     if (key instanceof String) {
       String name = (String) key;
+      if (decoder != null) {
+        return decoder.decode((Row) source, name, immutable);
+      }
       HelenusProperty prop = entity.getProperty(name);
       if (prop != null) {
         return valueProvider.getColumnValue(source, -1, prop, immutable);
@@ -62,13 +74,22 @@ public final class ValueProviderMap implements Map<String, Object> {
     return get(key, this.immutable);
   }
 
+  public HelenusEntity getEntity() {
+    return entity;
+  }
+
+  public Object getSource() {
+    return source;
+  }
+
+  /** Returns the decoder reading the source row, or null when the source isn't a row. */
+  public RowDecoder getDecoder() {
+    return decoder;
+  }
+
   @Override
   public Set<String> keySet() {
-    return entity
-        .getOrderedProperties()
-        .stream()
-        .map(p -> p.getPropertyName())
-        .collect(Collectors.toSet());
+    return PropertyIndex.of(entity).names();
   }
 
   @Override
@@ -83,11 +104,7 @@ public final class ValueProviderMap implements Map<String, Object> {
 
   @Override
   public boolean containsKey(Object key) {
-    if (key instanceof String) {
-      String s = (String) key;
-      return keySet().contains(s);
-    }
-    return false;
+    return PropertyIndex.of(entity).ordinal(key) >= 0;
   }
 
   @Override
@@ -132,7 +149,7 @@ public final class ValueProviderMap implements Map<String, Object> {
         .map(
             p -> {
               return new ValueProviderMap.Entry<String, Object>(
-                  p.getPropertyName(), valueProvider.getColumnValue(source, -1, p, immutable));
+                  p.getPropertyName(), get(p.getPropertyName(), immutable));
             })
         .collect(Collectors.toSet());
   }
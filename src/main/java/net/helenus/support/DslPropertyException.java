@@ -32,4 +32,10 @@ public final class DslPropertyException extends HelenusException {
   public HelenusPropertyNode getPropertyNode() {
     return propertyNode;
   }
+
+  // Thrown by DSL getters to hand back a property, never to report an error, so skip the trace.
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
 }
@@ -0,0 +1,55 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.support;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+
+public final class Lookups {
+
+  // MethodHandles.privateLookupIn(Class, Lookup) exists from Java 9 on, null on Java 8.
+  private static final MethodHandle PRIVATE_LOOKUP_IN = privateLookupIn();
+
+  private Lookups() {}
+
+  /** Returns a Lookup with private access to `type`, as code within `type` itself would have. */
+  public static MethodHandles.Lookup privateLookupIn(Class<?> type) throws Throwable {
+    if (PRIVATE_LOOKUP_IN != null) {
+      return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invokeExact(type, MethodHandles.lookup());
+    }
+    // Java 8 offers no public way to a Lookup with private access to another class.
+    Constructor<MethodHandles.Lookup> constructor =
+        MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+    constructor.setAccessible(true);
+    return constructor.newInstance(type, MethodHandles.Lookup.PRIVATE);
+  }
+
+  private static MethodHandle privateLookupIn() {
+    try {
+      return MethodHandles.publicLookup()
+          .findStatic(
+              MethodHandles.class,
+              "privateLookupIn",
+              MethodType.methodType(
+                  MethodHandles.Lookup.class, Class.class, MethodHandles.Lookup.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+}
@@ -16,11 +16,14 @@
  */
 package net.helenus.support;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
@@ -32,6 +35,8 @@ import org.slf4j.LoggerFactory;
 public class PackageUtil {
 
   public static final String JAR_URL_SEPARATOR = "!/";
+  // Written by net.helenus.codegen.EntityIndexProcessor, one entity interface name per line.
+  public static final String ENTITY_INDEX = "META-INF/helenus/entities";
   private static final Logger log = LoggerFactory.getLogger(PackageUtil.class);
 
   private static void doFetchInPath(
@@ -53,6 +58,53 @@ public class PackageUtil {
     }
   }
 
+  /**
+   * Returns the entity interfaces of the package `packagePath` and its sub-packages listed in the
+   * entity indexes on the class path. Returns null when a class path entry containing the package
+   * has no index, its entities can then only be found by scanning with {@link #getClasses}.
+   */
+  public static Set<Class<?>> getIndexedClasses(String packagePath)
+      throws ClassNotFoundException, IOException {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    if (classLoader == null) {
+      throw new ClassNotFoundException("class loader not found for current thread");
+    }
+    Set<String> indexes = new HashSet<String>();
+    for (Enumeration<URL> urls = classLoader.getResources(ENTITY_INDEX); urls.hasMoreElements(); ) {
+      indexes.add(urls.nextElement().toString());
+    }
+    String path = packagePath.replace('.', '/');
+    for (Enumeration<URL> urls = classLoader.getResources(path); urls.hasMoreElements(); ) {
+      String location = urls.nextElement().toString();
+      int root = location.lastIndexOf(path);
+      if (root < 0 || !indexes.contains(location.substring(0, root) + ENTITY_INDEX)) {
+        return null;
+      }
+    }
+
+    Set<Class<?>> classes = new HashSet<Class<?>>();
+    String prefix = packagePath + ".";
+    for (String index : indexes) {
+      try (BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(new URL(index).openStream(), StandardCharsets.UTF_8))) {
+        String name;
+        while ((name = reader.readLine()) != null) {
+          name = name.trim();
+          if (name.startsWith(prefix)) {
+            try {
+              classes.add(classLoader.loadClass(name));
+            } catch (ClassNotFoundException e) {
+              // Left in the index by an incremental compilation after its source was removed.
+              log.warn("{} lists {} which can't be loaded", index, name);
+            }
+          }
+        }
+      }
+    }
+    return classes;
+  }
+
   public static Set<Class<?>> getClasses(String packagePath)
       throws ClassNotFoundException, IOException {
     Set<Class<?>> classes = new HashSet<Class<?>>();
@@ -0,0 +1,85 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.core.reflect;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import net.helenus.core.Helenus;
+import net.helenus.mapping.annotation.Transient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** In the package of DefaultMethods, to look at the handles it keeps. */
+public class DefaultMethodsTest {
+
+  public interface Hatch {
+    int size();
+
+    default String color() {
+      return "grey";
+    }
+
+    @Transient
+    default String describe(String prefix) {
+      return prefix + " " + color() + " hatch of " + size();
+    }
+  }
+
+  public interface RoofHatch extends Hatch {}
+
+  private static Map<String, Object> values() {
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("size", 3);
+    return values;
+  }
+
+  @Test
+  public void testDefaultMethodsOfAProxy() {
+    Hatch hatch =
+        ReflectionMapperInstantiator.INSTANCE.instantiate(
+            Hatch.class, values(), Hatch.class.getClassLoader());
+    Assert.assertFalse(hatch instanceof GeneratedEntity);
+    Assert.assertEquals("grey", hatch.color());
+    Assert.assertEquals("a grey hatch of 3", hatch.describe("a"));
+  }
+
+  @Test
+  public void testDefaultMethodsOfAGeneratedEntity() {
+    Hatch hatch = Helenus.map(Hatch.class, values());
+    Assert.assertTrue(hatch instanceof GeneratedEntity);
+    Assert.assertEquals("grey", hatch.color());
+    Assert.assertEquals("a grey hatch of 3", hatch.describe("a"));
+  }
+
+  @Test
+  public void testHandlesAreResolvedOncePerDeclaringInterface() throws Exception {
+    Method describe = Hatch.class.getMethod("describe", String.class);
+    RoofHatch hatch =
+        ReflectionMapperInstantiator.INSTANCE.instantiate(
+            RoofHatch.class, values(), RoofHatch.class.getClassLoader());
+    Assert.assertEquals("the grey hatch of 3", hatch.describe("the"));
+
+    Assert.assertSame(DefaultMethods.handle(describe), DefaultMethods.handle(describe));
+    Assert.assertSame(
+        DefaultMethods.handle(describe),
+        DefaultMethods.handle(RoofHatch.class.getMethod("describe", String.class)));
+    Assert.assertNotSame(
+        DefaultMethods.handle(describe),
+        DefaultMethods.handle(Hatch.class.getMethod("color")));
+  }
+}
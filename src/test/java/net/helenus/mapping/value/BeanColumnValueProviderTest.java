@@ -0,0 +1,139 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.mapping.value;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.Function;
+import net.helenus.core.Helenus;
+import net.helenus.mapping.HelenusEntity;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** In the package of BeanColumnValueProvider, to look at the accessors it spins. */
+public class BeanColumnValueProviderTest {
+
+  public interface Coach {
+    String operator();
+
+    int seats();
+
+    boolean electric();
+
+    default String route() {
+      return "X" + seats();
+    }
+  }
+
+  static class SchoolCoach implements Coach {
+
+    @Override
+    public String operator() {
+      return "Arriva";
+    }
+
+    @Override
+    public int seats() {
+      return 53;
+    }
+
+    @Override
+    public boolean electric() {
+      return true;
+    }
+  }
+
+  // Only refers to java.*, so that it can be loaded again by a class loader of its own.
+  public static class Minibus {
+
+    int seats() {
+      return 16;
+    }
+  }
+
+  @Test
+  public void testPublicGetter() throws Exception {
+    HelenusEntity entity = Helenus.entity(Coach.class);
+    Coach coach = new SchoolCoach();
+
+    Assert.assertEquals(
+        "Arriva",
+        BeanColumnValueProvider.INSTANCE.getColumnValue(
+            coach, -1, entity.getProperty("operator"), false));
+    Function<Object, Object> accessor =
+        BeanColumnValueProvider.accessor(Coach.class.getMethod("operator"));
+    Assert.assertFalse(accessor instanceof BeanColumnValueProvider.HandleAccessor);
+    Assert.assertSame(
+        accessor, BeanColumnValueProvider.accessor(Coach.class.getMethod("operator")));
+  }
+
+  @Test
+  public void testPrimitiveGetters() throws Exception {
+    HelenusEntity entity = Helenus.entity(Coach.class);
+    Coach coach = new SchoolCoach();
+
+    Object seats =
+        BeanColumnValueProvider.INSTANCE.getColumnValue(
+            coach, -1, entity.getProperty("seats"), false);
+    Object electric =
+        BeanColumnValueProvider.INSTANCE.getColumnValue(
+            coach, -1, entity.getProperty("electric"), false);
+    Assert.assertEquals(Integer.valueOf(53), seats);
+    Assert.assertEquals(Boolean.TRUE, electric);
+  }
+
+  @Test
+  public void testDefaultGetter() throws Exception {
+    Method route = Coach.class.getMethod("route");
+    Assert.assertEquals("X53", BeanColumnValueProvider.accessor(route).apply(new SchoolCoach()));
+  }
+
+  @Test
+  public void testGetterOfAnotherClassLoaderFallsBackToItsHandle() throws Exception {
+    URL classes = Minibus.class.getProtectionDomain().getCodeSource().getLocation();
+    try (URLClassLoader loader = new URLClassLoader(new URL[] {classes}, null)) {
+      Class<?> type = loader.loadClass(Minibus.class.getName());
+      Assert.assertNotSame(Minibus.class, type);
+      Method seats = type.getDeclaredMethod("seats");
+      Object minibus = type.getConstructor().newInstance();
+
+      Function<Object, Object> accessor = BeanColumnValueProvider.accessor(seats);
+      Assert.assertEquals(Integer.valueOf(16), accessor.apply(minibus));
+      if (!System.getProperty("java.specification.version").startsWith("1.")) {
+        // From Java 9 on a Lookup into another class loader's module cannot spin a Function.
+        Assert.assertTrue(accessor instanceof BeanColumnValueProvider.HandleAccessor);
+      }
+    }
+  }
+
+  @Test
+  public void testHandleAccessorOfNonPublicAndDefaultGetters() throws Exception {
+    Method seats = Minibus.class.getDeclaredMethod("seats");
+    Method route = Coach.class.getMethod("route");
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    Assert.assertEquals(
+        Integer.valueOf(16),
+        new BeanColumnValueProvider.HandleAccessor(lookup.unreflect(seats)).apply(new Minibus()));
+    Assert.assertEquals(
+        "X53",
+        new BeanColumnValueProvider.HandleAccessor(lookup.unreflect(route))
+            .apply(new SchoolCoach()));
+  }
+}
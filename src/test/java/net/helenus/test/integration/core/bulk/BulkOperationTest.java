@@ -0,0 +1,128 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.integration.core.bulk;
+
+import static net.helenus.core.Query.eq;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.helenus.core.Helenus;
+import net.helenus.core.HelenusSession;
+import net.helenus.core.operation.BulkOperation;
+import net.helenus.test.integration.build.AbstractEmbeddedCassandraTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BulkOperationTest extends AbstractEmbeddedCassandraTest {
+
+  static Rider rider;
+  static Team team;
+  static HelenusSession session;
+
+  @BeforeClass
+  public static void beforeTest() {
+    session =
+        Helenus.init(getSession())
+            .showCql()
+            .add(Rider.class)
+            .add(Team.class)
+            .autoCreateDrop()
+            .get();
+    rider = Helenus.dsl(Rider.class, session.getMetadata());
+    team = Helenus.dsl(Team.class, session.getMetadata());
+  }
+
+  static Rider rider(String team, String name) {
+    return Helenus.map(Rider.class, ImmutableMap.<String, Object>of("team", team, "name", name));
+  }
+
+  static Team team(String team, String city) {
+    return Helenus.map(Team.class, ImmutableMap.<String, Object>of("team", team, "city", city));
+  }
+
+  private Team selectTeam(String name) throws TimeoutException {
+    return session.<Team>select(team).where(team::team, eq(name)).single().sync().orElse(null);
+  }
+
+  @Test
+  public void testRowsOfTablesSharingPartitionValuesAreBatchedApart() throws Exception {
+    BulkOperation.Progress progress =
+        session
+            .bulkUpsert(Stream.of(rider("red", "ana"), team("red", "Lyon"), rider("red", "bo")))
+            .sync();
+
+    Assert.assertEquals(3, progress.rows());
+    Assert.assertEquals(2, progress.requests());
+    Assert.assertEquals(
+        2,
+        session
+            .<Rider>select(rider)
+            .where(rider::team, eq("red"))
+            .sync()
+            .collect(Collectors.toList())
+            .size());
+    Assert.assertEquals("Lyon", selectTeam("red").city());
+  }
+
+  @Test
+  public void testWrittenRowsAreNotServedStaleFromTheCache() throws Exception {
+    session.bulkUpsert(Stream.of(team("blue", "Oslo"))).sync();
+    Assert.assertEquals("Oslo", selectTeam("blue").city());
+
+    // The team is written in a batch of its own behind a rider of the same partition.
+    session.bulkUpsert(Stream.of(rider("blue", "cy"), team("blue", "Bergen"))).sync();
+    Assert.assertEquals("Bergen", selectTeam("blue").city());
+  }
+
+  @Test
+  public void testInsertCountsRowsNotApplied() throws Exception {
+    session.bulkInsert(Stream.of(team("green", "Turin"))).sync();
+
+    BulkOperation.Progress progress =
+        session.bulkInsert(Stream.of(team("green", "Milan"), team("white", "Genoa"))).sync();
+
+    Assert.assertEquals(2, progress.rows());
+    Assert.assertEquals(2, progress.requests());
+    Assert.assertEquals(1, progress.notApplied());
+    Assert.assertEquals("Turin", selectTeam("green").city());
+    Assert.assertEquals("Genoa", selectTeam("white").city());
+  }
+
+  @Test
+  public void testRowsSentBeforeTheStreamFailsAreWritten() throws Exception {
+    Stream<Team> teams =
+        Stream.of("black", "grey", "none")
+            .map(
+                name -> {
+                  if (name.equals("none")) {
+                    throw new IllegalStateException("no more teams");
+                  }
+                  return team(name, "Rome");
+                });
+    try {
+      session.bulkUpsert(teams).batchSize(1).sync();
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("no more teams", e.getMessage());
+    }
+    Assert.assertEquals("Rome", selectTeam("black").city());
+    Assert.assertEquals("Rome", selectTeam("grey").city());
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.integration.core.cache;
+
+import static net.helenus.core.Query.eq;
+
+import ca.exprofesso.guava.jcache.GuavaCachingProvider;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.utils.UUIDs;
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.spi.CachingProvider;
+import net.helenus.core.Helenus;
+import net.helenus.core.HelenusSession;
+import net.helenus.core.annotation.Cacheable;
+import net.helenus.core.reflect.Entity;
+import net.helenus.mapping.MappingUtil;
+import net.helenus.mapping.annotation.PartitionKey;
+import net.helenus.mapping.annotation.Table;
+import net.helenus.test.integration.build.AbstractEmbeddedCassandraTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+@Table
+@Cacheable
+interface Ghost extends Entity, Serializable {
+  @PartitionKey
+  UUID id();
+
+  String name();
+}
+
+public class NegativeCacheTest extends AbstractEmbeddedCassandraTest {
+
+  static Ghost ghost;
+  static HelenusSession session;
+  static MetricRegistry metrics = new MetricRegistry();
+
+  @BeforeClass
+  public static void beforeTest() {
+    CachingProvider cachingProvider =
+        Caching.getCachingProvider(GuavaCachingProvider.class.getName());
+    CacheManager cacheManager = cachingProvider.getCacheManager();
+    MutableConfiguration<String, Object> configuration = new MutableConfiguration<>();
+    configuration.setStoreByValue(false).setReadThrough(false);
+    cacheManager.createCache(MappingUtil.getTableName(Ghost.class, true).toString(), configuration);
+
+    session =
+        Helenus.init(getSession())
+            .showCql()
+            .add(Ghost.class)
+            .autoCreateDrop()
+            .metricRegistry(metrics)
+            .setCacheManager(cacheManager)
+            .negativeCacheTtl(1, TimeUnit.MINUTES)
+            .get();
+    ghost = session.dsl(Ghost.class);
+  }
+
+  @Test
+  public void testMissingRowIsRememberedUntilInserted() throws Exception {
+    UUID key = UUIDs.timeBased();
+    long negativeHits = metrics.meter("net.helenus.session-cache-negative-hits").getCount();
+
+    // This should read from the database, find nothing and remember that.
+    Optional<Ghost> g1 = session.<Ghost>select(ghost).where(ghost::id, eq(key)).single().sync();
+    Assert.assertFalse(g1.isPresent());
+    Assert.assertEquals(
+        negativeHits, metrics.meter("net.helenus.session-cache-negative-hits").getCount());
+
+    // This should be answered by the session cache without reaching the database.
+    Optional<Ghost> g2 = session.<Ghost>select(ghost).where(ghost::id, eq(key)).single().sync();
+    Assert.assertFalse(g2.isPresent());
+    Assert.assertEquals(
+        negativeHits + 1, metrics.meter("net.helenus.session-cache-negative-hits").getCount());
+
+    // Inserting the row replaces the marker.
+    Ghost inserted =
+        session
+            .<Ghost>insert(ghost)
+            .value(ghost::id, key)
+            .value(ghost::name, "boo")
+            .sync();
+
+    Optional<Ghost> g3 = session.<Ghost>select(ghost).where(ghost::id, eq(key)).single().sync();
+    Assert.assertTrue(g3.isPresent());
+    Assert.assertEquals(inserted.name(), g3.get().name());
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.integration.core.cache;
+
+import static net.helenus.core.Query.eq;
+
+import ca.exprofesso.guava.jcache.GuavaCachingProvider;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.utils.UUIDs;
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.spi.CachingProvider;
+import net.helenus.core.Helenus;
+import net.helenus.core.HelenusSession;
+import net.helenus.core.UnitOfWork;
+import net.helenus.core.annotation.Cacheable;
+import net.helenus.core.reflect.Entity;
+import net.helenus.mapping.MappingUtil;
+import net.helenus.mapping.annotation.Index;
+import net.helenus.mapping.annotation.PartitionKey;
+import net.helenus.mapping.annotation.Table;
+import net.helenus.test.integration.build.AbstractEmbeddedCassandraTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+@Table
+@Cacheable
+interface Gadget extends Entity, Serializable {
+  @PartitionKey
+  UUID id();
+
+  @Index
+  String kind();
+}
+
+public class QueryResultCacheTest extends AbstractEmbeddedCassandraTest {
+
+  static MetricRegistry metrics = new MetricRegistry();
+  static Gadget gadget;
+  static HelenusSession session;
+
+  @BeforeClass
+  public static void beforeTest() {
+    CachingProvider cachingProvider =
+        Caching.getCachingProvider(GuavaCachingProvider.class.getName());
+    CacheManager cacheManager = cachingProvider.getCacheManager();
+    MutableConfiguration<String, Object> configuration = new MutableConfiguration<>();
+    configuration.setStoreByValue(false).setReadThrough(false);
+    cacheManager.createCache(
+        MappingUtil.getTableName(Gadget.class, true).toString(), configuration);
+
+    session =
+        Helenus.init(getSession())
+            .showCql()
+            .add(Gadget.class)
+            .autoCreateDrop()
+            .setCacheManager(cacheManager)
+            .cacheQueryResults(true)
+            .metricRegistry(metrics)
+            .get();
+    gadget = session.dsl(Gadget.class);
+  }
+
+  private Gadget insert(String kind) throws Exception {
+    return session
+        .<Gadget>insert(gadget)
+        .value(gadget::id, UUIDs.timeBased())
+        .value(gadget::kind, kind)
+        .sync();
+  }
+
+  @Test
+  public void testIndexedSelectIsCachedUntilTableIsWritten() throws Exception {
+    insert("widget");
+
+    try (UnitOfWork uow = session.begin()) {
+      // This should read from the database.
+      List<Gadget> g1 =
+          session
+              .<Gadget>select(gadget)
+              .where(gadget::kind, eq("widget"))
+              .sync(uow)
+              .collect(Collectors.toList());
+
+      // This should be answered from the unit of work with the very same instances.
+      List<Gadget> g2 =
+          session
+              .<Gadget>select(gadget)
+              .where(gadget::kind, eq("widget"))
+              .sync(uow)
+              .collect(Collectors.toList());
+
+      Assert.assertEquals(1, g1.size());
+      Assert.assertSame(g1.get(0), g2.get(0));
+      uow.commit();
+    }
+
+    // Any write to the table makes the cached results stale.
+    insert("widget");
+    List<Gadget> g3 =
+        session
+            .<Gadget>select(gadget)
+            .where(gadget::kind, eq("widget"))
+            .sync()
+            .collect(Collectors.toList());
+    Assert.assertEquals(2, g3.size());
+  }
+
+  @Test
+  public void testCountIsCachedUntilTableIsWritten() throws Exception {
+    insert("gizmo");
+
+    try (UnitOfWork uow = session.begin()) {
+      Long c1 = session.count().where(gadget::kind, eq("gizmo")).sync(uow);
+      Long c2 = session.count().where(gadget::kind, eq("gizmo")).sync(uow);
+      Assert.assertEquals(1L, (long) c1);
+      Assert.assertEquals(c1, c2);
+
+      // Writing to the table within the unit of work invalidates the count.
+      session
+          .<Gadget>insert(gadget)
+          .value(gadget::id, UUIDs.timeBased())
+          .value(gadget::kind, "gizmo")
+          .sync(uow);
+      Long c3 = session.count().where(gadget::kind, eq("gizmo")).sync(uow);
+      Assert.assertEquals(2L, (long) c3);
+      uow.commit();
+    }
+  }
+
+  @Test
+  public void testFilteredCountIsCachedInSession() throws Exception {
+    insert("sprocket");
+
+    Long c1 = session.count().where(gadget::kind, eq("sprocket")).sync();
+    long sessionHits = metrics.meter("net.helenus.session-cache-hits").getCount();
+    Long c2 = session.count().where(gadget::kind, eq("sprocket")).sync();
+    Assert.assertEquals(1L, (long) c1);
+    Assert.assertEquals(c1, c2);
+    Assert.assertEquals(
+        sessionHits + 1, metrics.meter("net.helenus.session-cache-hits").getCount());
+
+    insert("sprocket");
+    Long c3 = session.count().where(gadget::kind, eq("sprocket")).sync();
+    Assert.assertEquals(2L, (long) c3);
+  }
+
+  @Test
+  public void testBatchedWriteInvalidatesCountInUnitOfWork() throws Exception {
+    insert("thingamajig");
+
+    try (UnitOfWork uow = session.begin()) {
+      Long c1 = session.count().where(gadget::kind, eq("thingamajig")).sync(uow);
+      Assert.assertEquals(1L, (long) c1);
+
+      session
+          .<Gadget>insert(gadget)
+          .value(gadget::id, UUIDs.timeBased())
+          .value(gadget::kind, "thingamajig")
+          .batch(uow);
+
+      // The count remembered before the batched insert isn't used again.
+      long uowHits = metrics.meter("net.helenus.UOW-cache-hits").getCount();
+      session.count().where(gadget::kind, eq("thingamajig")).sync(uow);
+      Assert.assertEquals(uowHits, metrics.meter("net.helenus.UOW-cache-hits").getCount());
+      uow.commit();
+    }
+
+    Long c2 = session.count().where(gadget::kind, eq("thingamajig")).sync();
+    Assert.assertEquals(2L, (long) c2);
+  }
+
+  @Test
+  public void testBatchedWriteInvalidatesResultsInUnitOfWork() throws Exception {
+    insert("doohickey");
+
+    try (UnitOfWork uow = session.begin()) {
+      List<Gadget> g1 =
+          session
+              .<Gadget>select(gadget)
+              .where(gadget::kind, eq("doohickey"))
+              .sync(uow)
+              .collect(Collectors.toList());
+      Assert.assertEquals(1, g1.size());
+
+      session
+          .<Gadget>insert(gadget)
+          .value(gadget::id, UUIDs.timeBased())
+          .value(gadget::kind, "doohickey")
+          .batch(uow);
+
+      // The batched insert isn't sent until commit, but the results cached before it are gone.
+      long uowHits = metrics.meter("net.helenus.UOW-cache-hits").getCount();
+      List<Gadget> g2 =
+          session
+              .<Gadget>select(gadget)
+              .where(gadget::kind, eq("doohickey"))
+              .sync(uow)
+              .collect(Collectors.toList());
+      Assert.assertEquals(uowHits, metrics.meter("net.helenus.UOW-cache-hits").getCount());
+      Assert.assertNotSame(g1.get(0), g2.get(0));
+      uow.commit();
+    }
+
+    List<Gadget> g3 =
+        session
+            .<Gadget>select(gadget)
+            .where(gadget::kind, eq("doohickey"))
+            .sync()
+            .collect(Collectors.toList());
+    Assert.assertEquals(2, g3.size());
+  }
+}
@@ -18,6 +18,14 @@ package net.helenus.test.integration.core.counter;
 
 import static net.helenus.core.Query.eq;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import net.helenus.core.Helenus;
 import net.helenus.core.HelenusSession;
@@ -29,13 +37,21 @@ import org.junit.Test;
 public class CounterTest extends AbstractEmbeddedCassandraTest {
 
   static Page page;
+  static Visits visits;
 
   static HelenusSession session;
 
   @BeforeClass
   public static void beforeTest() {
-    session = Helenus.init(getSession()).showCql().add(Page.class).autoCreateDrop().get();
+    session =
+        Helenus.init(getSession())
+            .showCql()
+            .add(Page.class)
+            .add(Visits.class)
+            .autoCreateDrop()
+            .get();
     page = Helenus.dsl(Page.class, session.getMetadata());
+    visits = Helenus.dsl(Visits.class, session.getMetadata());
   }
 
   @Test
@@ -61,4 +77,120 @@ public class CounterTest extends AbstractEmbeddedCassandraTest {
     hits = session.select(page::hits).where(page::alias, eq("index")).sync().findFirst().get()._1;
     Assert.assertEquals(9, hits);
   }
+
+  @Test
+  public void testAccumulatedCounter() throws TimeoutException {
+    HelenusSession accumulating =
+        Helenus.init(getSession()).add(Page.class).accumulateCounters(1, TimeUnit.MINUTES).get();
+
+    for (int i = 0; i < 100; i++) {
+      accumulating.update().increment(page::hits).where(page::alias, eq("about")).accumulate();
+    }
+    accumulating.update().decrement(page::hits, 5L).where(page::alias, eq("about")).accumulate();
+
+    boolean exists =
+        session.select(page::hits).where(page::alias, eq("about")).sync().findFirst().isPresent();
+    Assert.assertFalse(exists);
+
+    accumulating.getCounterAccumulator().flush();
+
+    long hits =
+        session.select(page::hits).where(page::alias, eq("about")).sync().findFirst().get()._1;
+    Assert.assertEquals(95, hits);
+  }
+
+  @Test
+  public void testIncrementsRacingFlushesAreNotLost() throws Exception {
+    HelenusSession accumulating =
+        Helenus.init(getSession()).add(Page.class).accumulateCounters(1, TimeUnit.MINUTES).get();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> increments = new ArrayList<Future<?>>();
+      for (int t = 0; t < 4; t++) {
+        increments.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 500; i++) {
+                    accumulating
+                        .update()
+                        .increment(page::hits)
+                        .where(page::alias, eq("contact"))
+                        .accumulate();
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> f : increments) {
+        while (!f.isDone()) {
+          accumulating.getCounterAccumulator().flush();
+        }
+        f.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    accumulating.getCounterAccumulator().flush();
+    accumulating.getCounterAccumulator().flush();
+
+    long hits =
+        session.select(page::hits).where(page::alias, eq("contact")).sync().findFirst().get()._1;
+    Assert.assertEquals(2000, hits);
+  }
+
+  @Test
+  public void testPendingCountsEveryOpenAccumulator() throws Exception {
+    MetricRegistry metrics = new MetricRegistry();
+    HelenusSession first =
+        Helenus.init(getSession())
+            .add(Page.class)
+            .metricRegistry(metrics)
+            .accumulateCounters(1, TimeUnit.MINUTES)
+            .get();
+    HelenusSession second =
+        Helenus.init(getSession())
+            .add(Page.class)
+            .metricRegistry(metrics)
+            .accumulateCounters(1, TimeUnit.MINUTES)
+            .get();
+    Gauge<?> pending = metrics.getGauges().get("net.helenus.counters.pending");
+
+    first.update().increment(page::hits).where(page::alias, eq("faq")).accumulate();
+    second.update().increment(page::hits).where(page::alias, eq("terms")).accumulate();
+    second.update().increment(page::hits).where(page::alias, eq("privacy")).accumulate();
+    Assert.assertEquals(3, pending.getValue());
+
+    first.getCounterAccumulator().close();
+    Assert.assertEquals(2, pending.getValue());
+    second.getCounterAccumulator().close();
+    Assert.assertEquals(0, pending.getValue());
+  }
+
+  @Test
+  public void testCachedRowIsEvictedOnceIncrementsAreWritten() throws Exception {
+    HelenusSession accumulating =
+        Helenus.init(getSession()).add(Visits.class).accumulateCounters(1, TimeUnit.MINUTES).get();
+
+    accumulating.update().increment(visits::visits).where(visits::alias, eq("home")).accumulate();
+    accumulating.getCounterAccumulator().flush();
+    Assert.assertEquals(1L, selectVisits(accumulating, "home"));
+
+    // Read while the increment is pending, which caches the row as it is before the increment.
+    accumulating.update().increment(visits::visits).where(visits::alias, eq("home")).accumulate();
+    selectVisits(accumulating, "home");
+
+    accumulating.getCounterAccumulator().flush();
+    Assert.assertEquals(2L, selectVisits(accumulating, "home"));
+  }
+
+  private static long selectVisits(HelenusSession accumulating, String alias)
+      throws TimeoutException {
+    return accumulating
+        .<Visits>select(Visits.class)
+        .where(visits::alias, eq(alias))
+        .single()
+        .sync()
+        .orElse(null)
+        .visits();
+  }
 }
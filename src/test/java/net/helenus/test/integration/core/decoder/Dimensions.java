@@ -0,0 +1,30 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.integration.core.decoder;
+
+import net.helenus.mapping.annotation.Column;
+import net.helenus.mapping.annotation.Tuple;
+
+@Tuple
+public interface Dimensions {
+
+  @Column(ordinal = 0)
+  Double width();
+
+  @Column(ordinal = 1)
+  Double height();
+}
@@ -0,0 +1,164 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.integration.core.decoder;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import net.helenus.core.Helenus;
+import net.helenus.core.HelenusSession;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.HelenusProperty;
+import net.helenus.mapping.value.RowColumnValueProvider;
+import net.helenus.mapping.value.RowDecoder;
+import net.helenus.test.integration.build.AbstractEmbeddedCassandraTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Rows read through a {@link RowDecoder} decode to the same values as read column by column. */
+public class RowDecoderTest extends AbstractEmbeddedCassandraTest {
+
+  static Gear gear;
+  static HelenusSession session;
+  static HelenusEntity entity;
+  static RowColumnValueProvider provider;
+
+  @BeforeClass
+  public static void beforeTest() throws Exception {
+    session = Helenus.init(getSession()).showCql().add(Gear.class).autoCreateDrop().get();
+    gear = session.dsl(Gear.class);
+    entity = Helenus.entity(Gear.class);
+    provider = (RowColumnValueProvider) session.getValueProvider();
+
+    Maker maker = maker("Acme", 1949);
+    Dimensions dimensions =
+        new Dimensions() {
+          @Override
+          public Double width() {
+            return 1.5;
+          }
+
+          @Override
+          public Double height() {
+            return 2.25;
+          }
+        };
+    session
+        .<Gear>insert(gear)
+        .value(gear::id, UUIDs.timeBased())
+        .value(gear::name, "anvil")
+        .value(gear::weight, 120)
+        .value(gear::grade, Grade.PRODUCTION)
+        .value(gear::maker, maker)
+        .value(gear::dimensions, dimensions)
+        .value(gear::tags, ImmutableSet.of("heavy", "iron"))
+        .value(gear::sizes, Arrays.asList(3, 1, 2))
+        .value(gear::stock, ImmutableMap.of("east", 4L, "west", 0L))
+        .value(gear::suppliers, Arrays.asList(maker, maker("Ajax", 1901)))
+        .sync();
+    // A row where nearly every column is null.
+    session.<Gear>insert(gear).value(gear::id, UUIDs.timeBased()).sync();
+  }
+
+  private static Maker maker(String name, int founded) {
+    return new Maker() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public int founded() {
+        return founded;
+      }
+    };
+  }
+
+  private List<Row> rows(String columns) {
+    ResultSet resultSet =
+        session.getSession().execute("SELECT " + columns + " FROM " + entity.getName().toCql());
+    return resultSet.all();
+  }
+
+  @Test
+  public void testDecodeByPropertyName() throws Exception {
+    List<Row> rows = rows("*");
+    Assert.assertEquals(2, rows.size());
+    for (Row row : rows) {
+      RowDecoder decoder = provider.decoderFor(entity, row.getColumnDefinitions());
+      for (HelenusProperty property : entity.getOrderedProperties()) {
+        for (boolean immutable : new boolean[] {false, true}) {
+          Object expected = provider.getColumnValue(row, -1, property, immutable);
+          Object actual = decoder.decode(row, property.getPropertyName(), immutable);
+          Assert.assertEquals(property.getPropertyName(), expected, actual);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeByIndex() throws Exception {
+    for (Row row : rows("*")) {
+      RowDecoder decoder = provider.decoderFor(row.getColumnDefinitions());
+      for (int i = 0; i < row.getColumnDefinitions().size(); i++) {
+        HelenusProperty property = entity.getProperty(row.getColumnDefinitions().getName(i));
+        Object expected = provider.getColumnValue(row, i, property, true);
+        Object actual = decoder.decode(row, i, property, true);
+        Assert.assertEquals(property.getPropertyName(), expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testDecoderIsReusedForRowsOfTheSameShape() throws Exception {
+    Row first = rows("*").get(0);
+    Row second = rows("*").get(1);
+    RowDecoder decoder = provider.decoderFor(entity, first.getColumnDefinitions());
+    Assert.assertTrue(decoder.decodes(second.getColumnDefinitions()));
+    Assert.assertFalse(decoder.decodes(rows("id, name").get(0).getColumnDefinitions()));
+  }
+
+  @Test
+  public void testMissingColumns() throws Exception {
+    Row row = rows("id, name").get(0);
+    RowDecoder decoder = provider.decoderFor(entity, row.getColumnDefinitions());
+    HelenusProperty name = entity.getProperty("name");
+    Assert.assertEquals(
+        provider.getColumnValue(row, -1, name, false), decoder.decode(row, "name", false));
+
+    HelenusProperty weight = entity.getProperty("weight");
+    try {
+      provider.getColumnValue(row, -1, weight, false);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // As the driver reports a column missing from the row.
+    }
+    try {
+      decoder.decode(row, "weight", false);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // As above.
+    }
+    Assert.assertNull(decoder.decode(row, "unknown", false));
+  }
+}
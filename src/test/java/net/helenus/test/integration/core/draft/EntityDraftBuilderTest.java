@@ -108,6 +108,37 @@ public class EntityDraftBuilderTest extends AbstractEmbeddedCassandraTest {
     Assert.assertEquals((long) s4.demand().get("NORAM"), 10L);
   }
 
+  @Test
+  public void testDraftUpdateWithSameColumns() throws Exception {
+    Supply s1 = session.<Supply>insert(Supply.draft("EMEA").code("WIDGET-003")).sync();
+    Supply s2 = session.<Supply>insert(Supply.draft("EMEA").code("WIDGET-004")).sync();
+
+    session.<Supply>update(s1.update().code("WIDGET-005").description("Fifth")).sync();
+    session.<Supply>update(s2.update().code("WIDGET-006").description("Sixth")).sync();
+
+    Supply r1 =
+        session
+            .<Supply>select(Supply.class)
+            .where(supply::id, eq(s1.id()))
+            .and(supply::region, eq("EMEA"))
+            .single()
+            .sync()
+            .orElse(null);
+    Supply r2 =
+        session
+            .<Supply>select(Supply.class)
+            .where(supply::id, eq(s2.id()))
+            .and(supply::region, eq("EMEA"))
+            .single()
+            .sync()
+            .orElse(null);
+
+    Assert.assertEquals("WIDGET-005", r1.code());
+    Assert.assertEquals("Fifth", r1.description());
+    Assert.assertEquals("WIDGET-006", r2.code());
+    Assert.assertEquals("Sixth", r2.description());
+  }
+
   @Test
   public void testDraftMergeInNestedUow() throws Exception {
     Supply s1, s2, s3, s4, s5;
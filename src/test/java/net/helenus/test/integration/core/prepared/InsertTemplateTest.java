@@ -0,0 +1,153 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.integration.core.prepared;
+
+import static net.helenus.core.Query.eq;
+
+import com.datastax.driver.core.Row;
+import java.util.concurrent.TimeoutException;
+import net.helenus.core.Helenus;
+import net.helenus.core.HelenusSession;
+import net.helenus.test.integration.build.AbstractEmbeddedCassandraTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Inserts are sent as statements bound to a template prepared per set of columns. */
+public class InsertTemplateTest extends AbstractEmbeddedCassandraTest {
+
+  static Bike bike;
+  static HelenusSession session;
+
+  @BeforeClass
+  public static void beforeTest() {
+    session = Helenus.init(getSession()).showCql().add(Bike.class).autoCreateDrop().get();
+    bike = Helenus.dsl(Bike.class, session.getMetadata());
+  }
+
+  private Bike select(String serial) throws TimeoutException {
+    return session.<Bike>select(bike).where(bike::serial, eq(serial)).single().sync().orElse(null);
+  }
+
+  private Row cql(String query) {
+    return session.getSession().execute(query).one();
+  }
+
+  @Test
+  public void testBindsTheInsertedColumns() throws Exception {
+    session
+        .<Bike>insert(bike)
+        .value(bike::serial, "b1")
+        .value(bike::color, "red")
+        .value(bike::gears, 21)
+        .sync();
+    Bike b1 = select("b1");
+    Assert.assertEquals("red", b1.color());
+    Assert.assertEquals(Integer.valueOf(21), b1.gears());
+
+    // Another set of columns binds another template, the same set binds the same one.
+    session.<Bike>insert(bike).value(bike::serial, "b2").value(bike::gears, 3).sync();
+    session.<Bike>insert(bike).value(bike::serial, "b3").value(bike::gears, 7).sync();
+    Assert.assertNull(select("b2").color());
+    Assert.assertEquals(Integer.valueOf(3), select("b2").gears());
+    Assert.assertEquals(Integer.valueOf(7), select("b3").gears());
+  }
+
+  @Test
+  public void testNullValuesAreNotBound() throws Exception {
+    session
+        .<Bike>insert(bike)
+        .value(bike::serial, "n1")
+        .value(bike::color, "blue")
+        .value(bike::gears, 21)
+        .sync();
+
+    // A null value leaves its column out of the template, so what is stored stays as it is.
+    session
+        .<Bike>insert(bike)
+        .value(bike::serial, "n1")
+        .value(bike::color, null)
+        .value(bike::gears, 18)
+        .sync();
+    Bike n1 = select("n1");
+    Assert.assertEquals("blue", n1.color());
+    Assert.assertEquals(Integer.valueOf(18), n1.gears());
+  }
+
+  @Test
+  public void testTtlAndTimestamp() throws Exception {
+    session
+        .<Bike>insert(bike)
+        .value(bike::serial, "t1")
+        .value(bike::color, "green")
+        .usingTtl(600)
+        .sync();
+    session
+        .<Bike>insert(bike)
+        .value(bike::serial, "t2")
+        .value(bike::color, "green")
+        .usingTimestamp(1234L)
+        .sync();
+    session
+        .<Bike>insert(bike)
+        .value(bike::serial, "t3")
+        .value(bike::color, "green")
+        .usingTtl(600)
+        .usingTimestamp(5678L)
+        .sync();
+
+    Row t1 = cql("SELECT TTL(color), WRITETIME(color) FROM bikes WHERE serial = 't1'");
+    Assert.assertTrue(t1.getInt(0) > 0 && t1.getInt(0) <= 600);
+    Row t2 = cql("SELECT TTL(color), WRITETIME(color) FROM bikes WHERE serial = 't2'");
+    Assert.assertTrue(t2.isNull(0));
+    Assert.assertEquals(1234L, t2.getLong(1));
+    Row t3 = cql("SELECT TTL(color), WRITETIME(color) FROM bikes WHERE serial = 't3'");
+    Assert.assertTrue(t3.getInt(0) > 0 && t3.getInt(0) <= 600);
+    Assert.assertEquals(5678L, t3.getLong(1));
+  }
+
+  @Test
+  public void testTemplatesFollowTheKeyspaceInUse() throws Exception {
+    String keyspace = getKeyspace();
+    String other = keyspace + "_other";
+    session
+        .getSession()
+        .execute(
+            "CREATE KEYSPACE IF NOT EXISTS "
+                + other
+                + " WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}");
+    session
+        .getSession()
+        .execute(
+            "CREATE TABLE IF NOT EXISTS "
+                + other
+                + ".bikes (serial text PRIMARY KEY, color text, gears int)");
+
+    session.<Bike>insert(bike).value(bike::serial, "k1").value(bike::color, "black").sync();
+    session.useKeyspace(other);
+    try {
+      session.<Bike>insert(bike).value(bike::serial, "k2").value(bike::color, "black").sync();
+    } finally {
+      session.useKeyspace(keyspace);
+    }
+
+    Assert.assertNotNull(cql("SELECT * FROM " + keyspace + ".bikes WHERE serial = 'k1'"));
+    Assert.assertNull(cql("SELECT * FROM " + keyspace + ".bikes WHERE serial = 'k2'"));
+    Assert.assertNotNull(cql("SELECT * FROM " + other + ".bikes WHERE serial = 'k2'"));
+    session.getSession().execute("DROP KEYSPACE " + other);
+  }
+}
@@ -386,6 +386,64 @@ public class UnitOfWorkTest extends AbstractEmbeddedCassandraTest {
     Assert.assertEquals(null, w4);
   }
 
+  @Test
+  public void testBatchCoalescesWritesToTheSameRow() throws Exception {
+    UUID key = UUIDs.timeBased();
+    UUID deletedKey = UUIDs.timeBased();
+    String name = RandomString.make(20);
+
+    try (UnitOfWork uow = session.begin()) {
+      Widget w1 =
+          session
+              .<Widget>upsert(widget)
+              .value(widget::id, key)
+              .value(widget::name, RandomString.make(20))
+              .value(widget::a, RandomString.make(10))
+              .batch(uow);
+      Widget w2 =
+          session
+              .<Widget>update(w1)
+              .set(widget::name, RandomString.make(20))
+              .where(widget::id, eq(key))
+              .batch(uow);
+      session
+          .<Widget>update(w2)
+          .set(widget::name, name)
+          .where(widget::id, eq(key))
+          .batch(uow);
+
+      session
+          .<Widget>upsert(widget)
+          .value(widget::id, deletedKey)
+          .value(widget::name, RandomString.make(20))
+          .batch(uow);
+      session.delete(widget).where(widget::id, eq(deletedKey)).batch(uow);
+
+      uow.commit();
+    }
+
+    Widget w3 =
+        session
+            .<Widget>select(Widget.class)
+            .where(widget::id, eq(key))
+            .uncached()
+            .single()
+            .sync()
+            .orElse(null);
+    Assert.assertNotNull(w3);
+    Assert.assertEquals(name, w3.name());
+
+    Widget w4 =
+        session
+            .<Widget>select(Widget.class)
+            .where(widget::id, eq(deletedKey))
+            .uncached()
+            .single()
+            .sync()
+            .orElse(null);
+    Assert.assertNull(w4);
+  }
+
   @Test
   public void testBatchingUpdatesAndInserts() throws Exception {
     Widget w1, w2, w3, w4, w5, w6;
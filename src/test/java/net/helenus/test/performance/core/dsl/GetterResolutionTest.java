@@ -0,0 +1,63 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.performance.core.dsl;
+
+import net.helenus.core.Getter;
+import net.helenus.core.Helenus;
+import net.helenus.mapping.MappingUtil;
+import net.helenus.test.unit.core.dsl.Account;
+import org.junit.Test;
+
+public class GetterResolutionTest {
+
+  static Account account = Helenus.dsl(Account.class);
+
+  @Test
+  public void testMethodReference() {
+
+    long t0 = System.currentTimeMillis();
+
+    for (int i = 0; i != 1000000; ++i) {
+      MappingUtil.resolveMappingProperty(account::id);
+    }
+
+    long t1 = System.currentTimeMillis() - t0;
+
+    System.out.println("MethodReference = " + t1);
+  }
+
+  @Test
+  public void testAnonymousGetter() {
+
+    long t0 = System.currentTimeMillis();
+
+    for (int i = 0; i != 1000000; ++i) {
+      // Anonymous classes aren't cached, each resolution calls into the DSL.
+      MappingUtil.resolveMappingProperty(
+          new Getter<Long>() {
+            @Override
+            public Long get() {
+              return account.id();
+            }
+          });
+    }
+
+    long t1 = System.currentTimeMillis() - t0;
+
+    System.out.println("AnonymousGetter = " + t1);
+  }
+}
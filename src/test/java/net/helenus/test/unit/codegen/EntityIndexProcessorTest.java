@@ -0,0 +1,117 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.codegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import net.helenus.codegen.EntityIndexProcessor;
+import net.helenus.support.PackageUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EntityIndexProcessorTest {
+
+  private static void source(Path sources, String name, String code) throws IOException {
+    Path file = sources.resolve(name.replace('.', '/') + ".java");
+    Files.createDirectories(file.getParent());
+    Files.write(file, code.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Compiles the named sources into `classes`, as an incremental build of only those would. */
+  private static void compile(Path sources, Path classes, String... names) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    List<String> args = new ArrayList<String>();
+    args.addAll(
+        Arrays.asList(
+            "-processor",
+            EntityIndexProcessor.class.getName(),
+            "-classpath",
+            System.getProperty("java.class.path") + File.pathSeparator + classes,
+            "-d",
+            classes.toString()));
+    for (String name : names) {
+      args.add(sources.resolve(name.replace('.', '/') + ".java").toString());
+    }
+    Assert.assertEquals(0, compiler.run(null, null, null, args.toArray(new String[args.size()])));
+  }
+
+  private static List<String> index(Path classes) throws IOException {
+    return Files.readAllLines(classes.resolve(PackageUtil.ENTITY_INDEX), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testIndexesEntityInterfaces() throws Exception {
+    Path sources = Files.createTempDirectory("sources");
+    Path classes = Files.createTempDirectory("classes");
+    source(
+        sources,
+        "shop.Order",
+        "package shop;\n"
+            + "@net.helenus.mapping.annotation.Table\n"
+            + "public interface Order {\n"
+            + "  @net.helenus.mapping.annotation.UDT\n"
+            + "  interface Line {}\n"
+            + "}\n");
+    source(sources, "shop.Helper", "package shop;\npublic interface Helper {}\n");
+    compile(sources, classes, "shop.Order", "shop.Helper");
+
+    Assert.assertEquals(Arrays.asList("shop.Order", "shop.Order$Line"), index(classes));
+  }
+
+  /** Writes the source of interface `name`, annotated with `annotation` when it isn't null. */
+  private static void entity(Path sources, String name, String annotation) throws IOException {
+    int dot = name.lastIndexOf('.');
+    source(
+        sources,
+        name,
+        "package "
+            + name.substring(0, dot)
+            + ";\n"
+            + (annotation == null ? "" : "@net.helenus.mapping.annotation." + annotation + "\n")
+            + "public interface "
+            + name.substring(dot + 1)
+            + " {}\n");
+  }
+
+  @Test
+  public void testMergesIndexOfPreviousCompilation() throws Exception {
+    Path sources = Files.createTempDirectory("sources");
+    Path classes = Files.createTempDirectory("classes");
+    entity(sources, "shop.Order", "Table");
+    entity(sources, "shop.Item", "Tuple");
+    compile(sources, classes, "shop.Order", "shop.Item");
+
+    // Only the new entity is compiled, the others stay listed.
+    entity(sources, "shop.Customer", "Table");
+    compile(sources, classes, "shop.Customer");
+    Assert.assertEquals(Arrays.asList("shop.Customer", "shop.Item", "shop.Order"), index(classes));
+
+    // An interface which is no longer an entity is dropped.
+    entity(sources, "shop.Item", "UDT");
+    entity(sources, "shop.Order", null);
+    compile(sources, classes, "shop.Item", "shop.Order");
+    Assert.assertEquals(Arrays.asList("shop.Customer", "shop.Item"), index(classes));
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.helenus.core.StripedTimestampGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedTimestampGeneratorTest {
+
+  @Test
+  public void testTimestampsFollowTheClock() {
+    StripedTimestampGenerator timestamps = new StripedTimestampGenerator();
+    long before = System.currentTimeMillis() * 1000;
+    long timestamp = timestamps.next();
+    long after = System.currentTimeMillis() * 1000 + 1000;
+    Assert.assertTrue(timestamp >= before - 1000 && timestamp <= after);
+  }
+
+  @Test
+  public void testTimestampsOfAThreadIncrease() throws Exception {
+    StripedTimestampGenerator timestamps = new StripedTimestampGenerator(2);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int t = 0; t < 8; t++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  long last = timestamps.next();
+                  for (int i = 0; i < 100000; i++) {
+                    long next = timestamps.next();
+                    if (next <= last) {
+                      return false;
+                    }
+                    last = next;
+                  }
+                  return true;
+                }));
+      }
+      for (Future<Boolean> result : results) {
+        Assert.assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTimestampsHandedOnBetweenThreadsIncrease() throws Exception {
+    StripedTimestampGenerator timestamps = new StripedTimestampGenerator(64);
+    ExecutorService first = Executors.newSingleThreadExecutor();
+    ExecutorService second = Executors.newSingleThreadExecutor();
+    try {
+      // Runs past a recalibration of the clock, which mustn't go back below what was handed out.
+      long last = 0L;
+      long until = System.nanoTime() + 1500000000L;
+      for (int i = 0; System.nanoTime() < until; i++) {
+        long next = (i % 2 == 0 ? first : second).submit(timestamps::next).get();
+        Assert.assertTrue(next > last);
+        last = next;
+      }
+    } finally {
+      first.shutdown();
+      second.shutdown();
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.cache;
+
+import ca.exprofesso.guava.jcache.GuavaCachingProvider;
+import com.codahale.metrics.MetricRegistry;
+import java.util.Arrays;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import net.helenus.core.cache.CacheMetrics;
+import net.helenus.core.cache.Facet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheMetricsTest {
+
+  @Test
+  public void testFacetUsage() {
+    MetricRegistry registry = new MetricRegistry();
+    CacheMetrics metrics = new CacheMetrics(registry);
+
+    metrics.lookup(
+        "widget",
+        Arrays.<Facet>asList(
+            new Facet<String>("table", "widget").setFixed(),
+            new Facet<String>("id", "1"),
+            new Facet<String>("name", "a")));
+    metrics.hit("widget", new String[] {"id==1"});
+    metrics.miss("widget");
+
+    Assert.assertEquals(
+        1, registry.counter("net.helenus.cache.widget.facets.id+name.lookups").getCount());
+    Assert.assertEquals(1, registry.counter("net.helenus.cache.widget.facets.id.hits").getCount());
+    Assert.assertEquals(1, registry.meter("net.helenus.cache.widget.hits").getCount());
+    Assert.assertEquals(1, registry.meter("net.helenus.cache.widget.misses").getCount());
+  }
+
+  @Test
+  public void testEntryGauges() {
+    CacheManager cacheManager =
+        Caching.getCachingProvider(GuavaCachingProvider.class.getName()).getCacheManager();
+    MutableConfiguration<String, Object> configuration = new MutableConfiguration<>();
+    configuration.setStoreByValue(false).setReadThrough(false);
+    Cache<String, Object> cache = cacheManager.createCache("gauged", configuration);
+    try {
+      String value = "shared";
+      cache.put("gauged.[id==1]", value);
+      cache.put("gauged.[name==a]", value);
+
+      MetricRegistry registry = new MetricRegistry();
+      new CacheMetrics(registry).watch("gauged", cache);
+
+      Assert.assertEquals(
+          2L, registry.getGauges().get("net.helenus.cache.gauged.entries").getValue());
+      Assert.assertTrue(
+          (Long) registry.getGauges().get("net.helenus.cache.gauged.estimated-bytes").getValue()
+              > 0);
+    } finally {
+      cacheManager.destroyCache("gauged");
+    }
+  }
+}
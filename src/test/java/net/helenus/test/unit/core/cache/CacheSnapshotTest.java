@@ -0,0 +1,79 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.cache;
+
+import ca.exprofesso.guava.jcache.GuavaCachingProvider;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import net.helenus.core.Helenus;
+import net.helenus.core.cache.AbsentEntry;
+import net.helenus.core.cache.CacheSnapshot;
+import net.helenus.core.reflect.Entity;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheSnapshotTest {
+
+  interface Thing extends Entity, Serializable {
+    String name();
+  }
+
+  @Test
+  public void testWriteThenRead() throws Exception {
+    CacheManager cacheManager =
+        Caching.getCachingProvider(GuavaCachingProvider.class.getName()).getCacheManager();
+    MutableConfiguration<String, Object> configuration = new MutableConfiguration<>();
+    configuration.setStoreByValue(false).setReadThrough(false);
+    Cache<String, Object> cache = cacheManager.createCache("things", configuration);
+
+    Map<String, Object> values = new HashMap<>();
+    values.put("name", "sprocket");
+    cache.put("things.[name==sprocket]", Helenus.map(Thing.class, values));
+    cache.put("things.[name==gone]", new AbsentEntry(TimeUnit.MINUTES.toMillis(1)));
+
+    Path file = Files.createTempFile("helenus", ".snapshot");
+    try {
+      Assert.assertEquals(
+          1, CacheSnapshot.write(file, cacheManager, Collections.singleton("things")));
+
+      cache.removeAll();
+      Assert.assertEquals(1, CacheSnapshot.read(file, cacheManager, 0));
+
+      Object restored = cache.get("things.[name==sprocket]");
+      Assert.assertTrue(restored instanceof Thing);
+      Assert.assertEquals("sprocket", ((Thing) restored).name());
+      Assert.assertNull(cache.get("things.[name==gone]"));
+
+      // Snapshots which are too old are ignored.
+      cache.removeAll();
+      Thread.sleep(10);
+      Assert.assertEquals(0, CacheSnapshot.read(file, cacheManager, 1));
+    } finally {
+      Files.deleteIfExists(file);
+      cacheManager.destroyCache("things");
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.helenus.core.Helenus;
+import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.reflect.Entity;
+import net.helenus.core.reflect.MapExportable;
+import net.helenus.mapping.annotation.PartitionKey;
+import net.helenus.mapping.annotation.Table;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MergeTest {
+
+  @Table
+  public interface Ledger extends Entity, MapExportable {
+    @PartitionKey
+    String id();
+
+    long balance();
+
+    String owner();
+  }
+
+  private static Ledger ledger(Object... values) {
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < values.length; i += 2) {
+      map.put((String) values[i], values[i + 1]);
+    }
+    return Helenus.map(Ledger.class, map);
+  }
+
+  @Test
+  public void testLaterWritesWin() throws Exception {
+    Ledger to = ledger("id", "a", "balance", 5L, "owner", "ann", "_balance_writetime", 10L);
+    Ledger from =
+        ledger(
+            "id", "b", "balance", 7L, "_balance_writetime", 20L, "_balance_ttl", new int[] {30});
+
+    Assert.assertSame(Helenus.entity(Ledger.class), Helenus.entityOf(to));
+    Assert.assertSame(to, CacheUtil.merge(to, from));
+    Assert.assertEquals("a", to.id());
+    Assert.assertEquals(7L, to.balance());
+    Assert.assertEquals(Long.valueOf(20L), to.writtenAt("balance"));
+    Assert.assertEquals(Integer.valueOf(30), to.ttlOf("balance"));
+    Assert.assertEquals("ann", to.owner());
+
+    CacheUtil.merge(to, ledger("balance", 9L, "_balance_writetime", 15L));
+    Assert.assertEquals(7L, to.balance());
+
+    CacheUtil.merge(to, ledger("owner", "bob"));
+    Assert.assertEquals("bob", to.owner());
+    Assert.assertEquals(20L, to.toMap().get("_balance_writetime"));
+  }
+}
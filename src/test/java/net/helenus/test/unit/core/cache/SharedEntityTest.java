@@ -0,0 +1,61 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.cache;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import net.helenus.core.Helenus;
+import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.reflect.Entity;
+import net.helenus.core.reflect.MapExportable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SharedEntityTest {
+
+  interface Part extends Entity, MapExportable, Serializable {
+    String name();
+
+    int count();
+  }
+
+  @Test
+  public void testWritesAreNotVisibleToSharedCopies() throws Exception {
+    Map<String, Object> values = new HashMap<>();
+    values.put("name", "sprocket");
+    values.put("count", 3);
+    Part cached = Helenus.map(Part.class, values);
+
+    Part first = CacheUtil.share(cached);
+    Part second = CacheUtil.share(cached);
+    Assert.assertNotSame(cached, first);
+    Assert.assertEquals("sprocket", first.name());
+    Assert.assertEquals(cached, first);
+
+    first.put("count", 4);
+    Assert.assertEquals(4, first.count());
+    Assert.assertEquals(3, second.count());
+    Assert.assertEquals(3, cached.count());
+
+    cached.put("name", "cog");
+    Assert.assertEquals("cog", cached.name());
+    Assert.assertEquals("sprocket", first.name());
+    Assert.assertEquals("sprocket", second.name());
+    Assert.assertEquals("sprocket", values.get("name"));
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.draft;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.*;
+import net.helenus.core.AbstractEntityDraft;
+import net.helenus.core.DraftCollections;
+import net.helenus.core.reflect.MapExportable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DraftCollectionsTest {
+
+  public interface Supply {
+    String code();
+
+    Set<String> shipments();
+
+    List<String> suppliers();
+
+    Map<String, Long> demand();
+  }
+
+  static class Draft extends AbstractEntityDraft<Supply> {
+    Draft(MapExportable entity) {
+      super(entity);
+    }
+
+    @Override
+    public Class<Supply> getEntityClass() {
+      return Supply.class;
+    }
+  }
+
+  private static MapExportable entity(Map<String, Object> values) {
+    return new MapExportable() {
+      @Override
+      public Map<String, Object> toMap() {
+        return Collections.unmodifiableMap(values);
+      }
+
+      @Override
+      public Set<String> toReadSet() {
+        return new HashSet<String>();
+      }
+    };
+  }
+
+  @Test
+  public void testCollectionsAreSharedUntilWritten() throws Exception {
+    Set<String> shipments = ImmutableSet.of("a", "b");
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("shipments", shipments);
+    values.put("code", "X");
+    Draft draft = new Draft(entity(values));
+
+    Set<String> view = draft.get("shipments", Set.class);
+    Assert.assertSame(view, draft.get("shipments", Set.class));
+    Assert.assertEquals(shipments, view);
+    Assert.assertTrue(draft.mutated().isEmpty());
+    Assert.assertNull(draft.changes("shipments"));
+
+    view.add("c");
+    view.remove("a");
+    Assert.assertEquals(ImmutableSet.of("a", "b"), shipments);
+    Assert.assertEquals(ImmutableSet.of("b", "c"), draft.get("shipments", Set.class));
+    Assert.assertEquals(Collections.singleton("shipments"), draft.mutated());
+    Assert.assertEquals(Collections.singleton("shipments"), draft.read());
+
+    draft.set("code", "Y");
+    Assert.assertEquals(ImmutableSet.of("code", "shipments"), draft.mutated());
+
+    DraftCollections.DraftSet<?> changes =
+        (DraftCollections.DraftSet<?>) draft.changes("shipments");
+    Assert.assertEquals(Collections.singleton("c"), changes.added());
+    Assert.assertEquals(Collections.singleton("a"), changes.removed());
+
+    Map<String, Object> map = draft.toMap();
+    Assert.assertEquals(ImmutableSet.of("b", "c"), map.get("shipments"));
+    Assert.assertEquals("Y", map.get("code"));
+
+    // The map handed out is independent of the draft.
+    ((Set<String>) map.get("shipments")).add("d");
+    Assert.assertFalse(draft.<Set<String>>get("shipments", Set.class).contains("d"));
+    view.add("e");
+    Assert.assertFalse(((Set<String>) map.get("shipments")).contains("e"));
+  }
+
+  @Test
+  public void testUndoneChangesAreNotMutations() throws Exception {
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("shipments", ImmutableSet.of("a"));
+    Draft draft = new Draft(entity(values));
+
+    Set<String> view = draft.get("shipments", Set.class);
+    view.remove("a");
+    view.add("a");
+    Assert.assertTrue(draft.mutated().isEmpty());
+
+    Iterator<String> it = view.iterator();
+    it.next();
+    it.remove();
+    Assert.assertTrue(view.isEmpty());
+    Assert.assertEquals(Collections.singleton("shipments"), draft.mutated());
+  }
+
+  @Test
+  public void testListAppendsAndRewrites() throws Exception {
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("suppliers", ImmutableList.of("a"));
+    Draft draft = new Draft(entity(values));
+
+    List<String> view = draft.get("suppliers", List.class);
+    view.add("b");
+    DraftCollections.DraftList<?> changes =
+        (DraftCollections.DraftList<?>) draft.changes("suppliers");
+    Assert.assertFalse(changes.isRewritten());
+    Assert.assertEquals(Collections.singletonList("b"), changes.appended());
+
+    view.add(0, "z");
+    Assert.assertTrue(changes.isRewritten());
+    Assert.assertEquals(Arrays.asList("z", "a", "b"), view);
+  }
+
+  @Test
+  public void testMapPutsAndRemovals() throws Exception {
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("demand", ImmutableMap.of("NORAM", 1L, "EMEA", 2L));
+    Draft draft = new Draft(entity(values));
+
+    Map<String, Long> view = draft.get("demand", Map.class);
+    view.put("NORAM", 1L);
+    Assert.assertNull(draft.changes("demand"));
+
+    view.put("APAC", 3L);
+    view.remove("EMEA");
+    DraftCollections.DraftMap<?, ?> changes =
+        (DraftCollections.DraftMap<?, ?>) draft.changes("demand");
+    Assert.assertEquals(Collections.singletonMap("APAC", 3L), changes.puts());
+    Assert.assertEquals(Collections.singleton("EMEA"), changes.removals());
+    Assert.assertEquals(ImmutableMap.of("NORAM", 1L, "APAC", 3L), view);
+
+    // Replacing the value drops the recorded changes.
+    draft.set("demand", new HashMap<String, Long>());
+    Assert.assertNull(draft.changes("demand"));
+    Assert.assertTrue(((Map<?, ?>) draft.toMap().get("demand")).isEmpty());
+  }
+}
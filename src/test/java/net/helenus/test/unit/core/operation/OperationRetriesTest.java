@@ -0,0 +1,97 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.operation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import java.util.concurrent.TimeUnit;
+import net.helenus.core.operation.OperationRetries;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OperationRetriesTest {
+
+  static final long FOREVER = Long.MAX_VALUE;
+
+  @Test
+  public void testBackoffStaysWithinBounds() {
+    OperationRetries retries =
+        new OperationRetries(8, 10, 80, TimeUnit.MILLISECONDS, 100, new MetricRegistry());
+    for (int attempt = 0; attempt < 8; attempt++) {
+      long backoff = TimeUnit.MILLISECONDS.toNanos(Math.min(80, 10 << attempt));
+      for (int i = 0; i < 100; i++) {
+        retries.request();
+        long delay = retries.retryDelay(new DriverException("timed out"), attempt, FOREVER, "t");
+        Assert.assertTrue(delay >= backoff / 2);
+        Assert.assertTrue(delay <= backoff);
+      }
+    }
+  }
+
+  @Test
+  public void testOnlyTransientFailuresAreRetried() {
+    OperationRetries retries =
+        new OperationRetries(2, 1, 1, TimeUnit.MILLISECONDS, 100, new MetricRegistry());
+    Assert.assertTrue(retries.retryDelay(new DriverException("timed out"), 0, FOREVER, "t") >= 0);
+    Assert.assertEquals(-1L, retries.retryDelay(new InvalidQueryException("bad"), 0, FOREVER, "t"));
+    Assert.assertEquals(-1L, retries.retryDelay(new IllegalStateException(), 0, FOREVER, "t"));
+    Assert.assertEquals(-1L, retries.retryDelay(new DriverException("timed out"), 2, FOREVER, "t"));
+  }
+
+  @Test
+  public void testBudgetDrainsAndRefills() {
+    MetricRegistry metrics = new MetricRegistry();
+    OperationRetries retries = new OperationRetries(1, 1, 1, TimeUnit.MILLISECONDS, 10, metrics);
+    DriverException failure = new DriverException("timed out");
+
+    int granted = 0;
+    while (retries.retryDelay(failure, 0, FOREVER, "t") >= 0) {
+      granted++;
+    }
+    Assert.assertEquals(20, granted);
+    Assert.assertEquals(20, metrics.meter("net.helenus.retries.t").getCount());
+    Assert.assertEquals(1, metrics.meter("net.helenus.retries.t.exhausted").getCount());
+
+    // Each operation earns a tenth of a retry.
+    for (int i = 0; i < 9; i++) {
+      retries.request();
+    }
+    Assert.assertEquals(-1L, retries.retryDelay(failure, 0, FOREVER, "t"));
+    retries.request();
+    Assert.assertTrue(retries.retryDelay(failure, 0, FOREVER, "t") >= 0);
+    Assert.assertEquals(-1L, retries.retryDelay(failure, 0, FOREVER, "t"));
+  }
+
+  @Test
+  public void testNotRetriedPastTheDeadline() {
+    MetricRegistry metrics = new MetricRegistry();
+    OperationRetries retries = new OperationRetries(1, 10, 10, TimeUnit.MILLISECONDS, 0, metrics);
+    DriverException failure = new DriverException("timed out");
+
+    long remaining = TimeUnit.MILLISECONDS.toNanos(4);
+    Assert.assertEquals(-1L, retries.retryDelay(failure, 0, remaining, "t"));
+    Assert.assertEquals(0, metrics.meter("net.helenus.retries.t").getCount());
+
+    // A retry cut off by the deadline doesn't spend the budget.
+    int granted = 0;
+    while (retries.retryDelay(failure, 0, FOREVER, "t") >= 0) {
+      granted++;
+    }
+    Assert.assertEquals(20, granted);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.reflect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import net.helenus.core.Helenus;
+import net.helenus.core.cache.CacheUtil;
+import net.helenus.core.reflect.Entity;
+import net.helenus.core.reflect.GeneratedEntity;
+import net.helenus.core.reflect.MapExportable;
+import net.helenus.mapping.annotation.Transient;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GeneratedEntityTest {
+
+  public interface Elevator extends Entity, Serializable {
+    int height();
+
+    Double price();
+
+    String name();
+
+    default String label() {
+      return "none";
+    }
+
+    @Transient
+    default String describe() {
+      return name() + "@" + height();
+    }
+  }
+
+  public interface Labeled {
+    default String tag() {
+      return "untagged";
+    }
+  }
+
+  public interface Escalator extends Labeled, Entity {
+    int steps();
+  }
+
+  private static Elevator elevator() {
+    Map<String, Object> values = new HashMap<>();
+    values.put("height", 55);
+    values.put("price", 44.99);
+    values.put("name", "first");
+    return Helenus.map(Elevator.class, values);
+  }
+
+  @Test
+  public void testGetters() throws Exception {
+    Elevator elevator = elevator();
+    Assert.assertTrue(elevator instanceof GeneratedEntity);
+    Assert.assertEquals(55, elevator.height());
+    Assert.assertEquals(Double.valueOf(44.99), elevator.price());
+    Assert.assertEquals("none", elevator.label());
+    Assert.assertEquals("first@55", elevator.describe());
+    Assert.assertEquals(3, ((MapExportable) elevator).toMap().size());
+    Assert.assertTrue(((MapExportable) elevator).toReadSet().contains("name"));
+  }
+
+  @Test
+  public void testPutIsNotVisibleToSharedCopies() throws Exception {
+    Elevator elevator = elevator();
+    Elevator copy = CacheUtil.share(elevator);
+    Assert.assertEquals(elevator, copy);
+
+    ((MapExportable) copy).put("label", "express");
+    Assert.assertEquals("express", copy.label());
+    Assert.assertEquals("none", elevator.label());
+    Assert.assertNotEquals(elevator, copy);
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    Elevator elevator = elevator();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(elevator);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      Elevator copy = (Elevator) in.readObject();
+      Assert.assertEquals("first", copy.name());
+      Assert.assertEquals(elevator, copy);
+    }
+  }
+
+  @Test
+  public void testPrimitiveProperties() throws Exception {
+    Elevator elevator = elevator();
+    MapExportable values = (MapExportable) elevator;
+
+    values.put("height", 60L);
+    Assert.assertEquals(60, elevator.height());
+    Assert.assertEquals(Integer.valueOf(60), values.toMap().get("height"));
+
+    values.put("height", null);
+    Assert.assertEquals(0, elevator.height());
+    Assert.assertTrue(values.toMap().containsKey("height"));
+    Assert.assertNull(values.toMap().get("height"));
+  }
+
+  @Test
+  public void testValueSemantics() throws Exception {
+    Elevator elevator = elevator();
+    Elevator other = elevator();
+    ((MapExportable) other).put("_name_writetime", 100L);
+    Assert.assertEquals(elevator, other);
+    Assert.assertEquals(elevator.hashCode(), other.hashCode());
+    Assert.assertEquals(1, new HashSet<>(Arrays.asList(elevator, other)).size());
+
+    ((MapExportable) other).put("height", 56);
+    Assert.assertNotEquals(elevator, other);
+    Assert.assertNotEquals(elevator.hashCode(), other.hashCode());
+  }
+
+  @Test
+  public void testInheritedDefaultGetter() throws Exception {
+    Map<String, Object> values = new HashMap<>();
+    values.put("steps", 12);
+    Escalator escalator = Helenus.map(Escalator.class, values);
+    Assert.assertTrue(escalator instanceof GeneratedEntity);
+    Assert.assertEquals(12, escalator.steps());
+    Assert.assertEquals("untagged", escalator.tag());
+
+    ((MapExportable) escalator).put("tag", "up");
+    Assert.assertEquals("up", escalator.tag());
+  }
+}
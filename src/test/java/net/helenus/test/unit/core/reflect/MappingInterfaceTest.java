@@ -0,0 +1,89 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.reflect;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.helenus.core.Helenus;
+import net.helenus.core.reflect.MapExportable;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.MappingUtil;
+import net.helenus.mapping.annotation.PartitionKey;
+import net.helenus.mapping.annotation.Table;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappingInterfaceTest {
+
+  @Table
+  public interface Tram {
+    @PartitionKey
+    String line();
+  }
+
+  public interface Electric {
+    default int volts() {
+      return 600;
+    }
+  }
+
+  /** Lists MapExportable and an unannotated interface ahead of its mapping interface. */
+  public static final class MappedTram implements MapExportable, Electric, Tram {
+
+    @Override
+    public String line() {
+      return "T1";
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+      return Collections.<String, Object>singletonMap("line", line());
+    }
+  }
+
+  public static final class UnmappedTram implements Electric {}
+
+  @Test
+  public void testAnnotatedInterfaceIsFoundAfterOthers() {
+    Assert.assertEquals(Tram.class, MappingUtil.getMappingInterfaceOf(MappedTram.class));
+    Assert.assertEquals(Tram.class, MappingUtil.getMappingInterface(new MappedTram()));
+  }
+
+  @Test
+  public void testFirstInterfaceIsTheFallback() {
+    Assert.assertEquals(Electric.class, MappingUtil.getMappingInterfaceOf(UnmappedTram.class));
+    Assert.assertNull(MappingUtil.getMappingInterfaceOf(Object.class));
+  }
+
+  @Test
+  public void testLookupsAreCachedPerClass() {
+    Assert.assertSame(
+        MappingUtil.getMappingInterfaceOf(MappedTram.class),
+        MappingUtil.getMappingInterfaceOf(MappedTram.class));
+
+    HelenusEntity entity = Helenus.entityOf(new MappedTram());
+    Assert.assertEquals(Tram.class, entity.getMappingInterface());
+    Assert.assertSame(entity, Helenus.entityOf(new MappedTram()));
+
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("line", "T2");
+    Tram mapped = Helenus.map(Tram.class, values);
+    Assert.assertEquals(Tram.class, MappingUtil.getMappingInterface(mapped));
+    Assert.assertSame(entity, Helenus.entityOf(mapped));
+  }
+}
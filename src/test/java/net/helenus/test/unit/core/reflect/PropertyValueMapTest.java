@@ -0,0 +1,96 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.core.reflect;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import net.helenus.core.Helenus;
+import net.helenus.mapping.HelenusEntity;
+import net.helenus.mapping.value.PropertyIndex;
+import net.helenus.mapping.value.PropertySet;
+import net.helenus.mapping.value.PropertyValueMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PropertyValueMapTest {
+
+  public interface Car {
+    String make();
+
+    String model();
+
+    int year();
+  }
+
+  @Test
+  public void testBehavesLikeAMap() throws Exception {
+    HelenusEntity entity = Helenus.entity(Car.class);
+    PropertyValueMap map = new PropertyValueMap(entity);
+    Assert.assertTrue(map.isEmpty());
+
+    Assert.assertNull(map.put("make", "Volvo"));
+    Assert.assertEquals("Volvo", map.put("make", "Saab"));
+    map.put("year", 1987);
+    map.put("_wt_make", 100L);
+
+    Map<String, Object> expected = new HashMap<>();
+    expected.put("make", "Saab");
+    expected.put("year", 1987);
+    expected.put("_wt_make", 100L);
+    Assert.assertEquals(expected, map);
+    Assert.assertEquals(expected.hashCode(), map.hashCode());
+    Assert.assertFalse(map.containsKey("model"));
+
+    map.put("model", null);
+    Assert.assertTrue(map.containsKey("model"));
+    Assert.assertEquals(4, map.size());
+
+    PropertyValueMap copy = new PropertyValueMap(map);
+    copy.remove("make");
+    Assert.assertEquals("Saab", map.get("make"));
+    Assert.assertFalse(copy.containsKey("make"));
+    Assert.assertEquals(3, copy.size());
+  }
+
+  @Test
+  public void testOrdinalIteration() throws Exception {
+    PropertyIndex index = PropertyIndex.of(Helenus.entity(Car.class));
+    PropertyValueMap map = new PropertyValueMap(index);
+    Assert.assertEquals(-1, map.nextOrdinal(0));
+
+    map.put("year", 1987);
+    map.put("model", "900");
+    int first = map.nextOrdinal(0);
+    int second = map.nextOrdinal(first + 1);
+    Assert.assertEquals(-1, map.nextOrdinal(second + 1));
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList("year", "model")),
+        new HashSet<>(Arrays.asList(index.name(first), index.name(second))));
+    Assert.assertEquals(map.get(index.name(first)), map.valueAt(first));
+
+    PropertySet set = new PropertySet(index, Arrays.asList("make", "_wt_make"));
+    Assert.assertTrue(set.contains("make"));
+    Assert.assertTrue(set.contains(index.ordinal("make")));
+    Assert.assertFalse(set.contains("model"));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("make", "_wt_make")), set);
+    Assert.assertTrue(set.remove("make"));
+    Assert.assertEquals(-1, set.nextOrdinal(0));
+    Assert.assertEquals(1, set.size());
+  }
+}
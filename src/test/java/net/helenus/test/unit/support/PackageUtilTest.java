@@ -0,0 +1,101 @@
+/*
+ *      Copyright (C) 2015 The Casser Authors
+ *      Copyright (C) 2015-2018 The Helenus Authors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package net.helenus.test.unit.support;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.tools.ToolProvider;
+import net.helenus.support.PackageUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackageUtilTest {
+
+  /** Compiles an empty interface `name` into the class path entry `root`. */
+  private static void compile(Path root, String name) throws IOException {
+    Path source = Files.createTempDirectory("sources").resolve(name.replace('.', '/') + ".java");
+    Files.createDirectories(source.getParent());
+    int dot = name.lastIndexOf('.');
+    String code =
+        "package " + name.substring(0, dot) + ";\n"
+            + "public interface " + name.substring(dot + 1) + " {}\n";
+    Files.write(source, code.getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(
+        0,
+        ToolProvider.getSystemJavaCompiler()
+            .run(null, null, null, "-proc:none", "-d", root.toString(), source.toString()));
+  }
+
+  private static void index(Path root, String... names) throws IOException {
+    Path index = root.resolve(PackageUtil.ENTITY_INDEX);
+    Files.createDirectories(index.getParent());
+    Files.write(index, Arrays.asList(names), StandardCharsets.UTF_8);
+  }
+
+  private static Set<String> indexed(String packageName, Path... roots) throws Exception {
+    URL[] urls = new URL[roots.length];
+    for (int i = 0; i < roots.length; i++) {
+      urls[i] = roots[i].toUri().toURL();
+    }
+    Thread thread = Thread.currentThread();
+    ClassLoader previous = thread.getContextClassLoader();
+    try (URLClassLoader classLoader = new URLClassLoader(urls, null)) {
+      thread.setContextClassLoader(classLoader);
+      Set<Class<?>> classes = PackageUtil.getIndexedClasses(packageName);
+      return classes == null
+          ? null
+          : classes.stream().map(Class::getName).collect(Collectors.toSet());
+    } finally {
+      thread.setContextClassLoader(previous);
+    }
+  }
+
+  @Test
+  public void testIndexedClasses() throws Exception {
+    Path root = Files.createTempDirectory("classes");
+    compile(root, "zoo.Lion");
+    compile(root, "zoo.cats.Tiger");
+    compile(root, "park.Bench");
+    // An entry left behind after its class was removed is skipped.
+    index(root, "zoo.Lion", "zoo.cats.Tiger", "zoo.Zebra", "park.Bench");
+
+    Assert.assertEquals(
+        new HashSet<String>(Arrays.asList("zoo.Lion", "zoo.cats.Tiger")), indexed("zoo", root));
+    Assert.assertEquals(new HashSet<String>(), indexed("zoo.cats.big", root));
+  }
+
+  @Test
+  public void testPackageSplitAcrossUnindexedEntry() throws Exception {
+    Path withIndex = Files.createTempDirectory("classes");
+    compile(withIndex, "farm.Cow");
+    index(withIndex, "farm.Cow");
+    Path withoutIndex = Files.createTempDirectory("classes");
+    compile(withoutIndex, "farm.Goat");
+
+    // The entities of the entry without an index can only be found by scanning.
+    Assert.assertNull(indexed("farm", withIndex, withoutIndex));
+    Assert.assertEquals(new HashSet<String>(Arrays.asList("farm.Cow")), indexed("farm", withIndex));
+  }
+}